@@ -135,7 +135,7 @@ public class ModuleUseCases {
             throw new DuplicateModuleException(newModuleKey);
         }
 
-        Optional<ModuleView> optionalModuleView = queries.getModule(existingModuleKey);
+        Optional<ModuleView> optionalModuleView = queries.getModuleWithTemplates(existingModuleKey);
         if (!optionalModuleView.isPresent()) {
             throw new ModuleNotFoundException(existingModuleKey);
         }
@@ -164,7 +164,7 @@ public class ModuleUseCases {
         }
 
         TemplateContainer.Key existingModuleKey = new Module.Key(moduleName, moduleVersion, TemplateContainer.VersionType.workingcopy);
-        Optional<ModuleView> optionalModuleView = queries.getModule(existingModuleKey);
+        Optional<ModuleView> optionalModuleView = queries.getModuleWithTemplates(existingModuleKey);
         if (!optionalModuleView.isPresent()) {
             throw new ModuleNotFoundException(existingModuleKey);
         }
@@ -5,11 +5,14 @@ import org.hesperides.domain.platforms.entities.Platform;
 import org.hesperides.domain.platforms.exceptions.DuplicatePlatformException;
 import org.hesperides.domain.platforms.exceptions.PlatformNotFoundException;
 import org.hesperides.domain.platforms.queries.PlatformQueries;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
 import org.hesperides.domain.platforms.queries.views.PlatformView;
 import org.hesperides.domain.security.User;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Optional;
 
 @Component
@@ -46,4 +49,8 @@ public class PlatformUseCases {
         }
         return optionalPlatformView.get();
     }
+
+    public List<ModulePlatformView> getPlatformsUsingModule(TemplateContainer.Key moduleKey) {
+        return queries.getPlatformsUsingModule(moduleKey);
+    }
 }
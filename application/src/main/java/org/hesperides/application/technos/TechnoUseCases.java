@@ -83,7 +83,7 @@ public class TechnoUseCases {
             throw new DuplicateTechnoException(newTechnoKey);
         }
 
-        Optional<TechnoView> optionalTechnoView = queries.getTechno(existingTechnoKey);
+        Optional<TechnoView> optionalTechnoView = queries.getTechnoWithTemplates(existingTechnoKey);
         if (!optionalTechnoView.isPresent()) {
             throw new TechnoNotFoundException(existingTechnoKey);
         }
@@ -104,7 +104,7 @@ public class TechnoUseCases {
             throw new DuplicateModuleException(newTechnoKey);
         }
 
-        Optional<TechnoView> optionalTechnoView = queries.getTechno(existingTechnoKey);
+        Optional<TechnoView> optionalTechnoView = queries.getTechnoWithTemplates(existingTechnoKey);
         if (!optionalTechnoView.isPresent()) {
             throw new ModuleNotFoundException(existingTechnoKey);
         }
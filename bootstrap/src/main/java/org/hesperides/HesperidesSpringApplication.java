@@ -1,5 +1,7 @@
 package org.hesperides;
 
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.infrastructure.mongo.ProjectionsRebuild;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -7,7 +9,11 @@ import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfigurat
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
 
+import java.util.Arrays;
+
+@Slf4j
 @SpringBootApplication
 @EnableAutoConfiguration(
         exclude = {
@@ -19,8 +25,33 @@ import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 )
 public class HesperidesSpringApplication {
 
+    /**
+     * Option de la ligne de commande qui reconstruit les projections à partir de l'event store, puis arrête l'application
+     */
+    private static final String REBUILD_PROJECTIONS = "--rebuild-projections";
+
     public static void main(String[] args) {
-        SpringApplication.run(HesperidesSpringApplication.class, args);
+        if (Arrays.asList(args).contains(REBUILD_PROJECTIONS)) {
+            rebuildProjections(args);
+        } else {
+            SpringApplication.run(HesperidesSpringApplication.class, args);
+        }
+    }
+
+    private static void rebuildProjections(String[] args) {
+        // Sans serveur HTTP : aucune commande n'est reçue pendant la reconstruction
+        String[] rebuildArgs = Arrays.copyOf(args, args.length + 1);
+        rebuildArgs[args.length] = "--server.port=-1";
+        ConfigurableApplicationContext context = SpringApplication.run(HesperidesSpringApplication.class, rebuildArgs);
+        int exitCode = 0;
+        try {
+            context.getBean(ProjectionsRebuild.class).rebuild();
+        } catch (RuntimeException e) {
+            log.error("Projections rebuild failed", e);
+            exitCode = 1;
+        }
+        int rebuildExitCode = exitCode;
+        System.exit(SpringApplication.exit(context, () -> rebuildExitCode));
     }
 
 }
@@ -26,6 +26,9 @@ public interface ModuleProjectionRepository {
     @QueryHandler
     Optional<ModuleView> onGetModuleByKeyQuery(GetModuleByKeyQuery query);
 
+    @QueryHandler
+    Optional<ModuleView> onGetModuleWithTemplatesQuery(GetModuleWithTemplatesQuery query);
+
     @QueryHandler
     List<String> onGetModulesNamesQuery(GetModulesNamesQuery query);
 
@@ -4,8 +4,8 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.axonframework.commandhandling.CommandHandler;
 import org.axonframework.commandhandling.model.AggregateIdentifier;
-import org.axonframework.commandhandling.model.AggregateMember;
 import org.axonframework.eventsourcing.EventSourcingHandler;
+import org.axonframework.serialization.Revision;
 import org.axonframework.spring.stereotype.Aggregate;
 import org.hesperides.domain.modules.*;
 import org.hesperides.domain.modules.entities.Module;
@@ -29,7 +29,12 @@ import static org.axonframework.commandhandling.model.AggregateLifecycle.isLive;
  * Les Queries utilisent des Views (représentation de données).
  */
 @Slf4j
-@Aggregate
+@Aggregate(snapshotTriggerDefinition = "aggregateSnapshotTriggerDefinition")
+/*
+  La révision est à incrémenter à chaque changement de structure de l'agrégat :
+  les snapshots d'une autre révision sont ignorés (cf. AggregateSnapshotRevisionFilter).
+ */
+@Revision("2")
 /*
   Axon utilise le constructeur vide pour créer une instance vide
   avant de l'initialiser à partir des évènements passés.
@@ -39,8 +44,11 @@ class ModuleAggregate implements Serializable {
 
     @AggregateIdentifier
     private TemplateContainer.Key key;
-    @AggregateMember
-    private Map<String, Template> templates = new HashMap<>();
+    /**
+     * Les commandes n'ont besoin que du nom et du version_id des templates :
+     * leur contenu n'est pas conservé dans l'agrégat (ni dans son snapshot ou le cache).
+     */
+    private Map<String, Long> templateVersionIds = new HashMap<>();
 
     /*** COMMAND HANDLERS ***/
 
@@ -74,7 +82,7 @@ class ModuleAggregate implements Serializable {
         log.debug("Applying create template command...");
 
         // Vérifie qu'on a pas déjà un template avec ce nom
-        if (this.templates.containsKey(command.getTemplate().getName())) {
+        if (this.templateVersionIds.containsKey(command.getTemplate().getName())) {
             throw new DuplicateTemplateCreationException(command.getTemplate());
         }
 
@@ -85,7 +93,7 @@ class ModuleAggregate implements Serializable {
         // Initialise le versionId
         Template template = command.getTemplate().initVersionId();
 
-        apply(new TemplateCreatedEvent(key, template, command.getUser()));
+        apply(new TemplateCreatedEvent(key, template, abstractProperties, command.getUser()));
     }
 
     @CommandHandler
@@ -94,12 +102,12 @@ class ModuleAggregate implements Serializable {
         log.debug("Applying update template command...");
 
         // check qu'on a déjà un template avec ce nom, sinon erreur:
-        if (!templates.containsKey(command.getTemplate().getName())) {
+        if (!templateVersionIds.containsKey(command.getTemplate().getName())) {
             throw new TemplateNotFoundException(key, command.getTemplate().getName());
         }
 
         // Vérifie que le template n'a été modifié entre temps
-        Long expectedVersionId = templates.get(command.getTemplate().getName()).getVersionId();
+        Long expectedVersionId = templateVersionIds.get(command.getTemplate().getName());
         command.getTemplate().validateVersionId(expectedVersionId);
 
         // Vérifie les propriétés
@@ -109,14 +117,14 @@ class ModuleAggregate implements Serializable {
         // Incrémente le versionId
         Template template = command.getTemplate().incrementVersionId();
 
-        apply(new TemplateUpdatedEvent(key, template, command.getUser()));
+        apply(new TemplateUpdatedEvent(key, template, abstractProperties, command.getUser()));
     }
 
     @CommandHandler
     @SuppressWarnings("unused")
     public void onDeleteTemplateCommand(DeleteTemplateCommand command) {
         // Si le template n'existe pas, cette commande n'a pas d'effet de bord
-        if (this.templates.containsKey(command.getTemplateName())) {
+        if (this.templateVersionIds.containsKey(command.getTemplateName())) {
             apply(new TemplateDeletedEvent(key, command.getTemplateName(), command.getUser()));
         }
     }
@@ -153,19 +161,19 @@ class ModuleAggregate implements Serializable {
 
     @EventSourcingHandler
     public void onTemplateCreatedEvent(TemplateCreatedEvent event) {
-        this.templates.put(event.getTemplate().getName(), event.getTemplate());
+        this.templateVersionIds.put(event.getTemplate().getName(), event.getTemplate().getVersionId());
         log.debug("Template crée. ");
     }
 
     @EventSourcingHandler
     public void onTemplateUpdatedEvent(TemplateUpdatedEvent event) {
-        this.templates.put(event.getTemplate().getName(), event.getTemplate());
+        this.templateVersionIds.put(event.getTemplate().getName(), event.getTemplate().getVersionId());
         log.debug("Template mis à jour. ");
     }
 
     @EventSourcingHandler
     public void onTemplateDeletedEvent(TemplateDeletedEvent event) {
-        this.templates.remove(event.getTemplateName());
+        this.templateVersionIds.remove(event.getTemplateName());
         log.debug("Template supprimé");
     }
 }
@@ -29,6 +29,10 @@ public class ModuleQueries extends Queries {
         return querySyncOptional(new GetModuleByKeyQuery(moduleKey), ModuleView.class);
     }
 
+    public Optional<ModuleView> getModuleWithTemplates(TemplateContainer.Key moduleKey) {
+        return querySyncOptional(new GetModuleWithTemplatesQuery(moduleKey), ModuleView.class);
+    }
+
     public List<String> getModulesNames() {
         return querySyncList(new GetModulesNamesQuery(), String.class);
     }
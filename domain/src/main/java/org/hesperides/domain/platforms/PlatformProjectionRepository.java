@@ -3,8 +3,10 @@ package org.hesperides.domain.platforms;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.eventsourcing.EventSourcingHandler;
 import org.axonframework.queryhandling.QueryHandler;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
 import org.hesperides.domain.platforms.queries.views.PlatformView;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface PlatformProjectionRepository {
@@ -21,4 +23,7 @@ public interface PlatformProjectionRepository {
 
     @QueryHandler
     Optional<PlatformView> onGetPlatformByKeyQuery(GetPlatformByKeyQuery query);
+
+    @QueryHandler
+    List<ModulePlatformView> onGetPlatformsUsingModuleQuery(GetPlatformsUsingModuleQuery query);
 }
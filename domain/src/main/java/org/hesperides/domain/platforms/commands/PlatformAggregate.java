@@ -36,7 +36,7 @@ import org.hesperides.domain.platforms.entities.Platform;
 import java.io.Serializable;
 
 @Slf4j
-@Aggregate
+@Aggregate(snapshotTriggerDefinition = "aggregateSnapshotTriggerDefinition")
 @NoArgsConstructor
 public class PlatformAggregate implements Serializable {
 
@@ -23,10 +23,14 @@ package org.hesperides.domain.platforms.queries;
 import org.axonframework.queryhandling.QueryGateway;
 import org.hesperides.domain.framework.Queries;
 import org.hesperides.domain.platforms.GetPlatformByKeyQuery;
+import org.hesperides.domain.platforms.GetPlatformsUsingModuleQuery;
 import org.hesperides.domain.platforms.entities.Platform;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
 import org.hesperides.domain.platforms.queries.views.PlatformView;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Optional;
 
 @Component
@@ -44,4 +48,8 @@ public class PlatformQueries extends Queries {
     public Optional<PlatformView> getOptionalPlatform(Platform.Key platformKey) {
         return querySyncOptional(new GetPlatformByKeyQuery(platformKey), PlatformView.class);
     }
+
+    public List<ModulePlatformView> getPlatformsUsingModule(TemplateContainer.Key moduleKey) {
+        return querySyncList(new GetPlatformsUsingModuleQuery(moduleKey), ModulePlatformView.class);
+    }
 }
@@ -62,6 +62,9 @@ public interface TechnoProjectionRepository {
     @QueryHandler
     Optional<TechnoView> onGetTechnoQuery(GetTechnoQuery query);
 
+    @QueryHandler
+    Optional<TechnoView> onGetTechnoWithTemplatesQuery(GetTechnoWithTemplatesQuery query);
+
     @QueryHandler
     List<TechnoView> onSearchTechnosQuery(SearchTechnosQuery query);
 
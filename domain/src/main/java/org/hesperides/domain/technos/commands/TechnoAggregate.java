@@ -4,8 +4,8 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.axonframework.commandhandling.CommandHandler;
 import org.axonframework.commandhandling.model.AggregateIdentifier;
-import org.axonframework.commandhandling.model.AggregateMember;
 import org.axonframework.eventsourcing.EventSourcingHandler;
+import org.axonframework.serialization.Revision;
 import org.axonframework.spring.stereotype.Aggregate;
 import org.hesperides.domain.modules.exceptions.DuplicateTemplateCreationException;
 import org.hesperides.domain.modules.exceptions.TemplateNotFoundException;
@@ -24,13 +24,21 @@ import static org.axonframework.commandhandling.model.AggregateLifecycle.isLive;
 
 @NoArgsConstructor
 @Slf4j
-@Aggregate
+@Aggregate(snapshotTriggerDefinition = "aggregateSnapshotTriggerDefinition")
+/*
+  La révision est à incrémenter à chaque changement de structure de l'agrégat :
+  les snapshots d'une autre révision sont ignorés (cf. AggregateSnapshotRevisionFilter).
+ */
+@Revision("2")
 class TechnoAggregate implements Serializable {
 
     @AggregateIdentifier
     private TemplateContainer.Key key;
-    @AggregateMember
-    private Map<String, Template> templates = new HashMap<>();
+    /**
+     * Les commandes n'ont besoin que du nom et du version_id des templates :
+     * leur contenu n'est pas conservé dans l'agrégat (ni dans son snapshot ou le cache).
+     */
+    private Map<String, Long> templateVersionIds = new HashMap<>();
 
     /*** COMMAND HANDLERS ***/
 
@@ -54,7 +62,7 @@ class TechnoAggregate implements Serializable {
         log.debug("Applying AddTemplateToTechnoCommand...");
 
         // Vérifie qu'on a pas déjà un template avec ce nom
-        if (this.templates.containsKey(command.getTemplate().getName())) {
+        if (this.templateVersionIds.containsKey(command.getTemplate().getName())) {
             throw new DuplicateTemplateCreationException(command.getTemplate());
         }
 
@@ -65,7 +73,7 @@ class TechnoAggregate implements Serializable {
         // Initialise le version_id du template à 1
         Template template = command.getTemplate().initVersionId();
 
-        apply(new TemplateAddedToTechnoEvent(command.getTechnoKey(), template, command.getUser()));
+        apply(new TemplateAddedToTechnoEvent(command.getTechnoKey(), template, abstractProperties, command.getUser()));
     }
 
     @CommandHandler
@@ -74,12 +82,12 @@ class TechnoAggregate implements Serializable {
         log.debug("Applying update template command...");
 
         // Vérifie qu'on a déjà un template avec ce nom
-        if (!templates.containsKey(command.getTemplate().getName())) {
+        if (!templateVersionIds.containsKey(command.getTemplate().getName())) {
             throw new TemplateNotFoundException(key, command.getTemplate().getName());
         }
 
         // Vérifie que le template n'a été modifié entre temps
-        Long expectedVersionId = templates.get(command.getTemplate().getName()).getVersionId();
+        Long expectedVersionId = templateVersionIds.get(command.getTemplate().getName());
         command.getTemplate().validateVersionId(expectedVersionId);
 
         // Vérifie les propriétés
@@ -89,14 +97,14 @@ class TechnoAggregate implements Serializable {
         // Met à jour le version_id
         Template template = command.getTemplate().incrementVersionId();
 
-        apply(new TechnoTemplateUpdatedEvent(key, template, command.getUser()));
+        apply(new TechnoTemplateUpdatedEvent(key, template, abstractProperties, command.getUser()));
     }
 
     @CommandHandler
     @SuppressWarnings("unused")
     public void onDeleteTechnoTemplateCommand(DeleteTechnoTemplateCommand command) {
         // si le template n'existe pas, cette commande n'a pas d'effet de bord
-        if (this.templates.containsKey(command.getTemplateName())) {
+        if (this.templateVersionIds.containsKey(command.getTemplateName())) {
             apply(new TechnoTemplateDeletedEvent(key, command.getTemplateName(), command.getUser()));
         }
     }
@@ -120,21 +128,21 @@ class TechnoAggregate implements Serializable {
     @EventSourcingHandler
     @SuppressWarnings("unused")
     public void onTemplateAddedToTechnoEvent(TemplateAddedToTechnoEvent event) {
-        this.templates.put(event.getTemplate().getName(), event.getTemplate());
+        this.templateVersionIds.put(event.getTemplate().getName(), event.getTemplate().getVersionId());
         log.debug("Template ajouté à la techno (aggregate is live ? {})", isLive());
     }
 
     @EventSourcingHandler
     @SuppressWarnings("unused")
     public void onTechnoTemplateUpdatedEvent(TechnoTemplateUpdatedEvent event) {
-        this.templates.put(event.getTemplate().getName(), event.getTemplate());
+        this.templateVersionIds.put(event.getTemplate().getName(), event.getTemplate().getVersionId());
         log.debug("Template mis à jour. ");
     }
 
     @EventSourcingHandler
     @SuppressWarnings("unused")
     public void onTechnoTemplateDeletedEvent(TechnoTemplateDeletedEvent event) {
-        this.templates.remove(event.getTemplateName());
+        this.templateVersionIds.remove(event.getTemplateName());
         log.debug("Template supprimé. ");
     }
 }
@@ -33,6 +33,10 @@ public class TechnoQueries extends Queries {
         return querySyncOptional(new GetTechnoQuery(technoKey), TechnoView.class);
     }
 
+    public Optional<TechnoView> getTechnoWithTemplates(TemplateContainer.Key technoKey) {
+        return querySyncOptional(new GetTechnoWithTemplatesQuery(technoKey), TechnoView.class);
+    }
+
     public List<TechnoView> search(String input) {
         return querySyncList(new SearchTechnosQuery(input), TechnoView.class);
     }
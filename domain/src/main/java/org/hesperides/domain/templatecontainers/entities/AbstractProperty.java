@@ -21,15 +21,16 @@
 package org.hesperides.domain.templatecontainers.entities;
 
 import com.github.mustachejava.Code;
-import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 import com.github.mustachejava.codes.IterableCode;
 import com.github.mustachejava.codes.ValueCode;
 import lombok.Value;
 import lombok.experimental.NonFinal;
 
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -40,10 +41,14 @@ public abstract class AbstractProperty {
 
     String name;
 
+    /**
+     * Les templates sont traités en parallèle au-delà d'un certain nombre (cf. ParallelPropertiesExtractor),
+     * les propriétés restant dans l'ordre des templates.
+     */
     public static List<AbstractProperty> extractPropertiesFromTemplates(Collection<Template> templates) {
         List<AbstractProperty> properties = new ArrayList<>();
         if (templates != null) {
-            templates.forEach((template) -> properties.addAll(extractPropertiesFromTemplate(template)));
+            properties.addAll(ParallelPropertiesExtractor.extractPropertiesFromTemplates(new ArrayList<>(templates)));
         }
         return properties;
     }
@@ -58,7 +63,34 @@ public abstract class AbstractProperty {
         return properties;
     }
 
+    /**
+     * Le contenu est parcouru en une seule passe par le PropertyScanner.
+     * Les contenus qu'il ne traite pas (partials, syntaxe invalide, définition de propriété incorrecte)
+     * sont compilés par Mustache, qui fait alors référence pour le résultat comme pour l'erreur levée.
+     */
     public static List<AbstractProperty> extractPropertiesFromStringContent(String content) {
+        try {
+            return PropertyScanner.extractProperties(content);
+        } catch (RuntimeException e) {
+            return extractPropertiesFromMustacheContent(content);
+        }
+    }
+
+    /**
+     * Extraction au fil de la lecture, sans charger le contenu en mémoire.
+     * Le flux ne pouvant être relu, il n'y a pas de repli sur la compilation Mustache :
+     * un contenu non supporté (partials, syntaxe invalide, balise non fermée ou trop longue) lève une MustacheException.
+     * Le Reader n'est pas fermé.
+     */
+    public static List<AbstractProperty> extractPropertiesFromReader(Reader reader) {
+        return PropertyScanner.extractProperties(reader);
+    }
+
+    public static List<AbstractProperty> extractPropertiesFromInputStream(InputStream inputStream, Charset charset) {
+        return extractPropertiesFromReader(new InputStreamReader(inputStream, charset));
+    }
+
+    static List<AbstractProperty> extractPropertiesFromMustacheContent(String content) {
         List<AbstractProperty> properties = new ArrayList<>();
         Mustache mustache = getMustacheInstanceFromStringContent(content);
         for (Code code : mustache.getCodes()) {
@@ -79,8 +111,7 @@ public abstract class AbstractProperty {
     }
 
     public static Mustache getMustacheInstanceFromStringContent(String content) {
-        MustacheFactory mustacheFactory = new DefaultMustacheFactory();
-        return mustacheFactory.compile(new StringReader(content), "anything");
+        return MustacheCache.getInstance().get(content);
     }
 
     public static void validateProperties(List<AbstractProperty> abstractProperties) {
@@ -0,0 +1,175 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.domain.templatecontainers.entities;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheFactory;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache partagé par tout le processus des instances Mustache compilées.
+ * <p>
+ * Les templates sont identifiés par l'empreinte SHA-256 de leur contenu : un même template
+ * copié d'une version de module à l'autre n'est donc compilé qu'une seule fois.
+ * L'éviction se fait selon l'ordre d'accès (LRU) dès que le nombre d'entrées ou la taille
+ * cumulée des contenus mis en cache dépasse la limite configurée.
+ * <p>
+ * Une instance Mustache compilée n'est plus modifiée après sa compilation,
+ * elle peut donc être partagée entre les threads.
+ */
+public final class MustacheCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 50L * 1024 * 1024;
+
+    private static final MustacheCache INSTANCE = new MustacheCache(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_WEIGHT);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final MustacheFactory mustacheFactory = new DefaultMustacheFactory();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int maximumSize;
+    private long maximumWeight;
+    private long weight;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    MustacheCache(int maximumSize, long maximumWeight) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+    }
+
+    public static MustacheCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Retourne l'instance compilée correspondant au contenu, en la compilant si elle n'est pas encore en cache.
+     * Un contenu qui ne compile pas lève la même exception qu'une compilation directe et n'est pas mis en cache.
+     */
+    public Mustache get(String content) {
+        String key = hash(content);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hitCount.incrementAndGet();
+                return entry.mustache;
+            }
+        }
+        missCount.incrementAndGet();
+        // La compilation se fait hors verrou : deux threads peuvent compiler le même contenu
+        // en parallèle, le second résultat remplace simplement le premier.
+        Mustache mustache = mustacheFactory.compile(new StringReader(content), "anything");
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(mustache, content.length()));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += content.length();
+            evictIfNecessary();
+        }
+        return mustache;
+    }
+
+    public synchronized void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+        evictIfNecessary();
+    }
+
+    public synchronized void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        evictIfNecessary();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    private void evictIfNecessary() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maximumSize || weight > maximumWeight) && iterator.hasNext()) {
+            weight -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private static String hash(String content) {
+        byte[] digest = DIGEST.get().digest(content.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static final class Entry {
+        private final Mustache mustache;
+        private final int weight;
+
+        private Entry(Mustache mustache, int weight) {
+            this.mustache = mustache;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.domain.templatecontainers.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Extraction des propriétés d'une liste de templates, répartie sur un ForkJoinPool dédié
+ * dès que le nombre de templates atteint le seuil configuré.
+ * <p>
+ * Le résultat est toujours dans l'ordre des templates, quel que soit l'ordre dans lequel ils ont été traités.
+ */
+public final class ParallelPropertiesExtractor {
+
+    public static final int DEFAULT_THRESHOLD = 16;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static volatile boolean enabled = true;
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+    private static volatile ForkJoinPool pool;
+
+    private ParallelPropertiesExtractor() {
+    }
+
+    /**
+     * @param enabled     active ou non l'extraction parallèle
+     * @param parallelism nombre de threads du pool, 0 pour le nombre de processeurs disponibles
+     * @param threshold   nombre de templates à partir duquel l'extraction est parallélisée
+     */
+    public static synchronized void configure(boolean enabled, int parallelism, int threshold) {
+        ParallelPropertiesExtractor.enabled = enabled;
+        ParallelPropertiesExtractor.threshold = Math.max(1, threshold);
+        ForkJoinPool previousPool = pool;
+        pool = enabled ? createPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()) : null;
+        if (previousPool != null) {
+            previousPool.shutdown();
+        }
+    }
+
+    /**
+     * Retourne, pour chaque template et dans le même ordre, la liste de ses propriétés.
+     */
+    public static List<List<AbstractProperty>> extractPropertiesOfEachTemplate(List<Template> templates) {
+        @SuppressWarnings("unchecked")
+        List<AbstractProperty>[] results = new List[templates.size()];
+        ForkJoinPool extractionPool = getPool();
+        if (extractionPool == null || templates.size() < threshold) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = AbstractProperty.extractPropertiesFromTemplate(templates.get(i));
+            }
+        } else {
+            int batchSize = Math.max(1, templates.size() / (extractionPool.getParallelism() * 4));
+            extractionPool.invoke(new ExtractionTask(templates, results, 0, results.length, batchSize));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Concatène les propriétés de tous les templates, dans l'ordre des templates.
+     */
+    public static List<AbstractProperty> extractPropertiesFromTemplates(List<Template> templates) {
+        List<AbstractProperty> properties = new ArrayList<>();
+        extractPropertiesOfEachTemplate(templates).forEach(properties::addAll);
+        return properties;
+    }
+
+    /**
+     * Applique l'action à chaque élément, sur le pool dédié à partir du même seuil que l'extraction des templates,
+     * par exemple pour calculer le modèle de propriétés de plusieurs modules.
+     */
+    public static <T> void forEach(List<T> items, Consumer<? super T> action) {
+        ForkJoinPool extractionPool = getPool();
+        if (extractionPool == null || items.size() < threshold) {
+            items.forEach(action);
+        } else {
+            int batchSize = Math.max(1, items.size() / (extractionPool.getParallelism() * 4));
+            extractionPool.invoke(new ForEachTask<>(items, action, 0, items.size(), batchSize));
+        }
+    }
+
+    private static ForkJoinPool getPool() {
+        ForkJoinPool extractionPool = pool;
+        if (extractionPool == null && enabled) {
+            synchronized (ParallelPropertiesExtractor.class) {
+                if (pool == null && enabled) {
+                    pool = createPool(Runtime.getRuntime().availableProcessors());
+                }
+                extractionPool = pool;
+            }
+        }
+        return extractionPool;
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        return new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("properties-extraction-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    private static final class ExtractionTask extends RecursiveAction {
+
+        private final List<Template> templates;
+        private final List<AbstractProperty>[] results;
+        private final int start;
+        private final int end;
+        private final int batchSize;
+
+        private ExtractionTask(List<Template> templates, List<AbstractProperty>[] results, int start, int end, int batchSize) {
+            this.templates = templates;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= batchSize) {
+                for (int i = start; i < end; i++) {
+                    results[i] = AbstractProperty.extractPropertiesFromTemplate(templates.get(i));
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ExtractionTask(templates, results, start, middle, batchSize),
+                        new ExtractionTask(templates, results, middle, end, batchSize));
+            }
+        }
+    }
+
+    private static final class ForEachTask<T> extends RecursiveAction {
+
+        private final List<T> items;
+        private final Consumer<? super T> action;
+        private final int start;
+        private final int end;
+        private final int batchSize;
+
+        private ForEachTask(List<T> items, Consumer<? super T> action, int start, int end, int batchSize) {
+            this.items = items;
+            this.action = action;
+            this.start = start;
+            this.end = end;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= batchSize) {
+                for (int i = start; i < end; i++) {
+                    action.accept(items.get(i));
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ForEachTask<>(items, action, start, middle, batchSize),
+                        new ForEachTask<>(items, action, middle, end, batchSize));
+            }
+        }
+    }
+}
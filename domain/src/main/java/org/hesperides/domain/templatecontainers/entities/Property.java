@@ -1,6 +1,7 @@
 package org.hesperides.domain.templatecontainers.entities;
 
 import lombok.Value;
+import org.hesperides.domain.templatecontainers.exceptions.PropertyWithoutNameException;
 import org.hesperides.domain.templatecontainers.exceptions.RequiredPropertyCannotHaveDefaultValueException;
 import org.springframework.util.StringUtils;
 
@@ -57,10 +58,8 @@ public class Property extends AbstractProperty {
         }
     }
 
-    private static final String NAME_ANNOTATIONS_SEPARATOR_REGEX = "[|]";
-    private static final int NAME_INDEX = 0;
-    private static final int ANNOTATIONS_INDEX = 1;
-    private static final String ANNOTATION_PREFIX = "@";
+    private static final char NAME_ANNOTATIONS_SEPARATOR = '|';
+    private static final char ANNOTATION_PREFIX_CHAR = '@';
 
     /**
      * Crée un objet Property à partir d'une chaîne de caractère au format suivant :
@@ -75,6 +74,8 @@ public class Property extends AbstractProperty {
      * - @default annotation_value (avec ou sans "")
      * - @pattern annotation_value (avec ou sans "")
      * - @password
+     * <p>
+     * Une définition constituée uniquement de pipes lève une PropertyWithoutNameException.
      *
      * @param propertyDefinition
      * @return
@@ -82,40 +83,106 @@ public class Property extends AbstractProperty {
     public static Property extractPropertyFromStringDefinition(String propertyDefinition) {
         Property property = null;
         if (propertyDefinition != null) {
-            String[] propertyAttributes = propertyDefinition.split(NAME_ANNOTATIONS_SEPARATOR_REGEX);
-
-            String name = propertyAttributes[NAME_INDEX].trim();
-            boolean required = false;
-            String comment = "";
-            String defaultValue = "";
-            String pattern = "";
-            boolean password = false;
-
-            if (propertyAttributes.length > 1 && propertyAttributes[1].contains(ANNOTATION_PREFIX)) {
-                String[] annotations = propertyAttributes[ANNOTATIONS_INDEX].split(ANNOTATION_PREFIX);
-
-                for (String annotation : annotations) {
+            property = extractPropertyFromDefinition(propertyDefinition, 0, propertyDefinition.length());
+        }
+        return property;
+    }
 
-                    if (annotation.toLowerCase().startsWith(Annotation.IS_REQUIRED.getName().toLowerCase())) {
+    /**
+     * Même règles que {@link #extractPropertyFromStringDefinition(String)}, appliquées à la portion [start, end[
+     * d'une séquence de caractères, sans expression régulière ni copie intermédiaire de la définition.
+     * Seuls le nom et les valeurs d'annotations donnent lieu à une allocation.
+     */
+    static Property extractPropertyFromDefinition(CharSequence definition, int start, int end) {
+        int nameEnd = indexOf(definition, NAME_ANNOTATIONS_SEPARATOR, start, end);
+        if (nameEnd == start && end > start && indexOfOtherThan(definition, NAME_ANNOTATIONS_SEPARATOR, start, end) == end) {
+            throw new PropertyWithoutNameException(definition.subSequence(start, end).toString());
+        }
+        String name = trim(definition, start, nameEnd);
+        boolean required = false;
+        String comment = "";
+        String defaultValue = "";
+        String pattern = "";
+        boolean password = false;
+
+        if (nameEnd < end) {
+            int annotationsStart = nameEnd + 1;
+            int annotationsEnd = indexOf(definition, NAME_ANNOTATIONS_SEPARATOR, annotationsStart, end);
+            if (indexOf(definition, ANNOTATION_PREFIX_CHAR, annotationsStart, annotationsEnd) < annotationsEnd) {
+                int annotationStart = annotationsStart;
+                while (annotationStart <= annotationsEnd) {
+                    int annotationEnd = indexOf(definition, ANNOTATION_PREFIX_CHAR, annotationStart, annotationsEnd);
+
+                    if (startsWithIgnoreCase(definition, annotationStart, annotationEnd, Annotation.IS_REQUIRED.getName())) {
                         required = true;
 
-                    } else if (annotation.toLowerCase().startsWith(Annotation.COMMENT.getName().toLowerCase())) {
-                        comment = extractPropertyAnnotationValue(annotation);
+                    } else if (startsWithIgnoreCase(definition, annotationStart, annotationEnd, Annotation.COMMENT.getName())) {
+                        comment = extractPropertyAnnotationValue(definition.subSequence(annotationStart, annotationEnd).toString());
 
-                    } else if (annotation.toLowerCase().startsWith(Annotation.DEFAULT_VALUE.getName().toLowerCase())) {
-                        defaultValue = extractPropertyAnnotationValue(annotation);
+                    } else if (startsWithIgnoreCase(definition, annotationStart, annotationEnd, Annotation.DEFAULT_VALUE.getName())) {
+                        defaultValue = extractPropertyAnnotationValue(definition.subSequence(annotationStart, annotationEnd).toString());
 
-                    } else if (annotation.toLowerCase().startsWith(Annotation.PATTERN.getName().toLowerCase())) {
-                        pattern = extractPropertyAnnotationValue(annotation);
+                    } else if (startsWithIgnoreCase(definition, annotationStart, annotationEnd, Annotation.PATTERN.getName())) {
+                        pattern = extractPropertyAnnotationValue(definition.subSequence(annotationStart, annotationEnd).toString());
 
-                    } else if (annotation.toLowerCase().startsWith(Annotation.IS_PASSWORD.getName().toLowerCase())) {
+                    } else if (startsWithIgnoreCase(definition, annotationStart, annotationEnd, Annotation.IS_PASSWORD.getName())) {
                         password = true;
                     }
+                    annotationStart = annotationEnd + 1;
                 }
             }
-            property = new Property(name, required, comment, defaultValue, pattern, password);
         }
-        return property;
+        return new Property(name, required, comment, defaultValue, pattern, password);
+    }
+
+    private static int indexOf(CharSequence sequence, char searched, int start, int end) {
+        int index = start;
+        while (index < end && sequence.charAt(index) != searched) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int indexOfOtherThan(CharSequence sequence, char ignored, int start, int end) {
+        int index = start;
+        while (index < end && sequence.charAt(index) == ignored) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Équivalent de String.trim() sur la portion [start, end[.
+     */
+    static String trim(CharSequence sequence, int start, int end) {
+        while (start < end && sequence.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && sequence.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return sequence.subSequence(start, end).toString();
+    }
+
+    /**
+     * Équivalent de annotation.toLowerCase().startsWith(prefix) pour un préfixe en minuscules ASCII.
+     * Le cas des caractères non ASCII, dont la mise en minuscule peut changer la longueur, passe par toLowerCase().
+     */
+    private static boolean startsWithIgnoreCase(CharSequence sequence, int start, int end, String prefix) {
+        int length = Math.min(end - start, prefix.length());
+        for (int i = 0; i < length; i++) {
+            char c = sequence.charAt(start + i);
+            if (c >= 0x80) {
+                return sequence.subSequence(start, end).toString().toLowerCase().startsWith(prefix);
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return length == prefix.length();
     }
 
     /**
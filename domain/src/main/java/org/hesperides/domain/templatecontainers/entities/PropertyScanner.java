@@ -0,0 +1,379 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.domain.templatecontainers.entities;
+
+import com.github.mustachejava.MustacheException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extraction des propriétés d'un contenu de template en une seule passe, sans compiler d'AST Mustache.
+ * <p>
+ * Le découpage reproduit celui de com.github.mustachejava.MustacheParser (délimiteurs, changement de délimiteurs,
+ * sections, sections inversées, valeurs non échappées, commentaires, pragmas) de façon à produire exactement
+ * les mêmes arbres de Property et IterableProperty que l'extraction à partir des ValueCode et IterableCode.
+ * <p>
+ * Un contenu en mémoire est parcouru en place. Un contenu lu depuis un Reader l'est par blocs : seuls le bloc courant
+ * et la commande en cours de lecture (le texte entre les délimiteurs), limitée à MAX_COMMAND_LENGTH caractères,
+ * sont conservés en mémoire, quelle que soit la taille du template. Un flux ne pouvant être relu, une commande
+ * trop longue ou non fermée y est rejetée, sans repli possible sur la compilation Mustache.
+ * <p>
+ * Les partials ({{> ...}}, {{< ...}}) et les contenus invalides ne sont pas traités ici :
+ * le scanner lève alors une UnsupportedContentException et l'appelant se rabat sur la compilation Mustache,
+ * qui produit le résultat ou l'erreur de référence.
+ */
+final class PropertyScanner {
+
+    private static final String DEFAULT_SM = "{{";
+    private static final String DEFAULT_EM = "}}";
+    private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 8192;
+    static final int MAX_COMMAND_LENGTH = 64 * 1024;
+
+    /**
+     * Contenu en mémoire, ou fenêtre sur le flux : les positions sont toujours comptées depuis le début du contenu
+     */
+    private final CharSequence content;
+    private final StreamWindow window;
+    private int position;
+    private int limit;
+    /**
+     * Début de la commande en cours de lecture, conservée lorsque la fenêtre avance sur le flux
+     */
+    private int commandStart = -1;
+
+    private PropertyScanner(CharSequence content) {
+        this.content = content;
+        this.window = null;
+        this.limit = content.length();
+    }
+
+    private PropertyScanner(Reader reader) {
+        this.window = new StreamWindow(reader);
+        this.content = window;
+    }
+
+    static List<AbstractProperty> extractProperties(CharSequence content) {
+        return new PropertyScanner(content).scan();
+    }
+
+    static List<AbstractProperty> extractProperties(Reader reader) {
+        return new PropertyScanner(reader).scan();
+    }
+
+    private List<AbstractProperty> scan() {
+        List<AbstractProperty> properties = new ArrayList<>();
+        scan(null, DEFAULT_SM, DEFAULT_EM, properties);
+        return properties;
+    }
+
+    private int read() {
+        int c = peek();
+        if (c != EOF) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() {
+        if (position == limit && (window == null || !window.fill())) {
+            return EOF;
+        }
+        return content.charAt(position);
+    }
+
+    /**
+     * Parcourt le contenu jusqu'à la fin ou jusqu'à la fermeture de la section {@code tag}.
+     * Les propriétés trouvées sont ajoutées à {@code properties}, sauf si la liste est nulle
+     * (corps d'un bloc {{$...}} dont Mustache ne remonte pas les valeurs).
+     */
+    private void scan(String tag, String sm, String em, List<AbstractProperty> properties) {
+        int c;
+        while ((c = read()) != EOF) {
+            commandStart = -1;
+            if (c == '\r' || c == '\n' || c != sm.charAt(0)) {
+                continue;
+            }
+            if (sm.length() > 1) {
+                if (peek() != sm.charAt(1)) {
+                    continue;
+                }
+                position++;
+            }
+
+            // Lecture de la commande jusqu'au délimiteur de fin
+            boolean delimiter = peek() == '=';
+            commandStart = position;
+            int delimiterEnd = -1;
+            if (delimiter) {
+                position++;
+            }
+            int commandEnd = -1;
+            boolean closed = false;
+            while ((c = read()) != EOF) {
+                if (delimiter) {
+                    if (c == '=') {
+                        delimiter = false;
+                        delimiterEnd = position - 1;
+                    }
+                    continue;
+                }
+                if (c == em.charAt(0)) {
+                    if (em.length() > 1) {
+                        if (peek() == em.charAt(1)) {
+                            commandEnd = position - 1;
+                            position++;
+                            closed = true;
+                            break;
+                        }
+                    } else {
+                        commandEnd = position - 1;
+                        closed = true;
+                        break;
+                    }
+                }
+            }
+            if (!closed) {
+                if (window != null) {
+                    throw new UnsupportedContentException("Unclosed tag");
+                }
+                commandEnd = position;
+            }
+            if (commandEnd == commandStart) {
+                throw new UnsupportedContentException("Empty mustache");
+            }
+
+            char command = content.charAt(commandStart);
+            switch (command) {
+                case '#':
+                case '^': {
+                    String variable = Property.trim(content, commandStart + 1, commandEnd);
+                    List<AbstractProperty> children = new ArrayList<>();
+                    scan(variable, sm, em, children);
+                    if (properties != null) {
+                        properties.add(new IterableProperty(variable, children));
+                    }
+                    break;
+                }
+                case '$':
+                    scan(Property.trim(content, commandStart + 1, commandEnd), sm, em, null);
+                    break;
+                case '<':
+                case '>':
+                    throw new UnsupportedContentException("Partial");
+                case '/':
+                    if (tag == null || !tag.equals(Property.trim(content, commandStart + 1, commandEnd))) {
+                        throw new UnsupportedContentException("Mismatched start/end tags");
+                    }
+                    return;
+                case '{': {
+                    int variableStart = trimStart(commandStart + 1, commandEnd);
+                    int variableEnd = trimEnd(variableStart, commandEnd);
+                    if (em.length() < 2) {
+                        throw new UnsupportedContentException("Invalid end delimiter");
+                    }
+                    if (em.charAt(1) != '}') {
+                        if (variableEnd == variableStart) {
+                            throw new UnsupportedContentException("Improperly closed variable");
+                        }
+                        variableEnd--;
+                    } else if (read() != '}') {
+                        throw new UnsupportedContentException("Improperly closed variable");
+                    }
+                    addProperty(properties, variableStart, variableEnd);
+                    break;
+                }
+                case '&': {
+                    int variableStart = trimStart(commandStart + 1, commandEnd);
+                    addProperty(properties, variableStart, trimEnd(variableStart, commandEnd));
+                    break;
+                }
+                case '%':
+                case '!':
+                    break;
+                case '=': {
+                    String[] delimiters = splitDelimiters(commandStart, delimiterEnd, commandEnd);
+                    sm = delimiters[0];
+                    em = delimiters[1];
+                    break;
+                }
+                default: {
+                    if (!closed) {
+                        throw new UnsupportedContentException("Improperly closed variable");
+                    }
+                    int nameStart = trimStart(commandStart, commandEnd);
+                    addProperty(properties, nameStart, trimEnd(nameStart, commandEnd));
+                    break;
+                }
+            }
+        }
+        if (tag != null) {
+            throw new UnsupportedContentException("Failed to close '" + tag + "' tag");
+        }
+    }
+
+    private void addProperty(List<AbstractProperty> properties, int start, int end) {
+        if (properties != null) {
+            properties.add(Property.extractPropertyFromDefinition(content, start, end));
+        }
+    }
+
+    private int trimStart(int start, int end) {
+        while (start < end && content.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && content.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * La commande d'un changement de délimiteurs est constituée du '=' initial, des caractères lus jusqu'au '='
+     * suivant (exclu) puis de ceux lus jusqu'au délimiteur de fin. Elle doit contenir exactement deux mots.
+     */
+    private String[] splitDelimiters(int commandStart, int delimiterEnd, int commandEnd) {
+        StringBuilder command = new StringBuilder(commandEnd - commandStart);
+        if (delimiterEnd < 0) {
+            command.append(content, commandStart + 1, commandEnd);
+        } else {
+            command.append(content, commandStart + 1, delimiterEnd).append(content, delimiterEnd + 1, commandEnd);
+        }
+        String trimmed = Property.trim(command, 0, command.length());
+        String[] delimiters = new String[2];
+        int count = 0;
+        int index = 0;
+        while (index < trimmed.length()) {
+            while (index < trimmed.length() && isWhitespace(trimmed.charAt(index))) {
+                index++;
+            }
+            int wordStart = index;
+            while (index < trimmed.length() && !isWhitespace(trimmed.charAt(index))) {
+                index++;
+            }
+            if (index > wordStart) {
+                if (count == 2) {
+                    throw new UnsupportedContentException("Invalid delimiter string");
+                }
+                delimiters[count++] = trimmed.substring(wordStart, index);
+            }
+        }
+        if (count != 2) {
+            throw new UnsupportedContentException("Invalid delimiter string");
+        }
+        return delimiters;
+    }
+
+    /**
+     * Caractères de la classe \s des expressions régulières Java.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Hérite de MustacheException : lorsque le contenu est lu en flux, aucun repli n'est possible
+     * et l'erreur remonte telle qu'une compilation Mustache l'aurait signalée.
+     */
+    static final class UnsupportedContentException extends MustacheException {
+        UnsupportedContentException(String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // Exception de contrôle : la pile d'appels n'apporte rien et coûte cher
+            return this;
+        }
+    }
+
+    /**
+     * Derniers caractères lus dans le flux, à partir du début de la commande en cours s'il y en a une,
+     * indexés par leur position depuis le début du contenu.
+     */
+    private final class StreamWindow implements CharSequence {
+
+        private final Reader reader;
+        private char[] buffer = new char[BUFFER_SIZE];
+        /**
+         * Position, dans le contenu, du premier caractère du buffer
+         */
+        private int offset;
+
+        StreamWindow(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Lit le bloc suivant, après la commande en cours qui est conservée.
+         *
+         * @return false à la fin du flux
+         */
+        boolean fill() {
+            int kept = commandStart >= 0 ? limit - commandStart : 0;
+            if (kept >= MAX_COMMAND_LENGTH) {
+                throw new UnsupportedContentException("Tag longer than " + MAX_COMMAND_LENGTH + " characters");
+            }
+            if (kept + BUFFER_SIZE > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_COMMAND_LENGTH + BUFFER_SIZE));
+            }
+            System.arraycopy(buffer, limit - kept - offset, buffer, 0, kept);
+            offset = limit - kept;
+            try {
+                int count;
+                do {
+                    count = reader.read(buffer, kept, buffer.length - kept);
+                } while (count == 0);
+                if (count < 0) {
+                    return false;
+                }
+                limit += count;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int length() {
+            return limit;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buffer[index - offset];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(buffer, start - offset, end - start);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.hesperides.domain.templatecontainers.exceptions;
+
+/**
+ * Définition de propriété constituée uniquement de pipes, "|||" par exemple, qui ne contient donc aucun nom.
+ * Comme l'erreur levée jusqu'ici par le découpage de la définition, elle n'est pas traduite en erreur du client.
+ */
+public class PropertyWithoutNameException extends RuntimeException {
+
+    public PropertyWithoutNameException(String propertyDefinition) {
+        super(String.format("Property definition \"%s\" has no name", propertyDefinition));
+    }
+}
@@ -5,6 +5,9 @@ import lombok.Value;
 import org.hesperides.domain.templatecontainers.entities.Template;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -17,6 +20,34 @@ public class TemplateView {
     String content;
     RightsView rights;
     Long versionId;
+    /**
+     * Lecture en flux du contenu des templates trop volumineux pour être chargés en mémoire, dont le content est alors null
+     */
+    ContentReader contentReader;
+
+    public boolean isContentStreamed() {
+        return content == null && contentReader != null;
+    }
+
+    /**
+     * Contenu du template, lu en entier s'il n'est disponible qu'en flux
+     */
+    public String readContent() {
+        if (!isContentStreamed()) {
+            return content;
+        }
+        StringBuilder readContent = new StringBuilder();
+        try (Reader reader = contentReader.open()) {
+            char[] buffer = new char[8192];
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                readContent.append(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return readContent.toString();
+    }
 
     public static List<Template> toDomainInstances(List<TemplateView> templateViews, TemplateContainer.Key key) {
         List<Template> templates = null;
@@ -27,7 +58,12 @@ public class TemplateView {
     }
 
     public Template toDomainInstance(TemplateContainer.Key key) {
-        return new Template(name, filename, location, content, rights.toDomainInstance(), versionId, key);
+        return new Template(name, filename, location, readContent(), rights.toDomainInstance(), versionId, key);
+    }
+
+    @FunctionalInterface
+    public interface ContentReader {
+        Reader open() throws IOException;
     }
 
     @Value
@@ -22,6 +22,8 @@ data class ModuleDeletedEvent(val moduleKey: TemplateContainer.Key, override val
 // Query
 data class ModuleAlreadyExistsQuery(val moduleKey: TemplateContainer.Key)
 data class GetModuleByKeyQuery(val moduleKey: TemplateContainer.Key)
+// Le module et le contenu de ses templates, pour le copier
+data class GetModuleWithTemplatesQuery(val moduleKey: TemplateContainer.Key)
 class GetModulesNamesQuery
 data class GetModuleVersionTypesQuery(val moduleName: String, val moduleVersion: String)
 data class GetModuleVersionsQuery(val moduleName: String)
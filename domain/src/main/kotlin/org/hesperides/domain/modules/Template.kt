@@ -1,6 +1,7 @@
 package org.hesperides.domain.modules
 
 import org.axonframework.commandhandling.TargetAggregateIdentifier
+import org.axonframework.serialization.Revision
 import org.hesperides.domain.templatecontainers.entities.Template
 import org.hesperides.domain.security.User
 import org.hesperides.domain.security.UserEvent
@@ -13,8 +14,9 @@ data class UpdateTemplateCommand(@TargetAggregateIdentifier val moduleKey: Templ
 data class DeleteTemplateCommand(@TargetAggregateIdentifier val moduleKey: TemplateContainer.Key, val templateName: String, val user: User)
 
 // Event
-data class TemplateCreatedEvent(val moduleKey: TemplateContainer.Key, val template: Template, override val user: User) : UserEvent(user)
-data class TemplateUpdatedEvent(val moduleKey: TemplateContainer.Key, val template: Template, override val user: User) : UserEvent(user)
+// Révision 2 : les propriétés extraites et validées par l'agrégat sont portées par l'évènement
+@Revision("2") data class TemplateCreatedEvent(val moduleKey: TemplateContainer.Key, val template: Template, val properties: List<AbstractProperty>, override val user: User) : UserEvent(user)
+@Revision("2") data class TemplateUpdatedEvent(val moduleKey: TemplateContainer.Key, val template: Template, val properties: List<AbstractProperty>, override val user: User) : UserEvent(user)
 data class TemplateDeletedEvent(val moduleKey: TemplateContainer.Key, val templateName: String, override val user: User) : UserEvent(user)
 
 // Query
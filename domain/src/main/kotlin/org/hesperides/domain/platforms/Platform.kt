@@ -4,6 +4,7 @@ import org.axonframework.commandhandling.TargetAggregateIdentifier
 import org.hesperides.domain.platforms.entities.Platform
 import org.hesperides.domain.security.User
 import org.hesperides.domain.security.UserEvent
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer
 
 // Command
 data class CreatePlatformCommand(val platform: Platform, val user: User)
@@ -14,4 +15,5 @@ data class PlatformCreatedEvent(val platform: Platform, override val user: User)
 data class PlatformDeletedEvent(val platformKey: Platform.Key, override val user: User) : UserEvent(user)
 
 // Query
-data class GetPlatformByKeyQuery(val platformKey: Platform.Key)
\ No newline at end of file
+data class GetPlatformByKeyQuery(val platformKey: Platform.Key)
+data class GetPlatformsUsingModuleQuery(val moduleKey: TemplateContainer.Key)
\ No newline at end of file
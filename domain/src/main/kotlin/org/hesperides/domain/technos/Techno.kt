@@ -1,6 +1,7 @@
 package org.hesperides.domain.technos
 
 import org.axonframework.commandhandling.TargetAggregateIdentifier
+import org.axonframework.serialization.Revision
 import org.hesperides.domain.security.User
 import org.hesperides.domain.security.UserEvent
 import org.hesperides.domain.technos.entities.Techno
@@ -18,8 +19,9 @@ data class DeleteTechnoTemplateCommand(@TargetAggregateIdentifier val technoKey:
 // Events
 data class TechnoCreatedEvent(val techno: Techno, override val user: User) : UserEvent(user)
 data class TechnoDeletedEvent(val technoKey: TemplateContainer.Key, override val user: User) : UserEvent(user)
-data class TemplateAddedToTechnoEvent(val technoKey: TemplateContainer.Key, val template: Template, override val user: User) : UserEvent(user)
-data class TechnoTemplateUpdatedEvent(val technoKey: TemplateContainer.Key, val template: Template, override val user: User) : UserEvent(user)
+// Révision 2 : les propriétés extraites et validées par l'agrégat sont portées par l'évènement
+@Revision("2") data class TemplateAddedToTechnoEvent(val technoKey: TemplateContainer.Key, val template: Template, val properties: List<AbstractProperty>, override val user: User) : UserEvent(user)
+@Revision("2") data class TechnoTemplateUpdatedEvent(val technoKey: TemplateContainer.Key, val template: Template, val properties: List<AbstractProperty>, override val user: User) : UserEvent(user)
 data class TechnoTemplateDeletedEvent(val technoKey: TemplateContainer.Key, val templateName: String, override val user: User) : UserEvent(user)
 
 // Queries
@@ -27,5 +29,7 @@ data class TechnoAlreadyExistsQuery(val technoKey: TemplateContainer.Key)
 data class GetTemplateQuery(val technoKey: TemplateContainer.Key, val templateName: String)
 data class GetTemplatesQuery(val technoKey: TemplateContainer.Key)
 data class GetTechnoQuery(val technoKey: TemplateContainer.Key)
+// La techno et le contenu de ses templates, pour la copier
+data class GetTechnoWithTemplatesQuery(val technoKey: TemplateContainer.Key)
 data class SearchTechnosQuery(val input: String)
 data class GetTechnoPropertiesQuery(val technoKey: TemplateContainer.Key)
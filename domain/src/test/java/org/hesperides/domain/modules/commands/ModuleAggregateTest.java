@@ -44,13 +44,13 @@ class ModuleAggregateTest {
     void when_create_template_then_expect_template_created() {
         fixture.given(new ModuleCreatedEvent(module, user))
                 .when(new CreateTemplateCommand(moduleKey, template, user))
-                .expectEvents(new TemplateCreatedEvent(moduleKey, template, user));
+                .expectEvents(new TemplateCreatedEvent(moduleKey, template, Collections.emptyList(), user));
     }
 
     @Test
     void when_create_template_already_existing_then_expect_error() {
         fixture.given(new ModuleCreatedEvent(module, user))
-                .andGiven(new TemplateCreatedEvent(moduleKey, template, user))
+                .andGiven(new TemplateCreatedEvent(moduleKey, template, Collections.emptyList(), user))
                 .when(new CreateTemplateCommand(moduleKey, template, user))
                 .expectException(DuplicateTemplateCreationException.class);
     }
@@ -59,9 +59,9 @@ class ModuleAggregateTest {
     void when_update_template_expect_template_updated_event() {
         Template updatedTemplate = new Template(template.getName(), template.getFilename(), template.getLocation(), template.getContent(), template.getRights(), template.getVersionId() + 1, template.getTemplateContainerKey());
         fixture.given(new ModuleCreatedEvent(module, user))
-                .andGiven(new TemplateCreatedEvent(moduleKey, template, user))
+                .andGiven(new TemplateCreatedEvent(moduleKey, template, Collections.emptyList(), user))
                 .when(new UpdateTemplateCommand(moduleKey, template, user))
-                .expectEvents(new TemplateUpdatedEvent(moduleKey, updatedTemplate, user));
+                .expectEvents(new TemplateUpdatedEvent(moduleKey, updatedTemplate, Collections.emptyList(), user));
     }
 
     @Test
@@ -81,7 +81,7 @@ class ModuleAggregateTest {
     @Test
     void when_delete_template_expect_template_deleted_event() {
         fixture.given(new ModuleCreatedEvent(module, user))
-                .andGiven(new TemplateCreatedEvent(moduleKey, template, user))
+                .andGiven(new TemplateCreatedEvent(moduleKey, template, Collections.emptyList(), user))
                 .when(new DeleteTemplateCommand(moduleKey, template.getName(), user))
                 .expectEvents(new TemplateDeletedEvent(moduleKey, template.getName(), user));
     }
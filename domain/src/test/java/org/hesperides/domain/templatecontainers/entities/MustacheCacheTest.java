@@ -0,0 +1,63 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.domain.templatecontainers.entities;
+
+import com.github.mustachejava.Mustache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MustacheCacheTest {
+
+    @Test
+    public void testIdenticalContentIsCompiledOnce() {
+        MustacheCache cache = new MustacheCache(10, 1000);
+        Mustache first = cache.get("{{ foo }} {{bar}}");
+        Mustache second = cache.get(new String("{{ foo }} {{bar}}"));
+        assertSame(first, second);
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        MustacheCache cache = new MustacheCache(2, 1000);
+        Mustache foo = cache.get("{{foo}}");
+        cache.get("{{bar}}");
+        cache.get("{{foo}}");
+        cache.get("{{fub}}");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertSame(foo, cache.get("{{foo}}"));
+    }
+
+    @Test
+    public void testEntriesAreEvictedAboveMaximumWeight() {
+        MustacheCache cache = new MustacheCache(10, 10);
+        Mustache foo = cache.get("{{foo}}");
+        cache.get("{{bar}}");
+        assertEquals(1, cache.size());
+        assertEquals(7, cache.weight());
+        assertNotSame(foo, cache.get("{{foo}}"));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.domain.templatecontainers.entities;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelPropertiesExtractorTest {
+
+    @After
+    public void tearDown() {
+        ParallelPropertiesExtractor.configure(true, 0, ParallelPropertiesExtractor.DEFAULT_THRESHOLD);
+    }
+
+    @Test
+    public void testParallelExtractionKeepsTemplatesOrder() {
+        List<Template> templates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            templates.add(new Template("template" + i, "file" + i, "/", "{{property" + i + "}} {{#iterable" + i + "}}{{child}}{{/iterable" + i + "}}", null, 1L, null));
+        }
+
+        ParallelPropertiesExtractor.configure(false, 0, 1);
+        List<AbstractProperty> sequentialProperties = ParallelPropertiesExtractor.extractPropertiesFromTemplates(templates);
+        ParallelPropertiesExtractor.configure(true, 4, 1);
+        List<AbstractProperty> parallelProperties = ParallelPropertiesExtractor.extractPropertiesFromTemplates(templates);
+
+        assertEquals(400, parallelProperties.size());
+        for (int i = 0; i < sequentialProperties.size(); i++) {
+            assertEquals(sequentialProperties.get(i).getName(), parallelProperties.get(i).getName());
+        }
+        assertEquals("property199", parallelProperties.get(398).getName());
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.domain.templatecontainers.entities;
+
+import com.github.mustachejava.Code;
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheException;
+import com.github.mustachejava.codes.IterableCode;
+import com.github.mustachejava.codes.ValueCode;
+import org.hesperides.domain.templatecontainers.exceptions.PropertyWithoutNameException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Vérifie que le PropertyScanner produit exactement les mêmes propriétés que l'extraction d'origine, à partir de l'AST
+ * Mustache et du découpage des définitions par expressions régulières, dont une copie sert ici de référence.
+ */
+public class PropertyScannerTest {
+
+    private static final String[] TOKENS = {
+            "{{", "}}", "{", "}", "#", "^", "/", "=", "&", "!", "$", "|", "@", " ", "\n", "\r", "\t",
+            "foo", "bar", "required", "comment \"a comment\"", "default 12", "pattern \"z\"", "password", "<% %>", "[ ]"
+    };
+
+    @Test
+    public void testTemplatesProduceTheSameProperties() {
+        assertSameExtraction("");
+        assertSameExtraction("no property at all");
+        assertSameExtraction("{{ foo}} {{bar }} {{ fub }}");
+        assertSameExtraction("{{foo|@required @comment \"a comment\" @pattern \"a pattern\" @password}}");
+        assertSameExtraction("{{foo|@COMMENT \"a comment\" @Default 12|ignored @required}}");
+        assertSameExtraction("{{{raw|@default 5}}} {{&amp}} {{! comment}} {{%pragma args}}");
+        assertSameExtraction("{{#iterable}}{{ child|@required }}{{#nested}}{{leaf}}{{/nested}}{{/iterable}}{{^not}}{{x}}{{/not}}");
+        assertSameExtraction("{{=<% %>=}}<% foo %><%{bar}%><%#it%><%=[ ]=%>[baz][/it]<%/it%><%qux%>");
+        assertSameExtraction("{{$block}}{{hidden}}{{#section}}{{hidden}}{{/section}}{{/block}}{{visible}}");
+        assertSameExtraction("line1\r\n{{ a }}\r\n{\r{b}} {{c\r}}");
+    }
+
+    @Test
+    public void testInvalidTemplatesAreRejected() {
+        assertSameExtraction("{{}}");
+        assertSameExtraction("{{foo");
+        assertSameExtraction("{{#foo}}");
+        assertSameExtraction("{{/foo}}");
+        assertSameExtraction("{{#foo}}{{/bar}}");
+        assertSameExtraction("{{{foo}}");
+        assertSameExtraction("{{=a=}}");
+        assertSameExtraction("{{|}}");
+        assertSameExtraction("{{foo|@comment}}");
+    }
+
+    @Test
+    public void testPropertyDefinitionsWithoutNameAreRejected() {
+        // L'extraction d'origine échouait sur une ArrayIndexOutOfBoundsException levée par le découpage de la définition.
+        // Le contenu reste rejeté, mais avec une exception explicite, quel que soit le chemin d'extraction.
+        try {
+            BaselineExtraction.extractProperties("{{|||}}");
+            fail("The original extraction fails on a property definition without name");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // comportement d'origine
+        }
+        try {
+            PropertyScanner.extractProperties("{{|||}}");
+            fail("A property definition without name must be rejected");
+        } catch (PropertyWithoutNameException e) {
+            // attendu
+        }
+        try {
+            AbstractProperty.extractPropertiesFromStringContent("{{|||}}");
+            fail("A property definition without name must be rejected");
+        } catch (PropertyWithoutNameException e) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void testPartialsAreLeftToMustache() {
+        String content = "{{> partial}}";
+        try {
+            PropertyScanner.extractProperties(content);
+            fail("Partials must not be handled by the scanner");
+        } catch (PropertyScanner.UnsupportedContentException e) {
+            // attendu
+        }
+        try {
+            AbstractProperty.extractPropertiesFromStringContent(content);
+            fail("Unknown partials must be rejected");
+        } catch (MustacheException e) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void testRandomTemplatesProduceTheSameProperties() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder content = new StringBuilder();
+            int tokens = random.nextInt(30);
+            for (int j = 0; j < tokens; j++) {
+                content.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            assertSameExtraction(content.toString());
+        }
+    }
+
+    @Test
+    public void testLargeContentIsStreamed() {
+        // Environ 20 Mo générés à la volée : le contenu n'est jamais entièrement en mémoire
+        int repetitions = 500000;
+        String chunk = "line with {{ foo|@required }} and {{#it}}{{ bar }}{{/it}} text\n";
+        Reader reader = new Reader() {
+            private int remaining = repetitions;
+            private int offset = chunk.length();
+
+            @Override
+            public int read(char[] buffer, int start, int length) {
+                if (offset == chunk.length()) {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    remaining--;
+                    offset = 0;
+                }
+                int count = Math.min(length, chunk.length() - offset);
+                chunk.getChars(offset, offset + count, buffer, start);
+                offset += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        List<AbstractProperty> properties = AbstractProperty.extractPropertiesFromReader(reader);
+        assertEquals(2 * repetitions, properties.size());
+        assertEquals("foo", properties.get(0).getName());
+        assertEquals("it", properties.get(properties.size() - 1).getName());
+    }
+
+    @Test
+    public void testInputStreamIsDecodedWithTheGivenCharset() {
+        String content = "{{ propriété|@comment \"é\" }}";
+        List<AbstractProperty> properties = AbstractProperty.extractPropertiesFromInputStream(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        assertSameProperties(content, AbstractProperty.extractPropertiesFromStringContent(content), properties);
+    }
+
+    @Test
+    public void testStreamedTagsUnderTheLimitAreRead() {
+        StringBuilder comment = new StringBuilder("{{foo|@comment \"");
+        while (comment.length() < PropertyScanner.MAX_COMMAND_LENGTH - 8) {
+            comment.append('x');
+        }
+        String content = "text {{bar}}" + comment.append("\"}}");
+        assertSameProperties(content, PropertyScanner.extractProperties(content),
+                AbstractProperty.extractPropertiesFromReader(new StringReader(content)));
+    }
+
+    @Test(expected = MustacheException.class)
+    public void testStreamedTagsOverTheLimitAreRejected() {
+        StringBuilder content = new StringBuilder("{{foo|@comment \"");
+        for (int i = 0; i < PropertyScanner.MAX_COMMAND_LENGTH; i++) {
+            content.append('x');
+        }
+        AbstractProperty.extractPropertiesFromReader(new StringReader(content.append("\"}}").toString()));
+    }
+
+    @Test(expected = MustacheException.class)
+    public void testStreamedUnclosedTagsAreRejected() {
+        // Sans fermeture, le reste du flux serait conservé comme texte de la balise
+        AbstractProperty.extractPropertiesFromReader(new StringReader("{{! comment without end"));
+    }
+
+    private static void assertSameExtraction(String content) {
+        List<AbstractProperty> expected;
+        try {
+            expected = BaselineExtraction.extractProperties(content);
+        } catch (RuntimeException baselineException) {
+            try {
+                PropertyScanner.extractProperties(content);
+                fail("Expected an error for " + content);
+            } catch (RuntimeException scannerException) {
+                // Les deux extractions rejettent le contenu
+            }
+            try {
+                AbstractProperty.extractPropertiesFromStringContent(content);
+                fail("Expected an error for " + content);
+            } catch (RuntimeException exception) {
+                // Y compris après le repli sur la compilation Mustache
+            }
+            try {
+                PropertyScanner.extractProperties(new ChunkedReader(content));
+                fail("Expected an error for streamed " + content);
+            } catch (RuntimeException scannerException) {
+                // Idem en flux
+            }
+            return;
+        }
+        List<AbstractProperty> actual;
+        try {
+            actual = PropertyScanner.extractProperties(content);
+        } catch (RuntimeException e) {
+            throw new AssertionError("Unexpected error for " + content, e);
+        }
+        assertSameProperties(content, expected, actual);
+        assertSameProperties(content, expected, AbstractProperty.extractPropertiesFromStringContent(content));
+        List<AbstractProperty> streamed;
+        try {
+            streamed = PropertyScanner.extractProperties(new ChunkedReader(content));
+        } catch (PropertyScanner.UnsupportedContentException e) {
+            // En flux, une balise non fermée est toujours rejetée
+            assertEquals(content, "Unclosed tag", e.getMessage());
+            return;
+        }
+        assertSameProperties(content, expected, streamed);
+    }
+
+    private static void assertSameProperties(String content, List<AbstractProperty> expected, List<AbstractProperty> actual) {
+        assertEquals(content, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            AbstractProperty expectedProperty = expected.get(i);
+            AbstractProperty actualProperty = actual.get(i);
+            assertEquals(content, expectedProperty.getClass(), actualProperty.getClass());
+            assertEquals(content, expectedProperty.getName(), actualProperty.getName());
+            if (expectedProperty instanceof Property) {
+                assertTrue(content, expectedProperty.equals(actualProperty));
+            } else {
+                assertSameProperties(content, ((IterableProperty) expectedProperty).getProperties(), ((IterableProperty) actualProperty).getProperties());
+            }
+        }
+    }
+
+    /**
+     * Renvoie le contenu par petits morceaux pour que les délimiteurs soient coupés entre deux lectures.
+     */
+    private static final class ChunkedReader extends FilterReader {
+
+        ChunkedReader(String content) {
+            super(new StringReader(content));
+        }
+
+        @Override
+        public int read(char[] buffer, int start, int length) throws IOException {
+            return super.read(buffer, start, Math.min(length, 3));
+        }
+    }
+
+    /**
+     * Copie de l'extraction telle qu'elle était avant le PropertyScanner, indépendante du code de production.
+     */
+    private static final class BaselineExtraction {
+
+        static List<AbstractProperty> extractProperties(String content) {
+            Mustache mustache = new DefaultMustacheFactory().compile(new StringReader(content), "anything");
+            return extractProperties(mustache.getCodes());
+        }
+
+        private static List<AbstractProperty> extractProperties(Code[] codes) {
+            List<AbstractProperty> properties = new ArrayList<>();
+            for (Code code : codes) {
+                if (code instanceof ValueCode) {
+                    properties.add(extractPropertyFromStringDefinition(code.getName()));
+                } else if (code instanceof IterableCode) {
+                    properties.add(new IterableProperty(code.getName(), extractProperties(code.getCodes())));
+                }
+            }
+            return properties;
+        }
+
+        private static Property extractPropertyFromStringDefinition(String propertyDefinition) {
+            String[] propertyAttributes = propertyDefinition.split("[|]");
+
+            String name = propertyAttributes[0].trim();
+            boolean required = false;
+            String comment = "";
+            String defaultValue = "";
+            String pattern = "";
+            boolean password = false;
+
+            if (propertyAttributes.length > 1 && propertyAttributes[1].contains("@")) {
+                for (String annotation : propertyAttributes[1].split("@")) {
+                    if (annotation.toLowerCase().startsWith("required")) {
+                        required = true;
+                    } else if (annotation.toLowerCase().startsWith("comment")) {
+                        comment = extractPropertyAnnotationValue(annotation);
+                    } else if (annotation.toLowerCase().startsWith("default")) {
+                        defaultValue = extractPropertyAnnotationValue(annotation);
+                    } else if (annotation.toLowerCase().startsWith("pattern")) {
+                        pattern = extractPropertyAnnotationValue(annotation);
+                    } else if (annotation.toLowerCase().startsWith("password")) {
+                        password = true;
+                    }
+                }
+            }
+            return new Property(name, required, comment, defaultValue, pattern, password);
+        }
+
+        private static String extractPropertyAnnotationValue(String annotation) {
+            String value = annotation.substring(annotation.indexOf(" ")).trim();
+            boolean startsWithQuotes = "\"".equals(value.substring(0, 1));
+            boolean endsWithQuotes = "\"".equals(value.substring(value.length() - 1));
+            if (startsWithQuotes && endsWithQuotes) {
+                value = value.substring(1, value.length() - 1);
+            }
+            return value.trim();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.model.Repository;
+import org.axonframework.common.lock.PessimisticLockFactory;
+import org.axonframework.eventsourcing.AggregateFactory;
+import org.axonframework.eventsourcing.CachingEventSourcingRepository;
+import org.axonframework.eventsourcing.SnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.eventstore.EventStore;
+import org.axonframework.messaging.annotation.ParameterResolverFactory;
+import org.axonframework.spring.eventsourcing.SpringPrototypeAggregateFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Cache des agrégats devant l'event store : une commande sur un agrégat déjà en cache
+ * ne rejoue plus son historique.
+ * <p>
+ * Axon utilise le repository nommé d'après l'agrégat ("moduleAggregateRepository"...) s'il existe.
+ * La fabrique d'agrégat est déclarée ici sous le nom qu'Axon lui aurait donné, pour que le snapshotter la trouve.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "aggregate_cache", name = "enabled", havingValue = "true")
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("aggregate_cache")
+public class AggregateCacheConfiguration {
+
+    private boolean enabled;
+    /**
+     * Nombre maximum d'agrégats en cache, pour chaque type d'agrégat
+     */
+    private int maximumSize = 1000;
+
+    // Les repositories peuvent être demandés tôt au démarrage, avant que l'event store et ses dépendances
+    // ne soient résolvables : ils ne sont donc injectés qu'à leur première utilisation.
+    @Autowired
+    @Lazy
+    private EventStore eventStore;
+
+    @Autowired
+    @Lazy
+    private ParameterResolverFactory parameterResolverFactory;
+
+    @Autowired
+    @Lazy
+    @Qualifier("aggregateSnapshotTriggerDefinition")
+    private SnapshotTriggerDefinition snapshotTriggerDefinition;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @Bean
+    public SpringPrototypeAggregateFactory<Object> moduleAggregateAggregateFactory() {
+        return aggregateFactory("moduleAggregate");
+    }
+
+    @Bean
+    public Repository<Object> moduleAggregateRepository() {
+        return repository("moduleAggregate", moduleAggregateAggregateFactory());
+    }
+
+    @Bean
+    public SpringPrototypeAggregateFactory<Object> technoAggregateAggregateFactory() {
+        return aggregateFactory("technoAggregate");
+    }
+
+    @Bean
+    public Repository<Object> technoAggregateRepository() {
+        return repository("technoAggregate", technoAggregateAggregateFactory());
+    }
+
+    @Bean
+    public SpringPrototypeAggregateFactory<Object> platformAggregateAggregateFactory() {
+        return aggregateFactory("platformAggregate");
+    }
+
+    @Bean
+    public Repository<Object> platformAggregateRepository() {
+        return repository("platformAggregate", platformAggregateAggregateFactory());
+    }
+
+    private static SpringPrototypeAggregateFactory<Object> aggregateFactory(String aggregateBeanName) {
+        SpringPrototypeAggregateFactory<Object> aggregateFactory = new SpringPrototypeAggregateFactory<>();
+        aggregateFactory.setPrototypeBeanName(aggregateBeanName);
+        return aggregateFactory;
+    }
+
+    private Repository<Object> repository(String aggregateBeanName, AggregateFactory<Object> aggregateFactory) {
+        log.info("Aggregate cache for {}: maximum size {}", aggregateBeanName, maximumSize);
+        BoundedAggregateCache cache = new BoundedAggregateCache(maximumSize);
+        if (metricRegistry != null) {
+            metricRegistry.register(MetricRegistry.name("aggregate_cache", aggregateBeanName, "hits"), (Gauge<Long>) cache::hitCount);
+            metricRegistry.register(MetricRegistry.name("aggregate_cache", aggregateBeanName, "misses"), (Gauge<Long>) cache::missCount);
+            metricRegistry.register(MetricRegistry.name("aggregate_cache", aggregateBeanName, "evictions"), (Gauge<Long>) cache::evictionCount);
+            metricRegistry.register(MetricRegistry.name("aggregate_cache", aggregateBeanName, "size"), (Gauge<Integer>) cache::size);
+        }
+        return new CachingEventSourcingRepository<>(aggregateFactory, eventStore, new PessimisticLockFactory(), cache,
+                parameterResolverFactory, snapshotTriggerDefinition);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import org.axonframework.common.Registration;
+import org.axonframework.common.caching.Cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache d'agrégats borné en nombre d'entrées, avec éviction selon l'ordre d'accès (LRU).
+ * <p>
+ * Le cache ne fait que conserver les agrégats : les accès concurrents à un même agrégat sont sérialisés
+ * par le verrou que le CachingEventSourcingRepository pose sur son identifiant pendant toute la commande,
+ * et l'entrée est retirée si la commande échoue.
+ */
+public class BoundedAggregateCache implements Cache {
+
+    private final LinkedHashMap<Object, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<EntryListener> listeners = new CopyOnWriteArraySet<>();
+    private final int maximumSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public BoundedAggregateCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> V get(K key) {
+        Object value;
+        synchronized (this) {
+            value = entries.get(key);
+        }
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+            listeners.forEach(listener -> listener.onEntryRead(key, value));
+        }
+        return (V) value;
+    }
+
+    @Override
+    public <K, V> void put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values not supported");
+        }
+        Object previous;
+        Map<Object, Object> evicted;
+        synchronized (this) {
+            previous = entries.put(key, value);
+            evicted = evictIfNecessary();
+        }
+        if (previous == null) {
+            listeners.forEach(listener -> listener.onEntryCreated(key, value));
+        } else {
+            listeners.forEach(listener -> listener.onEntryUpdated(key, value));
+        }
+        notifyEvictions(evicted);
+    }
+
+    @Override
+    public <K, V> boolean putIfAbsent(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values not supported");
+        }
+        Map<Object, Object> evicted;
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return false;
+            }
+            entries.put(key, value);
+            evicted = evictIfNecessary();
+        }
+        listeners.forEach(listener -> listener.onEntryCreated(key, value));
+        notifyEvictions(evicted);
+        return true;
+    }
+
+    @Override
+    public <K> boolean remove(K key) {
+        Object previous;
+        synchronized (this) {
+            previous = entries.remove(key);
+        }
+        if (previous == null) {
+            return false;
+        }
+        listeners.forEach(listener -> listener.onEntryRemoved(key));
+        return true;
+    }
+
+    @Override
+    public synchronized <K> boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Registration registerCacheEntryListener(EntryListener entryListener) {
+        listeners.add(entryListener);
+        return () -> listeners.remove(entryListener);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Les entrées évincées sont notifiées hors verrou, après coup.
+     */
+    private Map<Object, Object> evictIfNecessary() {
+        Map<Object, Object> evicted = null;
+        Iterator<Map.Entry<Object, Object>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            Map.Entry<Object, Object> eldest = iterator.next();
+            if (evicted == null) {
+                evicted = new LinkedHashMap<>();
+            }
+            evicted.put(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+        return evicted;
+    }
+
+    private void notifyEvictions(Map<Object, Object> evicted) {
+        if (evicted != null) {
+            evicted.keySet().forEach(key -> listeners.forEach(listener -> listener.onEntryExpired(key)));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.MetricRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy;
+import org.axonframework.commandhandling.distributed.UnresolvedRoutingKeyPolicy;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.messaging.interceptors.CorrelationDataInterceptor;
+import org.axonframework.spring.config.AxonConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Remplace le bus de commandes synchrone d'Axon, qui exécute les commandes sur le thread de la requête HTTP,
+ * par un bus asynchrone ordonné par agrégat (cf. KeyOrderedAsynchronousCommandBus).
+ * Les appels à sendAndWait attendent toujours la fin du traitement de la commande.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "command_bus", name = "mode", havingValue = "asynchronous")
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("command_bus")
+public class CommandBusConfiguration {
+
+    private String mode;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1000;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("localSegment")
+    public CommandBus commandBus(TransactionManager transactionManager, AxonConfiguration axonConfiguration) {
+        log.info("Asynchronous command bus: {} workers, {} queued commands per worker", workers, queueCapacity);
+        // Les commandes de création, sans identifiant d'agrégat, sont réparties aléatoirement
+        KeyOrderedAsynchronousCommandBus commandBus = new KeyOrderedAsynchronousCommandBus(workers, queueCapacity,
+                new AnnotationRoutingStrategy(UnresolvedRoutingKeyPolicy.RANDOM_KEY), transactionManager,
+                axonConfiguration.messageMonitor(CommandBus.class, "commandBus"), metricRegistry);
+        commandBus.registerHandlerInterceptor(new CorrelationDataInterceptor<>(axonConfiguration.correlationDataProviders()));
+        return commandBus;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.distributed.RoutingStrategy;
+import org.axonframework.common.transaction.TransactionManager;
+import org.axonframework.messaging.MessageHandler;
+import org.axonframework.monitoring.MessageMonitor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bus de commandes traitant les commandes sur un nombre fixe de threads.
+ * <p>
+ * Chaque thread dispose de sa propre file : toutes les commandes visant un même agrégat
+ * (même clé de routage) passent par la même file et sont donc exécutées dans leur ordre d'envoi,
+ * tandis que les commandes visant des agrégats différents s'exécutent en parallèle.
+ * <p>
+ * Chaque file est bornée : une commande arrivant sur une file pleine est rejetée (RejectedExecutionException
+ * transmise au callback) plutôt que d'accumuler les commandes en mémoire. Elle n'est pas exécutée sur le thread
+ * appelant, ce qui la ferait passer devant les commandes du même agrégat encore en file.
+ * <p>
+ * Mesures publiées, si un registre de métriques est fourni : profondeur des files (command_bus.queue_depth),
+ * attente en file (command_bus.queue_time), durée totale de traitement d'une commande (command_bus.latency)
+ * et commandes rejetées (command_bus.rejected).
+ */
+public class KeyOrderedAsynchronousCommandBus extends SimpleCommandBus {
+
+    private final RoutingStrategy routingStrategy;
+    private final ThreadPoolExecutor[] workers;
+    private final Timer queueTime;
+    private final Timer latency;
+    private final Meter rejected;
+
+    public KeyOrderedAsynchronousCommandBus(int workerCount, int queueCapacity, RoutingStrategy routingStrategy, TransactionManager transactionManager,
+                                            MessageMonitor<? super CommandMessage<?>> messageMonitor, MetricRegistry metricRegistry) {
+        super(transactionManager, messageMonitor);
+        this.routingStrategy = routingStrategy;
+        this.workers = new ThreadPoolExecutor[workerCount];
+        AtomicInteger threadNumber = new AtomicInteger();
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "command-bus-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (metricRegistry != null) {
+            metricRegistry.register("command_bus.queue_depth", (Gauge<Integer>) this::queueDepth);
+            this.queueTime = metricRegistry.timer("command_bus.queue_time");
+            this.latency = metricRegistry.timer("command_bus.latency");
+            this.rejected = metricRegistry.meter("command_bus.rejected");
+        } else {
+            this.queueTime = null;
+            this.latency = null;
+            this.rejected = null;
+        }
+    }
+
+    @Override
+    protected <C, R> void handle(CommandMessage<C> command, MessageHandler<? super CommandMessage<?>> handler, CommandCallback<? super C, R> callback) {
+        long dispatchTime = System.nanoTime();
+        try {
+            workerFor(command).execute(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    super.handle(command, handler, callback);
+                } finally {
+                    if (latency != null) {
+                        queueTime.update(startTime - dispatchTime, TimeUnit.NANOSECONDS);
+                        latency.update(System.nanoTime() - dispatchTime, TimeUnit.NANOSECONDS);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (rejected != null) {
+                rejected.mark();
+            }
+            callback.onFailure(command, e);
+        }
+    }
+
+    /**
+     * Nombre de commandes en attente, tous threads confondus
+     */
+    public int queueDepth() {
+        int queueDepth = 0;
+        for (ThreadPoolExecutor worker : workers) {
+            queueDepth += worker.getQueue().size();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Termine les commandes en cours et celles déjà en file avant de rendre la main.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor worker : workers) {
+                worker.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ThreadPoolExecutor workerFor(CommandMessage<?> command) {
+        String routingKey = routingStrategy.getRoutingKey(command);
+        return workers[Math.floorMod(routingKey.hashCode(), workers.length)];
+    }
+}
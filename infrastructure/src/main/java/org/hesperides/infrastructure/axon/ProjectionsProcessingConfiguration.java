@@ -0,0 +1,101 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.axonframework.eventhandling.TrackingEventProcessorConfiguration;
+import org.axonframework.eventhandling.async.SequentialPerAggregatePolicy;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.mongo.MongoTemplate;
+import org.axonframework.mongo.eventsourcing.tokenstore.MongoTokenStore;
+import org.axonframework.serialization.Serializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Choix du processeur d'événements qui alimente les projections Mongo.
+ * <p>
+ * Par défaut (subscribing), les projections sont mises à jour dans l'unité de travail de la commande :
+ * une requête lit toujours ce qu'elle vient d'écrire, mais la latence des commandes inclut le coût des projections.
+ * <p>
+ * En mode tracking, les projections sont alimentées à partir de l'event store par un processeur découpé en segments,
+ * chacun traité par son propre thread. Les événements d'un même agrégat restent traités dans l'ordre, dans un même segment,
+ * et la position de chaque segment est persistée dans Mongo : un redémarrage reprend là où le traitement s'était arrêté.
+ * Les projections deviennent alors éventuellement cohérentes : une réponse relue sur les projections juste après
+ * une commande (création d'un module, d'un template...) peut ne pas encore en tenir compte.
+ * <p>
+ * Un module et ses technos pouvant être traités dans des segments différents, le modèle de propriétés des modules
+ * d'une techno modifiée est recalculé ensuite, en dehors des event handlers (cf. TechnoModulesPropertiesUpdater).
+ */
+@Configuration
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("projections")
+public class ProjectionsProcessingConfiguration {
+
+    /**
+     * Groupe de traitement commun à toutes les projections Mongo : les projections d'un module
+     * et de ses templates modifient le même document, elles doivent donc être traitées dans l'ordre.
+     */
+    public static final String PROCESSING_GROUP = "projections";
+
+    @Autowired
+    private EventHandlingConfiguration eventHandlingConfiguration;
+
+    private String processor = "subscribing";
+    private int segments = 4;
+    private int threads = 4;
+    private int batchSize = 1;
+
+    public boolean isTracking() {
+        return "tracking".equals(processor);
+    }
+
+    // Après la liaison des propriétés, qui n'ont pas encore leur valeur lors de l'injection
+    @PostConstruct
+    public void configureProjectionsProcessor() {
+        if (isTracking()) {
+            log.info("Projections processor: tracking, {} segments, {} threads, batch size {}", segments, threads, batchSize);
+            eventHandlingConfiguration.registerTrackingProcessor(PROCESSING_GROUP,
+                    configuration -> TrackingEventProcessorConfiguration.forParallelProcessing(threads)
+                            .andInitialSegmentsCount(segments)
+                            .andBatchSize(batchSize),
+                    configuration -> new SequentialPerAggregatePolicy());
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "projections", name = "processor", havingValue = "tracking")
+    public TokenStore tokenStore(MongoTemplate axonMongoTemplate, Serializer serializer) {
+        MongoTokenStore tokenStore = new MongoTokenStore(axonMongoTemplate, serializer);
+        tokenStore.ensureIndexes();
+        return tokenStore;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.MetricRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.eventsourcing.NoSnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.SnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.spring.eventsourcing.SpringAggregateSnapshotterFactoryBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Snapshots des agrégats, enregistrés par le moteur de stockage des évènements
+ * (collection des snapshots de l'event store Mongo).
+ * <p>
+ * Les agrégats y font référence par le nom du bean "aggregateSnapshotTriggerDefinition".
+ */
+@Configuration
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("snapshots")
+public class SnapshotConfiguration {
+
+    private boolean enabled = true;
+    /**
+     * Nombre d'évènements appliqués depuis le dernier snapshot, 0 pour désactiver
+     */
+    private int eventThreshold = 100;
+    /**
+     * Durée de rejeu de l'historique, en millisecondes, 0 pour désactiver
+     */
+    private long replayTimeThreshold = 500;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @Bean
+    public SpringAggregateSnapshotterFactoryBean snapshotter() {
+        return new SpringAggregateSnapshotterFactoryBean();
+    }
+
+    @Bean
+    public SnapshotTriggerDefinition aggregateSnapshotTriggerDefinition(Snapshotter snapshotter) {
+        if (!enabled) {
+            log.info("Aggregate snapshots disabled");
+            return NoSnapshotTriggerDefinition.INSTANCE;
+        }
+        log.info("Aggregate snapshots: every {} events, replay time threshold {} ms", eventThreshold, replayTimeThreshold);
+        return new ThresholdSnapshotTriggerDefinition(snapshotter, eventThreshold, replayTimeThreshold, metricRegistry);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.MetricRegistry;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventsourcing.DomainEventMessage;
+import org.axonframework.eventsourcing.SnapshotTrigger;
+import org.axonframework.eventsourcing.SnapshotTriggerDefinition;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Déclenche un snapshot d'un agrégat lorsque l'une des conditions suivantes est remplie :
+ * <ul>
+ * <li>le nombre d'évènements appliqués depuis le dernier snapshot atteint {@code eventThreshold} ;</li>
+ * <li>le rejeu de l'historique au chargement de l'agrégat a duré plus de {@code replayTimeThreshold} millisecondes.</li>
+ * </ul>
+ * Un seuil à 0 désactive la condition correspondante.
+ * <p>
+ * Chaque chargement est mesuré dans le registre de métriques, s'il y en a un :
+ * nombre d'évènements rejoués, durée du rejeu, chargements partant d'un snapshot (hits) ou non (misses)
+ * et nombre de snapshots demandés.
+ */
+public class ThresholdSnapshotTriggerDefinition implements SnapshotTriggerDefinition {
+
+    private final Snapshotter snapshotter;
+    private final int eventThreshold;
+    private final long replayTimeThreshold;
+    private final MetricRegistry metricRegistry;
+
+    public ThresholdSnapshotTriggerDefinition(Snapshotter snapshotter, int eventThreshold, long replayTimeThreshold, MetricRegistry metricRegistry) {
+        this.snapshotter = snapshotter;
+        this.eventThreshold = eventThreshold;
+        this.replayTimeThreshold = replayTimeThreshold;
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public SnapshotTrigger prepareTrigger(Class<?> aggregateType) {
+        return new ThresholdSnapshotTrigger(this, aggregateType);
+    }
+
+    @Override
+    public SnapshotTrigger reconfigure(Class<?> aggregateType, SnapshotTrigger trigger) {
+        if (trigger instanceof ThresholdSnapshotTrigger) {
+            ((ThresholdSnapshotTrigger) trigger).definition = this;
+            return trigger;
+        }
+        return prepareTrigger(aggregateType);
+    }
+
+    private void scheduleSnapshot(Class<?> aggregateType, String aggregateIdentifier) {
+        snapshotter.scheduleSnapshot(aggregateType, aggregateIdentifier);
+        if (metricRegistry != null) {
+            metricRegistry.counter(metricName(aggregateType, "scheduled")).inc();
+        }
+    }
+
+    private void recordReplay(Class<?> aggregateType, int replayedEvents, long replayTimeNanos, boolean fromSnapshot) {
+        if (metricRegistry != null) {
+            metricRegistry.histogram(metricName(aggregateType, "replayed_events")).update(replayedEvents);
+            metricRegistry.timer(metricName(aggregateType, "replay_time")).update(replayTimeNanos, TimeUnit.NANOSECONDS);
+            metricRegistry.counter(metricName(aggregateType, fromSnapshot ? "hits" : "misses")).inc();
+        }
+    }
+
+    private static String metricName(Class<?> aggregateType, String name) {
+        return MetricRegistry.name("snapshots", aggregateType.getSimpleName(), name);
+    }
+
+    /**
+     * Un trigger est créé à chaque chargement d'agrégat et peut être conservé avec lui dans un cache,
+     * d'où la référence à la définition non sérialisée et restaurée par reconfigure.
+     */
+    private static class ThresholdSnapshotTrigger implements SnapshotTrigger, Serializable {
+
+        private final Class<?> aggregateType;
+        private transient ThresholdSnapshotTriggerDefinition definition;
+        private int counter;
+        private int replayedEvents;
+        private long replayStart;
+        private boolean fromSnapshot;
+        private String aggregateIdentifier;
+        private boolean snapshotScheduled;
+
+        ThresholdSnapshotTrigger(ThresholdSnapshotTriggerDefinition definition, Class<?> aggregateType) {
+            this.definition = definition;
+            this.aggregateType = aggregateType;
+        }
+
+        @Override
+        public void eventHandled(EventMessage<?> message) {
+            if (!(message instanceof DomainEventMessage)) {
+                return;
+            }
+            aggregateIdentifier = ((DomainEventMessage<?>) message).getAggregateIdentifier();
+            if (replayedEvents++ == 0) {
+                replayStart = System.nanoTime();
+                // Lorsqu'il existe, le snapshot est le premier message rejoué et porte l'agrégat lui-même
+                if (aggregateType.isAssignableFrom(message.getPayloadType())) {
+                    fromSnapshot = true;
+                    return;
+                }
+            }
+            if (definition.eventThreshold > 0 && ++counter >= definition.eventThreshold) {
+                scheduleSnapshot();
+            }
+        }
+
+        @Override
+        public void initializationFinished() {
+            long replayTime = System.nanoTime() - replayStart;
+            int events = fromSnapshot ? replayedEvents - 1 : replayedEvents;
+            definition.recordReplay(aggregateType, events, replayTime, fromSnapshot);
+            if (definition.replayTimeThreshold > 0 && events > 0
+                    && replayTime >= TimeUnit.MILLISECONDS.toNanos(definition.replayTimeThreshold)) {
+                scheduleSnapshot();
+            }
+        }
+
+        private void scheduleSnapshot() {
+            if (snapshotScheduled || aggregateIdentifier == null) {
+                return;
+            }
+            snapshotScheduled = true;
+            counter = 0;
+            // Le snapshot est pris une fois les évènements de la commande en cours enregistrés
+            if (CurrentUnitOfWork.isStarted()) {
+                CurrentUnitOfWork.get().onPrepareCommit(unitOfWork -> doScheduleSnapshot());
+                CurrentUnitOfWork.get().onRollback(unitOfWork -> snapshotScheduled = false);
+            } else {
+                doScheduleSnapshot();
+            }
+        }
+
+        private void doScheduleSnapshot() {
+            snapshotScheduled = false;
+            definition.scheduleSnapshot(aggregateType, aggregateIdentifier);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DBObject;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.messaging.InterceptorChain;
+import org.axonframework.messaging.Message;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.BatchingUnitOfWork;
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork;
+import org.axonframework.messaging.unitofwork.UnitOfWork;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
+
+/**
+ * Regroupe les écritures des projections Mongo par lot d'événements.
+ * <p>
+ * Pendant le traitement d'un lot (les événements d'une commande, ou projections.batch_size événements en mode tracking),
+ * les documents lus ou modifiés par les event handlers sont conservés en mémoire : plusieurs événements portant
+ * sur le même document le modifient en place, sans le relire. Après le dernier événement du lot, seule la dernière version
+ * de chaque document est écrite, en une opération bulk par collection. L'écriture a lieu avant la validation du lot,
+ * donc avant la sauvegarde du tracking token : en cas d'échec, le lot est rejoué.
+ * <p>
+ * Un document lu partiellement (sans le contenu de ses templates par exemple) n'est jamais réécrit en entier :
+ * ses modifications sont transmises par des mises à jour ciblées, exécutées dans l'ordre lors de l'écriture du lot,
+ * après l'écriture du document en entier s'il a aussi été remplacé. Celles d'un document pas encore lu sont exécutées
+ * avant sa lecture, qui en tient ainsi compte.
+ * <p>
+ * En dehors du traitement d'un événement, les lectures et écritures sont directes.
+ * <p>
+ * Les lots des projections en service peuvent être suspendus le temps de basculer sur des projections reconstruites
+ * (cf. ProjectionsRebuild) : un lot commencé est terminé dans la version qu'il a lue, les suivants attendent la bascule,
+ * sur cette instance comme sur les autres (cf. ProjectionVersions), puis ignorent les événements qu'elle a rejoués.
+ */
+@Slf4j
+@Component
+@Profile({MONGO, FAKE_MONGO})
+public class BatchedProjectionWriter implements MessageHandlerInterceptor<EventMessage<?>> {
+
+    private static final String BATCH_RESOURCE = BatchedProjectionWriter.class.getName();
+    private static final String REPLAYED_EVENTS_RESOURCE = BATCH_RESOURCE + ".replayedEvents";
+    private static final String FILES_COLLECTION = "fs.files";
+
+    private final MongoTemplate mongoTemplate;
+    private final QueryMapper queryMapper;
+    private final UpdateMapper updateMapper;
+    private final GridFsTemplate gridFsTemplate;
+    private final ProjectionVersions projectionVersions;
+    /**
+     * Pris en lecture par chaque lot des projections en service, en écriture pendant une bascule
+     */
+    private final ReadWriteLock liveProjectionsLock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public BatchedProjectionWriter(MongoTemplate mongoTemplate, GridFsTemplate gridFsTemplate, ProjectionVersions projectionVersions,
+                                   EventHandlingConfiguration eventHandlingConfiguration) {
+        this.mongoTemplate = mongoTemplate;
+        this.projectionVersions = projectionVersions;
+        this.queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        this.updateMapper = new UpdateMapper(mongoTemplate.getConverter());
+        this.gridFsTemplate = gridFsTemplate;
+        eventHandlingConfiguration.registerHandlerInterceptor(PROCESSING_GROUP, configuration -> this::handleLiveEvent);
+    }
+
+    private Object handleLiveEvent(UnitOfWork<? extends EventMessage<?>> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+        Set<String> replayedEventIdentifiers = unitOfWork.getResource(REPLAYED_EVENTS_RESOURCE);
+        if (replayedEventIdentifiers == null) {
+            Lock readLock = liveProjectionsLock.readLock();
+            readLock.lock();
+            unitOfWork.onCleanup(cleanedUnitOfWork -> readLock.unlock());
+            String liveBatchId = projectionVersions.beginLiveBatch();
+            unitOfWork.onCleanup(cleanedUnitOfWork -> projectionVersions.endLiveBatch(liveBatchId));
+            replayedEventIdentifiers = projectionVersions.findReplayedEvents(eventIdentifiers(unitOfWork));
+            unitOfWork.resources().put(REPLAYED_EVENTS_RESOURCE, replayedEventIdentifiers);
+        }
+        boolean replayed = replayedEventIdentifiers.contains(unitOfWork.getMessage().getIdentifier());
+        return handle(unitOfWork, replayed ? () -> null : interceptorChain);
+    }
+
+    private static List<String> eventIdentifiers(UnitOfWork<? extends EventMessage<?>> unitOfWork) {
+        if (unitOfWork instanceof BatchingUnitOfWork) {
+            return ((BatchingUnitOfWork<? extends EventMessage<?>>) unitOfWork).getMessages().stream()
+                    .map(Message::getIdentifier)
+                    .collect(Collectors.toList());
+        }
+        return Collections.singletonList(unitOfWork.getMessage().getIdentifier());
+    }
+
+    /**
+     * Exécute la tâche une fois terminés les lots en cours des projections en service de cette instance,
+     * et suspend les suivants jusqu'à sa fin.
+     */
+    public <T> T callWithLiveProjectionsSuspended(Callable<T> task) throws Exception {
+        liveProjectionsLock.writeLock().lock();
+        try {
+            return task.call();
+        } finally {
+            liveProjectionsLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Object handle(UnitOfWork<? extends EventMessage<?>> unitOfWork, InterceptorChain interceptorChain) throws Exception {
+        Batch batch = unitOfWork.getOrComputeResource(BATCH_RESOURCE, key -> new Batch());
+        Object result = interceptorChain.proceed();
+        if (!(unitOfWork instanceof BatchingUnitOfWork) || ((BatchingUnitOfWork<?>) unitOfWork).isLastMessage()) {
+            flush(batch);
+        }
+        return result;
+    }
+
+    /**
+     * Document du lot en cours s'il a déjà été lu ou modifié, sinon lecture dans Mongo.
+     */
+    public <K, T> T find(Class<T> documentType, K id, Function<K, T> loader) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            return loader.apply(id);
+        }
+        Map<Object, Entry> entries = batch.entries(documentType);
+        Entry entry = entries.get(id);
+        if (entry == null || !entry.loaded) {
+            executePendingUpdates(documentType, entry);
+            entry = new Entry(loader.apply(id), false);
+            entries.put(id, entry);
+        }
+        return documentType.cast(entry.document);
+    }
+
+    /**
+     * Documents du lot en cours pour les identifiants demandés, complétés par ceux lus dans Mongo.
+     */
+    public <K, T> List<T> findAll(Class<T> documentType, List<K> ids, Function<List<K>, List<T>> loader) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            return loader.apply(ids);
+        }
+        Map<Object, Entry> entries = batch.entries(documentType);
+        List<T> documents = new ArrayList<>();
+        List<K> missingIds = new ArrayList<>();
+        for (K id : ids) {
+            Entry entry = entries.get(id);
+            if (entry == null || !entry.loaded) {
+                executePendingUpdates(documentType, entry);
+                entries.remove(id);
+                missingIds.add(id);
+            } else if (entry.document != null) {
+                documents.add(documentType.cast(entry.document));
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            documents.addAll(loader.apply(missingIds));
+        }
+        return documents;
+    }
+
+    public void save(Object id, Object document) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            mongoTemplate.save(document);
+        } else {
+            batch.entries(document.getClass()).put(id, new Entry(document, true));
+        }
+    }
+
+    /**
+     * Mise à jour ciblée d'un document, que l'appelant a déjà modifié en mémoire de la même façon s'il l'a lu avec find.
+     * Un document créé ou remplacé pendant le lot sera écrit en entier : la mise à jour est alors inutile.
+     */
+    public void update(Class<?> documentType, Object id, Query query, Update update) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            mongoTemplate.updateFirst(query, update, documentType);
+        } else {
+            Entry entry = batch.entries(documentType).computeIfAbsent(id, key -> Entry.notLoaded());
+            if (!entry.modified) {
+                entry.updates.add(PendingUpdate.update(query, update, false));
+            }
+        }
+    }
+
+    /**
+     * Mise à jour ciblée d'un document jamais lu par les event handlers, créé s'il n'existe pas.
+     */
+    public void upsert(Class<?> documentType, Object id, Query query, Update update) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            mongoTemplate.upsert(query, update, documentType);
+        } else {
+            batch.entries(documentType).computeIfAbsent(id, key -> Entry.notLoaded()).updates.add(PendingUpdate.update(query, update, true));
+        }
+    }
+
+    /**
+     * Remplace, ou crée, le document trouvé par la requête : pour les documents jamais lus par les event handlers
+     * et qui ne sont pas identifiés par leur _id, comme les plateformes.
+     */
+    public void replace(Object id, Query query, Object document) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            execute(document.getClass(), Collections.singletonList(PendingUpdate.replace(query, document)));
+        } else {
+            batch.entries(document.getClass()).computeIfAbsent(id, key -> Entry.notLoaded()).updates.add(PendingUpdate.replace(query, document));
+        }
+    }
+
+    /**
+     * Supprime les documents trouvés par la requête : pour les documents jamais lus par les event handlers
+     * et qui ne sont pas identifiés par leur _id, comme les plateformes.
+     */
+    public void remove(Class<?> documentType, Object id, Query query) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            mongoTemplate.remove(query, documentType);
+        } else {
+            batch.entries(documentType).computeIfAbsent(id, key -> Entry.notLoaded()).updates.add(PendingUpdate.remove(query));
+        }
+    }
+
+    public void delete(Class<?> documentType, Object id) {
+        Batch batch = currentBatch();
+        if (batch == null) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), documentType);
+        } else {
+            batch.entries(documentType).put(id, new Entry(null, true));
+        }
+    }
+
+    /**
+     * Fichier GridFS identifié par son nom et jamais modifié, écrit immédiatement s'il n'existe pas encore, même pendant un lot.
+     * Les métadonnées d'un fichier existant sont complétées à chaque appel.
+     */
+    public void saveFile(String filename, String content, DBObject metadata) {
+        DBObject existingFileQuery = new BasicDBObject("filename", filename);
+        DBObject metadataUpdate = new BasicDBObject();
+        metadata.keySet().forEach(key -> metadataUpdate.put("metadata." + key, metadata.get(key)));
+        if (mongoTemplate.getCollection(FILES_COLLECTION).update(existingFileQuery, new BasicDBObject("$set", metadataUpdate)).getN() == 0) {
+            gridFsTemplate.store(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), filename, metadata);
+        }
+    }
+
+    private Batch currentBatch() {
+        return CurrentUnitOfWork.isStarted() ? CurrentUnitOfWork.get().getResource(BATCH_RESOURCE) : null;
+    }
+
+    private void flush(Batch batch) {
+        batch.entriesByType.forEach((documentType, entries) -> {
+            List<Map.Entry<Object, Entry>> modifiedEntries = entries.entrySet().stream()
+                    .filter(entry -> entry.getValue().modified || !entry.getValue().updates.isEmpty())
+                    .collect(Collectors.toList());
+            if (!modifiedEntries.isEmpty()) {
+                MongoPersistentEntity<?> entity = getPersistentEntity(documentType);
+                // Ordonnée, pour que les mises à jour ciblées d'un même document s'appliquent dans l'ordre des événements
+                BulkWriteOperation bulk = mongoTemplate.getCollection(mongoTemplate.getCollectionName(documentType)).initializeOrderedBulkOperation();
+                for (Map.Entry<Object, Entry> entry : modifiedEntries) {
+                    Entry value = entry.getValue();
+                    if (value.modified) {
+                        DBObject idQuery = new BasicDBObject("_id", mongoTemplate.getConverter().convertToMongoType(entry.getKey()));
+                        if (value.document == null) {
+                            bulk.find(idQuery).remove();
+                        } else {
+                            bulk.find(idQuery).upsert().replaceOne(toDBObject(value.document));
+                        }
+                    }
+                    // Après le document écrit en entier, qu'elles complètent (un upsert qui suit sa création par exemple)
+                    value.updates.forEach(pendingUpdate -> addToBulk(bulk, entity, pendingUpdate));
+                }
+                bulk.execute();
+                log.debug("Flushed {} {} in one bulk write", modifiedEntries.size(), documentType.getSimpleName());
+            }
+        });
+        batch.entriesByType.clear();
+    }
+
+    /**
+     * Exécute les mises à jour ciblées en attente d'un document pas encore lu, avant de le lire.
+     */
+    private void executePendingUpdates(Class<?> documentType, Entry entry) {
+        if (entry != null && !entry.updates.isEmpty()) {
+            execute(documentType, entry.updates);
+            entry.updates.clear();
+        }
+    }
+
+    private void execute(Class<?> documentType, List<PendingUpdate> pendingUpdates) {
+        MongoPersistentEntity<?> entity = getPersistentEntity(documentType);
+        BulkWriteOperation bulk = mongoTemplate.getCollection(mongoTemplate.getCollectionName(documentType)).initializeOrderedBulkOperation();
+        pendingUpdates.forEach(pendingUpdate -> addToBulk(bulk, entity, pendingUpdate));
+        bulk.execute();
+    }
+
+    private void addToBulk(BulkWriteOperation bulk, MongoPersistentEntity<?> entity, PendingUpdate pendingUpdate) {
+        BulkWriteRequestBuilder request = bulk.find(queryMapper.getMappedObject(pendingUpdate.query.getQueryObject(), entity));
+        if (pendingUpdate.replacement != null) {
+            request.upsert().replaceOne(toDBObject(pendingUpdate.replacement));
+        } else if (pendingUpdate.update == null) {
+            request.remove();
+        } else {
+            DBObject update = updateMapper.getMappedObject(pendingUpdate.update.getUpdateObject(), entity);
+            if (pendingUpdate.upsert) {
+                request.upsert().updateOne(update);
+            } else {
+                request.updateOne(update);
+            }
+        }
+    }
+
+    private MongoPersistentEntity<?> getPersistentEntity(Class<?> documentType) {
+        return mongoTemplate.getConverter().getMappingContext().getPersistentEntity(documentType);
+    }
+
+    private DBObject toDBObject(Object document) {
+        DBObject dbObject = new BasicDBObject();
+        mongoTemplate.getConverter().write(document, dbObject);
+        return dbObject;
+    }
+
+    /**
+     * Documents lus ou modifiés pendant le lot en cours, par type puis par identifiant.
+     */
+    private static class Batch {
+        private final Map<Class<?>, Map<Object, Entry>> entriesByType = new HashMap<>();
+
+        Map<Object, Entry> entries(Class<?> documentType) {
+            return entriesByType.computeIfAbsent(documentType, type -> new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Un document à null représente un document supprimé (ou absent de Mongo s'il n'a pas été modifié),
+     * sauf s'il n'a pas encore été lu : seules ses mises à jour ciblées sont alors connues.
+     * Un document modifié est écrit en entier, suivi de ses mises à jour ciblées.
+     */
+    private static class Entry {
+        private final Object document;
+        private final boolean modified;
+        private final boolean loaded;
+        private final List<PendingUpdate> updates = new ArrayList<>();
+
+        Entry(Object document, boolean modified) {
+            this(document, modified, true);
+        }
+
+        private Entry(Object document, boolean modified, boolean loaded) {
+            this.document = document;
+            this.modified = modified;
+            this.loaded = loaded;
+        }
+
+        static Entry notLoaded() {
+            return new Entry(null, false, false);
+        }
+    }
+
+    /**
+     * Mise à jour, remplacement (replacement renseigné) ou suppression (ni update ni replacement) des documents trouvés par la requête
+     */
+    private static class PendingUpdate {
+        private final Query query;
+        private final Update update;
+        private final Object replacement;
+        private final boolean upsert;
+
+        private PendingUpdate(Query query, Update update, Object replacement, boolean upsert) {
+            this.query = query;
+            this.update = update;
+            this.replacement = replacement;
+            this.upsert = upsert;
+        }
+
+        static PendingUpdate update(Query query, Update update, boolean upsert) {
+            return new PendingUpdate(query, update, null, upsert);
+        }
+
+        static PendingUpdate replace(Query query, Object document) {
+            return new PendingUpdate(query, null, document, true);
+        }
+
+        static PendingUpdate remove(Query query) {
+            return new PendingUpdate(query, null, null, false);
+        }
+    }
+}
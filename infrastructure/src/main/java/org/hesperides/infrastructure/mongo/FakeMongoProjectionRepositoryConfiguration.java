@@ -26,6 +26,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 
 import java.util.UUID;
 
@@ -42,6 +44,11 @@ public class FakeMongoProjectionRepositoryConfiguration {
         return new MongoTemplate(mongo(), MONGO_DB_NAME);
     }
 
+    @Bean
+    public GridFsTemplate gridFsTemplate() {
+        return new GridFsTemplate(new SimpleMongoDbFactory(mongo(), MONGO_DB_NAME), mongoTemplate().getConverter());
+    }
+
     @Bean(destroyMethod = "close")
     public Mongo mongo() {
         return new Fongo(UUID.randomUUID().toString()).getMongo();
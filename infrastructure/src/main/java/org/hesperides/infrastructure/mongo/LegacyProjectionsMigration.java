@@ -0,0 +1,121 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.infrastructure.mongo.modules.ModuleDocument;
+import org.hesperides.infrastructure.mongo.technos.MongoTechnoProjectionRepository;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Met à jour au démarrage les documents enregistrés sous une forme antérieure des projections, dans l'ordre :
+ * <ol>
+ * <li>les technos des modules, référencées par des DBRef, sont remplacées par leurs clés ;</li>
+ * <li>les templates encore enregistrés en entier dans les modules et les technos sont déplacés
+ * dans la collection des templates, et leurs propriétés sont calculées si elles manquent ;</li>
+ * <li>les contenus encore enregistrés dans la collection des templates sont déplacés dans celle des contenus.</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@DependsOn("projectionVersions")
+@Profile({MONGO, FAKE_MONGO})
+public class LegacyProjectionsMigration {
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoTechnoProjectionRepository technoProjectionRepository;
+    private final BatchedProjectionWriter projectionWriter;
+
+    @Autowired
+    public LegacyProjectionsMigration(MongoTemplate mongoTemplate,
+                                      MongoTechnoProjectionRepository technoProjectionRepository,
+                                      BatchedProjectionWriter projectionWriter) {
+        this.mongoTemplate = mongoTemplate;
+        this.technoProjectionRepository = technoProjectionRepository;
+        this.projectionWriter = projectionWriter;
+    }
+
+    @PostConstruct
+    public void migrateLegacyProjections() {
+        replaceTechnoReferencesByKeys();
+        moveEmbeddedTemplates();
+        moveTemplateContents();
+    }
+
+    private void replaceTechnoReferencesByKeys() {
+        DBCollection moduleCollection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ModuleDocument.class));
+        int migratedModules = 0;
+        for (DBObject module : moduleCollection.find(new BasicDBObject("technos.$ref", new BasicDBObject("$exists", true)))) {
+            List<Object> technoKeys = ((List<?>) module.get("technos")).stream()
+                    .map(technoReference -> ((DBRef) technoReference).getId())
+                    .collect(Collectors.toList());
+            moduleCollection.update(new BasicDBObject("_id", module.get("_id")), new BasicDBObject("$set", new BasicDBObject("technos", technoKeys)));
+            migratedModules++;
+        }
+        if (migratedModules > 0) {
+            log.info("Replaced the techno references of {} modules by their keys", migratedModules);
+        }
+    }
+
+    private void moveEmbeddedTemplates() {
+        Query embeddedTemplatesQuery = new Query(where("templates.content").exists(true));
+
+        List<TechnoDocument> technoDocuments = mongoTemplate.find(embeddedTemplatesQuery, TechnoDocument.class);
+        technoDocuments.forEach(technoDocument -> technoDocument.extractPropertiesAndSave(projectionWriter));
+
+        List<ModuleDocument> moduleDocuments = mongoTemplate.find(embeddedTemplatesQuery, ModuleDocument.class);
+        moduleDocuments.forEach(moduleDocument -> moduleDocument.extractPropertiesAndSave(
+                technoProjectionRepository.getTechnoDocuments(moduleDocument.getTechnos()), projectionWriter));
+
+        if (!technoDocuments.isEmpty() || !moduleDocuments.isEmpty()) {
+            log.info("Moved the templates of {} technos and {} modules to their own collection", technoDocuments.size(), moduleDocuments.size());
+        }
+    }
+
+    private void moveTemplateContents() {
+        List<TemplateDocument> templateDocuments = mongoTemplate.find(new Query(where("content").exists(true)), TemplateDocument.class);
+        templateDocuments.forEach(templateDocument -> templateDocument.saveAndSummarize(
+                templateDocument.getId().getContainerType(), templateDocument.getId().getContainerKey(), projectionWriter));
+
+        if (!templateDocuments.isEmpty()) {
+            log.info("Moved the contents of {} templates to their own collection", templateDocuments.size());
+        }
+    }
+}
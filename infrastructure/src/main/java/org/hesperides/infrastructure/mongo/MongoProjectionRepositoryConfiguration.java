@@ -12,6 +12,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.validation.annotation.Validated;
@@ -50,4 +52,9 @@ public class MongoProjectionRepositoryConfiguration {
     public MongoTemplate mongoTemplate() {
         return new MongoTemplate(projectionRepositoryMongoClient(), database);
     }
+
+    @Bean
+    public GridFsTemplate gridFsTemplate() {
+        return new GridFsTemplate(new SimpleMongoDbFactory(projectionRepositoryMongoClient(), database), mongoTemplate().getConverter());
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import org.hesperides.infrastructure.mongo.modules.ModuleDocument;
+import org.hesperides.infrastructure.mongo.modules.TechnoModulesUpdateDocument;
+import org.hesperides.infrastructure.mongo.platforms.documents.PlatformDocument;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Noms des collections de projection, évalués à chaque accès par Spring Data à partir de l'annotation @Document
+ * des documents, par exemple : collection = "#{T(org.hesperides.infrastructure.mongo.ProjectionCollections).name('module')}".
+ * <p>
+ * Les collections sont versionnées : la version 0 correspond aux noms d'origine (module), les suivantes sont suffixées (module_v1).
+ * Toutes les lectures et écritures portent sur la version en service (cf. ProjectionVersions), sauf dans un thread
+ * qui travaille explicitement sur une autre version, sans que les autres threads ne la voient :
+ * c'est dans la version suivante que ProjectionsRebuild reconstruit les projections.
+ * Les contenus des templates, partagés et identifiés par leur empreinte, ne sont pas versionnés.
+ */
+public final class ProjectionCollections {
+
+    /**
+     * Documents des collections de projection, reconstruites ensemble
+     */
+    public static final List<Class<?>> DOCUMENT_TYPES = Arrays.asList(
+            ModuleDocument.class, TechnoDocument.class, TemplateDocument.class, PlatformDocument.class, TechnoModulesUpdateDocument.class);
+
+    private static final ThreadLocal<Integer> THREAD_VERSION = new ThreadLocal<>();
+    private static volatile int currentVersion;
+
+    private ProjectionCollections() {
+    }
+
+    public static String name(String collectionName) {
+        Integer threadVersion = THREAD_VERSION.get();
+        return name(collectionName, threadVersion != null ? threadVersion : currentVersion);
+    }
+
+    static String name(String collectionName, int version) {
+        return version > 0 ? collectionName + "_v" + version : collectionName;
+    }
+
+    public static int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    static void setCurrentVersion(int version) {
+        currentVersion = version;
+    }
+
+    /**
+     * Collections existantes de la projection, dans toutes ses versions : celle en service, celle en cours
+     * de reconstruction et les précédentes, conservées jusqu'à la reconstruction suivante.
+     */
+    public static List<String> allVersionsOf(Class<?> documentType, MongoTemplate mongoTemplate) {
+        Integer previousVersion = THREAD_VERSION.get();
+        THREAD_VERSION.set(0);
+        String baseName;
+        try {
+            baseName = mongoTemplate.getCollectionName(documentType);
+        } finally {
+            if (previousVersion != null) {
+                THREAD_VERSION.set(previousVersion);
+            } else {
+                THREAD_VERSION.remove();
+            }
+        }
+        // Les collections suffixées _rebuild sont celles des premières reconstructions, sans version
+        Pattern versionedName = Pattern.compile(Pattern.quote(baseName) + "(_v\\d+|_rebuild)?");
+        return mongoTemplate.getCollectionNames().stream()
+                .filter(collectionName -> versionedName.matcher(collectionName).matches())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Exécute la tâche sur les collections de la version demandée, dans le thread courant.
+     */
+    public static <T> T callWithVersion(int version, Callable<T> task) throws Exception {
+        Integer previousVersion = THREAD_VERSION.get();
+        THREAD_VERSION.set(version);
+        try {
+            return task.call();
+        } finally {
+            if (previousVersion != null) {
+                THREAD_VERSION.set(previousVersion);
+            } else {
+                THREAD_VERSION.remove();
+            }
+        }
+    }
+}
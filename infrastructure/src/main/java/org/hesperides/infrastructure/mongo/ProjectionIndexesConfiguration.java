@@ -0,0 +1,151 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.infrastructure.mongo.modules.ModuleDocument;
+import org.hesperides.infrastructure.mongo.platforms.documents.PlatformDocument;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateContentDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+
+/**
+ * Index des collections de projection, déclarés ici plutôt que par annotation pour pouvoir choisir au démarrage
+ * entre leur création (create), la vérification de leur présence (verify), qui empêche le démarrage s'il en manque,
+ * ou aucun contrôle (none).
+ * <p>
+ * L'endpoint projection_indexes indique, pour chaque index déclaré, s'il existe et combien de fois il a été utilisé.
+ */
+@Configuration
+@DependsOn("projectionVersions")
+@Profile({MONGO, FAKE_MONGO})
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("projection_indexes")
+public class ProjectionIndexesConfiguration {
+
+    static final List<ProjectionIndex> REQUIRED_INDEXES = Arrays.asList(
+            // Recherche de modules et de technos par nom, puis par version
+            new ProjectionIndex(ModuleDocument.class, "key_name_version", false, "_id.name", "_id.version"),
+            new ProjectionIndex(TechnoDocument.class, "key_name_version", false, "_id.name", "_id.version"),
+            // Index inverse des technos vers les modules qui les utilisent
+            new ProjectionIndex(ModuleDocument.class, "technos", false, "technos"),
+            // Templates d'un module ou d'une techno
+            new ProjectionIndex(TemplateDocument.class, "container", false, "_id.containerType", "_id.containerKey"),
+            // Contenus des templates encore référencés, et candidats du ramasse-miettes
+            new ProjectionIndex(TemplateDocument.class, "content_hash", false, "contentHash"),
+            new ProjectionIndex(TemplateContentDocument.class, "last_referenced_at", false, "lastReferencedAt"),
+            // Les plateformes sont identifiées par un ObjectId : leur clé n'est pas l'_id
+            new ProjectionIndex(PlatformDocument.class, "key", true, "key"),
+            // Index inverse des modules vers les plateformes qui les déploient
+            new ProjectionIndex(PlatformDocument.class, "deployed_modules", false,
+                    "deployedModules.name", "deployedModules.version", "deployedModules.workingCopy")
+    );
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private String mode = "create";
+
+    // Après la liaison des propriétés, qui n'ont pas encore leur valeur lors de l'injection
+    @PostConstruct
+    public void checkProjectionIndexes() {
+        if (!"none".equals(mode)) {
+            List<ProjectionIndex> missingIndexes = REQUIRED_INDEXES.stream()
+                    .filter(projectionIndex -> !projectionIndex.exists(mongoTemplate))
+                    .collect(Collectors.toList());
+            if ("verify".equals(mode) && !missingIndexes.isEmpty()) {
+                throw new IllegalStateException("Missing projection indexes: " + missingIndexes);
+            }
+            missingIndexes.forEach(projectionIndex -> {
+                log.info("Creating projection index {}", projectionIndex);
+                projectionIndex.create(mongoTemplate);
+            });
+        }
+    }
+
+    @Bean
+    public ProjectionIndexesEndpoint projectionIndexesEndpoint() {
+        return new ProjectionIndexesEndpoint(mongoTemplate, REQUIRED_INDEXES);
+    }
+
+    @Getter
+    static class ProjectionIndex {
+        private final Class<?> documentType;
+        private final String name;
+        private final boolean unique;
+        private final List<String> fields;
+
+        ProjectionIndex(Class<?> documentType, String name, boolean unique, String... fields) {
+            this.documentType = documentType;
+            this.name = name;
+            this.unique = unique;
+            this.fields = Arrays.asList(fields);
+        }
+
+        String getCollectionName(MongoTemplate mongoTemplate) {
+            return mongoTemplate.getCollectionName(documentType);
+        }
+
+        boolean exists(MongoTemplate mongoTemplate) {
+            Set<String> existingIndexNames = mongoTemplate.indexOps(documentType).getIndexInfo().stream()
+                    .map(IndexInfo::getName)
+                    .collect(Collectors.toSet());
+            return existingIndexNames.contains(name);
+        }
+
+        void create(MongoTemplate mongoTemplate) {
+            Index index = new Index().named(name);
+            fields.forEach(field -> index.on(field, Sort.Direction.ASC));
+            if (unique) {
+                index.unique();
+            }
+            mongoTemplate.indexOps(documentType).ensureIndex(index);
+        }
+
+        @Override
+        public String toString() {
+            return documentType.getSimpleName() + "." + name + fields;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Présence et utilisation des index déclarés des collections de projection.
+ * Le nombre d'utilisations, compté depuis le dernier démarrage de Mongo, est celui de $indexStats :
+ * il est absent si le serveur ne le fournit pas.
+ */
+public class ProjectionIndexesEndpoint extends AbstractEndpoint<List<Map<String, Object>>> {
+
+    private final MongoTemplate mongoTemplate;
+    private final List<ProjectionIndexesConfiguration.ProjectionIndex> projectionIndexes;
+
+    ProjectionIndexesEndpoint(MongoTemplate mongoTemplate, List<ProjectionIndexesConfiguration.ProjectionIndex> projectionIndexes) {
+        super("projection_indexes");
+        this.mongoTemplate = mongoTemplate;
+        this.projectionIndexes = projectionIndexes;
+    }
+
+    @Override
+    public List<Map<String, Object>> invoke() {
+        Map<String, Map<String, DBObject>> indexStatsByCollection = new HashMap<>();
+        return projectionIndexes.stream().map(projectionIndex -> {
+            String collectionName = projectionIndex.getCollectionName(mongoTemplate);
+            DBObject indexStats = indexStatsByCollection.computeIfAbsent(collectionName, this::getIndexStats).get(projectionIndex.getName());
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("collection", collectionName);
+            report.put("name", projectionIndex.getName());
+            report.put("fields", projectionIndex.getFields());
+            report.put("unique", projectionIndex.isUnique());
+            report.put("exists", projectionIndex.exists(mongoTemplate));
+            if (indexStats != null) {
+                DBObject accesses = (DBObject) indexStats.get("accesses");
+                report.put("ops", accesses.get("ops"));
+                report.put("since", accesses.get("since"));
+            }
+            return report;
+        }).collect(Collectors.toList());
+    }
+
+    private Map<String, DBObject> getIndexStats(String collectionName) {
+        Map<String, DBObject> indexStatsByName = new HashMap<>();
+        try {
+            List<DBObject> pipeline = Collections.singletonList(new BasicDBObject("$indexStats", new BasicDBObject()));
+            for (DBObject indexStats : mongoTemplate.getCollection(collectionName).aggregate(pipeline).results()) {
+                indexStatsByName.put((String) indexStats.get("name"), indexStats);
+            }
+        } catch (MongoException | UnsupportedOperationException e) {
+            // Serveur antérieur à Mongo 3.2, ou base de test
+        }
+        return indexStatsByName;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+
+/**
+ * Version en service des collections de projection (cf. ProjectionCollections), enregistrée dans la collection projection_version.
+ * <p>
+ * Elle est lue au démarrage, avant tout accès aux projections, puis relue toutes les projection_versions.check_interval_seconds
+ * secondes : une instance bascule ainsi sur les projections reconstruites par une autre.
+ * <p>
+ * Une bascule est visible de toutes les instances : chaque lot des projections en service s'enregistre dans la collection
+ * projection_live_batch avant de relire la version en service, et attend la fin de la bascule en cours s'il y en a une.
+ * L'instance qui bascule signale la bascule avant d'attendre les lots déjà enregistrés : aucun lot ne peut donc écrire
+ * dans la version précédente une fois les derniers événements rejoués. Les événements rejoués pendant la bascule sont
+ * enregistrés dans la collection projection_replayed_event, pour que les lots qui les traitent ensuite les ignorent.
+ * Les échéances des lots et des bascules, qui protègent des instances arrêtées en cours de route, supposent
+ * les horloges des instances synchronisées.
+ */
+@Slf4j
+@Component
+@Profile({MONGO, FAKE_MONGO})
+@Getter
+@Setter
+@ConfigurationProperties("projection_versions")
+public class ProjectionVersions {
+
+    static final String COLLECTION_NAME = "projection_version";
+    static final String LIVE_BATCHES_COLLECTION_NAME = "projection_live_batch";
+    static final String REPLAYED_EVENTS_COLLECTION_NAME = "projection_replayed_event";
+    private static final String CURRENT_VERSION_ID = "current";
+    private static final long CUT_OVER_POLL_MILLIS = 100;
+
+    /**
+     * Intervalle entre deux lectures de la version en service, en secondes, 0 pour ne la lire qu'au démarrage
+     */
+    private long checkIntervalSeconds = 10;
+    /**
+     * Durée maximale d'un lot des projections en service, au-delà de laquelle une bascule ne l'attend plus
+     */
+    private long liveBatchTimeoutSeconds = 60;
+    /**
+     * Durée maximale d'une bascule, au-delà de laquelle les lots des autres instances reprennent sans l'attendre
+     */
+    private long cutOverTimeoutSeconds = 300;
+
+    private final MongoTemplate mongoTemplate;
+    private ScheduledExecutorService executor;
+    private volatile Date cutOverDeadline;
+
+    @Autowired
+    public ProjectionVersions(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void loadCurrentVersion() {
+        checkCurrentVersion();
+        log.info("Projections version: {}", ProjectionCollections.getCurrentVersion());
+        if (checkIntervalSeconds > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "projection-versions");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::checkCurrentVersionSafely, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getCurrentVersion() {
+        return ProjectionCollections.getCurrentVersion();
+    }
+
+    /**
+     * Met en service une nouvelle version, pour cette instance immédiatement, pour les autres à leur prochaine lecture
+     * ou à leur prochain lot, et termine la bascule en cours.
+     *
+     * @throws IllegalStateException si la bascule a dépassé sa durée maximale : les autres instances ont alors pu
+     *                               écrire dans la version précédente, qui reste en service
+     */
+    public void switchTo(int version) {
+        if (cutOverDeadline != null && cutOverDeadline.before(new Date())) {
+            throw new IllegalStateException("Projections cut-over timed out after " + cutOverTimeoutSeconds + " seconds");
+        }
+        mongoTemplate.getCollection(COLLECTION_NAME).update(new BasicDBObject("_id", CURRENT_VERSION_ID),
+                new BasicDBObject("$set", new BasicDBObject("version", version)).append("$unset", new BasicDBObject("cut_over_until", "")),
+                true, false);
+        cutOverDeadline = null;
+        ProjectionCollections.setCurrentVersion(version);
+        log.info("Switched to projections version {}", version);
+    }
+
+    /**
+     * Suspend les lots des projections en service de toutes les instances jusqu'à switchTo ou endCutOver :
+     * les nouveaux lots attendent, ceux déjà enregistrés sont attendus.
+     */
+    public void beginCutOver() throws InterruptedException {
+        Date deadline = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(cutOverTimeoutSeconds));
+        mongoTemplate.getCollection(COLLECTION_NAME).update(new BasicDBObject("_id", CURRENT_VERSION_ID),
+                new BasicDBObject("$set", new BasicDBObject("cut_over_until", deadline)), true, false);
+        cutOverDeadline = deadline;
+        DBCollection liveBatches = mongoTemplate.getCollection(LIVE_BATCHES_COLLECTION_NAME);
+        liveBatches.remove(new BasicDBObject("expires_at", new BasicDBObject("$lte", new Date())));
+        long pendingLiveBatches;
+        while ((pendingLiveBatches = liveBatches.count(new BasicDBObject("expires_at", new BasicDBObject("$gt", new Date())))) > 0) {
+            log.info("Waiting for {} live projection batches before the cut-over", pendingLiveBatches);
+            Thread.sleep(CUT_OVER_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Termine la bascule en cours sans changer de version, en cas d'échec.
+     */
+    public void endCutOver() {
+        if (cutOverDeadline != null) {
+            mongoTemplate.getCollection(COLLECTION_NAME).update(new BasicDBObject("_id", CURRENT_VERSION_ID),
+                    new BasicDBObject("$unset", new BasicDBObject("cut_over_until", "")));
+            cutOverDeadline = null;
+        }
+    }
+
+    /**
+     * Enregistre un lot des projections en service, une fois terminée la bascule éventuellement en cours,
+     * et met à jour la version en service : le lot lit et écrit dans la dernière version mise en service.
+     *
+     * @return l'identifiant du lot, à fournir à endLiveBatch
+     */
+    public String beginLiveBatch() throws InterruptedException {
+        DBCollection liveBatches = mongoTemplate.getCollection(LIVE_BATCHES_COLLECTION_NAME);
+        while (true) {
+            String liveBatchId = UUID.randomUUID().toString();
+            Date expiresAt = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(liveBatchTimeoutSeconds));
+            liveBatches.insert(new BasicDBObject("_id", liveBatchId).append("expires_at", expiresAt));
+            // Lu après l'enregistrement du lot : une bascule signalée ensuite attendra ce lot
+            DBObject currentVersion = findCurrentVersion();
+            Date cutOverUntil = currentVersion != null ? (Date) currentVersion.get("cut_over_until") : null;
+            if (cutOverUntil == null || cutOverUntil.before(new Date())) {
+                applyVersion(currentVersion);
+                return liveBatchId;
+            }
+            liveBatches.remove(new BasicDBObject("_id", liveBatchId));
+            Thread.sleep(CUT_OVER_POLL_MILLIS);
+        }
+    }
+
+    public void endLiveBatch(String liveBatchId) {
+        mongoTemplate.getCollection(LIVE_BATCHES_COLLECTION_NAME).remove(new BasicDBObject("_id", liveBatchId));
+    }
+
+    /**
+     * Les événements, rejoués pendant la bascule, seront ignorés par les lots des projections en service de toutes les instances.
+     */
+    public void recordReplayedEvents(List<String> eventIdentifiers) {
+        if (!eventIdentifiers.isEmpty()) {
+            mongoTemplate.getCollection(REPLAYED_EVENTS_COLLECTION_NAME).insert(eventIdentifiers.stream()
+                    .map(eventIdentifier -> (DBObject) new BasicDBObject("_id", eventIdentifier))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Parmi les événements demandés, ceux rejoués pendant une bascule.
+     */
+    public Set<String> findReplayedEvents(List<String> eventIdentifiers) {
+        if (eventIdentifiers.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return mongoTemplate.getCollection(REPLAYED_EVENTS_COLLECTION_NAME)
+                .find(new BasicDBObject("_id", new BasicDBObject("$in", eventIdentifiers))).toArray().stream()
+                .map(replayedEvent -> (String) replayedEvent.get("_id"))
+                .collect(Collectors.toSet());
+    }
+
+    public void clearReplayedEvents() {
+        mongoTemplate.getCollection(REPLAYED_EVENTS_COLLECTION_NAME).remove(new BasicDBObject());
+    }
+
+    private DBObject findCurrentVersion() {
+        return mongoTemplate.getCollection(COLLECTION_NAME).findOne(new BasicDBObject("_id", CURRENT_VERSION_ID));
+    }
+
+    private void checkCurrentVersion() {
+        applyVersion(findCurrentVersion());
+    }
+
+    private void applyVersion(DBObject currentVersion) {
+        int version = currentVersion != null && currentVersion.get("version") != null ? ((Number) currentVersion.get("version")).intValue() : 0;
+        if (version != ProjectionCollections.getCurrentVersion()) {
+            ProjectionCollections.setCurrentVersion(version);
+            log.info("Projections version changed to {}", version);
+        }
+    }
+
+    private void checkCurrentVersionSafely() {
+        try {
+            checkCurrentVersion();
+        } catch (RuntimeException e) {
+            log.error("Projections version check failed", e);
+        }
+    }
+}
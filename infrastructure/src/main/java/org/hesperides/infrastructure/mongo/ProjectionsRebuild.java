@@ -0,0 +1,521 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.axonframework.config.ProcessingGroup;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.EventProcessor;
+import org.axonframework.eventhandling.LoggingErrorHandler;
+import org.axonframework.eventhandling.Segment;
+import org.axonframework.eventhandling.SimpleEventHandlerInvoker;
+import org.axonframework.eventhandling.TrackedEventMessage;
+import org.axonframework.eventhandling.TrackingEventProcessor;
+import org.axonframework.eventhandling.async.SequentialPerAggregatePolicy;
+import org.axonframework.eventhandling.tokenstore.TokenStore;
+import org.axonframework.eventsourcing.eventstore.EventStorageEngine;
+import org.axonframework.eventsourcing.eventstore.TrackingToken;
+import org.axonframework.messaging.DefaultInterceptorChain;
+import org.axonframework.messaging.MessageHandler;
+import org.axonframework.messaging.MessageHandlerInterceptor;
+import org.axonframework.messaging.unitofwork.BatchingUnitOfWork;
+import org.axonframework.messaging.unitofwork.RollbackConfigurationType;
+import org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration;
+import org.hesperides.infrastructure.mongo.modules.TechnoModulesPropertiesUpdater;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
+
+/**
+ * Reconstruit les projections Mongo (modules, technos, templates et plateformes) en rejouant tous les événements de l'event store,
+ * sans interrompre les lectures.
+ * <p>
+ * Les événements sont rejoués par les event handlers des projections dans la version suivante des collections
+ * (cf. ProjectionCollections), créée avec ses index, pendant que les requêtes et les projections en service continuent
+ * d'utiliser la version courante. Comme pour le processeur tracking, ils sont répartis par agrégat entre
+ * projections_rebuild.segments threads, et écrits par lots de projections_rebuild.batch_size événements (cf. BatchedProjectionWriter).
+ * <p>
+ * Les événements émis pendant la reconstruction sont ensuite rattrapés, par passes successives, jusqu'à ce qu'une passe
+ * en rejoue moins de projections_rebuild.cut_over_threshold. Un module et ses technos ayant pu être rejoués en parallèle,
+ * le modèle de propriétés des modules des technos rejouées est alors recalculé, une fois tous les segments terminés
+ * (cf. TechnoModulesPropertiesUpdater). Les projections en service sont ensuite suspendues le temps de rejouer
+ * les derniers événements, puis la nouvelle version est mise en service pour toutes les lectures et écritures (cf. ProjectionVersions).
+ * La bascule suspend aussi les projections en service des autres instances (cf. ProjectionVersions), qui écrivent ensuite
+ * dans la nouvelle version sans traiter une seconde fois les événements rejoués pendant la bascule ; en mode tracking,
+ * le processeur des projections de cette instance est arrêté pendant la bascule et reprend après le dernier événement rejoué.
+ * La version précédente est conservée jusqu'à la reconstruction suivante, pour les lectures des instances
+ * qui ne sont pas encore passées à la nouvelle version.
+ * <p>
+ * L'avancement (événements traités, débit, durée restante estimée et retard sur le dernier événement lu) est journalisé
+ * toutes les projections_rebuild.report_interval_seconds secondes, et exposé par l'endpoint projections_rebuild.
+ * La reconstruction est lancée par l'option --rebuild-projections de l'application, ou par JMX (opération start).
+ */
+@Slf4j
+@Component
+@Profile({MONGO, FAKE_MONGO})
+@ConfigurationProperties("projections_rebuild")
+@ManagedResource(objectName = "hesperides:name=ProjectionsRebuild")
+public class ProjectionsRebuild {
+
+    /**
+     * Threads de traitement des événements, chaque agrégat étant traité par un seul d'entre eux
+     */
+    @Getter
+    @Setter
+    private int segments = 4;
+    /**
+     * Nombre maximal d'événements par lot d'écriture
+     */
+    @Getter
+    @Setter
+    private int batchSize = 500;
+    @Getter
+    @Setter
+    private long reportIntervalSeconds = 10;
+    /**
+     * Nombre d'événements rattrapés en une passe en dessous duquel la bascule a lieu
+     */
+    @Getter
+    @Setter
+    private int cutOverThreshold = 1000;
+    /**
+     * Nombre maximal de passes de rattrapage avant la bascule, si les événements sont émis plus vite qu'ils ne sont rattrapés
+     */
+    @Getter
+    @Setter
+    private int maxCatchUpPasses = 10;
+
+    private final MongoTemplate mongoTemplate;
+    private final EventStorageEngine eventStorageEngine;
+    private final org.axonframework.mongo.MongoTemplate axonMongoTemplate;
+    private final BatchedProjectionWriter projectionWriter;
+    private final ProjectionVersions projectionVersions;
+    private final EventHandlingConfiguration eventHandlingConfiguration;
+    private final ProjectionsProcessingConfiguration projectionsProcessingConfiguration;
+    private final TechnoModulesPropertiesUpdater technoModulesPropertiesUpdater;
+    private final ApplicationContext applicationContext;
+
+    @Autowired(required = false)
+    private TokenStore tokenStore;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Progress progress;
+    private volatile String lastError;
+
+    @Autowired
+    public ProjectionsRebuild(MongoTemplate mongoTemplate,
+                              EventStorageEngine eventStorageEngine,
+                              org.axonframework.mongo.MongoTemplate axonMongoTemplate,
+                              BatchedProjectionWriter projectionWriter,
+                              ProjectionVersions projectionVersions,
+                              EventHandlingConfiguration eventHandlingConfiguration,
+                              ProjectionsProcessingConfiguration projectionsProcessingConfiguration,
+                              TechnoModulesPropertiesUpdater technoModulesPropertiesUpdater,
+                              ApplicationContext applicationContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventStorageEngine = eventStorageEngine;
+        this.axonMongoTemplate = axonMongoTemplate;
+        this.projectionWriter = projectionWriter;
+        this.projectionVersions = projectionVersions;
+        this.eventHandlingConfiguration = eventHandlingConfiguration;
+        this.projectionsProcessingConfiguration = projectionsProcessingConfiguration;
+        this.technoModulesPropertiesUpdater = technoModulesPropertiesUpdater;
+        this.applicationContext = applicationContext;
+    }
+
+    /**
+     * Lance la reconstruction dans un thread dédié.
+     *
+     * @return false si une reconstruction est déjà en cours
+     */
+    @ManagedOperation
+    public boolean start() {
+        if (running.get()) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.error("Projections rebuild failed", e);
+            }
+        }, "projections-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Reconstruit les projections et rend la main une fois la nouvelle version mise en service.
+     */
+    public void rebuild() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A projections rebuild is already running");
+        }
+        lastError = null;
+        int version = projectionVersions.getCurrentVersion() + 1;
+        try {
+            log.info("Rebuilding projections version {}: {} segments, batch size {}", version, segments, batchSize);
+            dropUnusedVersions();
+            projectionVersions.clearReplayedEvents();
+            ProjectionCollections.callWithVersion(version, () -> {
+                ProjectionIndexesConfiguration.REQUIRED_INDEXES.forEach(projectionIndex -> projectionIndex.create(mongoTemplate));
+                return null;
+            });
+            SimpleEventHandlerInvoker eventHandlerInvoker = new SimpleEventHandlerInvoker(getProjections(), new LoggingErrorHandler());
+            progress = new Progress(version, axonMongoTemplate.eventCollection().count());
+
+            TrackingToken lastToken = replayEvents(version, eventHandlerInvoker, null);
+            for (int pass = 1; pass <= maxCatchUpPasses; pass++) {
+                long readEvents = progress.readEvents.get();
+                progress.phase = "catch_up";
+                lastToken = replayEvents(version, eventHandlerInvoker, lastToken);
+                if (progress.readEvents.get() - readEvents < cutOverThreshold) {
+                    break;
+                }
+            }
+            progress.phase = "techno_modules";
+            int technos = ProjectionCollections.callWithVersion(version, () -> technoModulesPropertiesUpdater.processPendingUpdates(new Date()));
+            log.info("Rebuilding projections: modules of {} techno(s) updated", technos);
+            progress.phase = "cut_over";
+            cutOver(version, eventHandlerInvoker, lastToken);
+            progress.phase = "completed";
+            log.info("Projections rebuilt: {}", getStatus());
+        } catch (Exception e) {
+            lastError = e.toString();
+            if (progress != null) {
+                progress.phase = "failed";
+            }
+            throw new IllegalStateException("Projections rebuild failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Avancement de la reconstruction en cours, ou de la dernière
+     */
+    @ManagedAttribute
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+        status.put("current_version", projectionVersions.getCurrentVersion());
+        Progress currentProgress = progress;
+        if (currentProgress != null) {
+            currentProgress.report(status);
+        }
+        if (lastError != null) {
+            status.put("error", lastError);
+        }
+        return status;
+    }
+
+    /**
+     * Rejoue en parallèle, dans la version demandée, les événements qui suivent le token.
+     *
+     * @return le token du dernier événement rejoué
+     */
+    private TrackingToken replayEvents(int version, SimpleEventHandlerInvoker eventHandlerInvoker, TrackingToken fromToken) throws Exception {
+        SegmentWorker[] workers = new SegmentWorker[segments];
+        for (int i = 0; i < segments; i++) {
+            workers[i] = new SegmentWorker(i, version, eventHandlerInvoker);
+            workers[i].start();
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "projections-rebuild-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> log.info("Rebuilding projections: {}", getStatus()),
+                reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+
+        SequentialPerAggregatePolicy sequencingPolicy = new SequentialPerAggregatePolicy();
+        TrackingToken lastToken = fromToken;
+        try (Stream<? extends TrackedEventMessage<?>> events = eventStorageEngine.readEvents(fromToken, false)) {
+            Iterator<? extends TrackedEventMessage<?>> iterator = events.iterator();
+            while (iterator.hasNext() && !anyFailed(workers)) {
+                TrackedEventMessage<?> event = iterator.next();
+                Object sequenceIdentifier = sequencingPolicy.getSequenceIdentifierFor(event);
+                int segment = sequenceIdentifier != null ? Math.floorMod(sequenceIdentifier.hashCode(), segments) : 0;
+                workers[segment].queue.put(event);
+                progress.read(event);
+                lastToken = event.trackingToken();
+            }
+        } finally {
+            for (SegmentWorker worker : workers) {
+                worker.endOfEvents = true;
+            }
+            for (SegmentWorker worker : workers) {
+                worker.join();
+            }
+            reporter.shutdownNow();
+        }
+        for (SegmentWorker worker : workers) {
+            if (worker.failure != null) {
+                throw worker.failure;
+            }
+        }
+        return lastToken;
+    }
+
+    /**
+     * Rejoue les derniers événements, projections en service suspendues, puis met en service la nouvelle version.
+     */
+    private void cutOver(int version, SimpleEventHandlerInvoker eventHandlerInvoker, TrackingToken fromToken) throws Exception {
+        Optional<EventProcessor> trackingProcessor = eventHandlingConfiguration.<EventProcessor>getProcessor(PROCESSING_GROUP)
+                .filter(processor -> processor instanceof TrackingEventProcessor);
+        trackingProcessor.ifPresent(EventProcessor::shutDown);
+        try {
+            projectionWriter.callWithLiveProjectionsSuspended(() -> {
+                projectionVersions.beginCutOver();
+                try {
+                    TrackingToken lastToken = ProjectionCollections.callWithVersion(version,
+                            () -> replayLastEvents(eventHandlerInvoker, fromToken));
+                    projectionVersions.switchTo(version);
+                    storeTrackingTokens(lastToken);
+                } finally {
+                    projectionVersions.endCutOver();
+                }
+                return null;
+            });
+        } finally {
+            trackingProcessor.ifPresent(EventProcessor::start);
+        }
+    }
+
+    /**
+     * Rejoue dans le thread courant les événements qui suivent le token, que les projections en service
+     * de toutes les instances ignoreront ensuite.
+     */
+    private TrackingToken replayLastEvents(SimpleEventHandlerInvoker eventHandlerInvoker, TrackingToken fromToken) throws Exception {
+        TrackingToken lastToken = fromToken;
+        List<TrackedEventMessage<?>> batch = new ArrayList<>(batchSize);
+        try (Stream<? extends TrackedEventMessage<?>> events = eventStorageEngine.readEvents(fromToken, false)) {
+            Iterator<? extends TrackedEventMessage<?>> iterator = events.iterator();
+            while (iterator.hasNext()) {
+                TrackedEventMessage<?> event = iterator.next();
+                progress.read(event);
+                lastToken = event.trackingToken();
+                batch.add(event);
+                if (batch.size() == batchSize) {
+                    processLastEvents(batch, eventHandlerInvoker);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            processLastEvents(batch, eventHandlerInvoker);
+        }
+        return lastToken;
+    }
+
+    private void processLastEvents(List<TrackedEventMessage<?>> events, SimpleEventHandlerInvoker eventHandlerInvoker) throws Exception {
+        projectionVersions.recordReplayedEvents(events.stream().map(EventMessage::getIdentifier).collect(Collectors.toList()));
+        process(events, eventHandlerInvoker);
+    }
+
+    private void process(List<TrackedEventMessage<?>> events, SimpleEventHandlerInvoker eventHandlerInvoker) throws Exception {
+        BatchingUnitOfWork<EventMessage<?>> unitOfWork = new BatchingUnitOfWork<>(new ArrayList<EventMessage<?>>(events));
+        List<MessageHandlerInterceptor<EventMessage<?>>> interceptors = Collections.singletonList(projectionWriter);
+        MessageHandler<EventMessage<?>> eventHandler = message -> {
+            eventHandlerInvoker.handle(message, Segment.ROOT_SEGMENT);
+            return null;
+        };
+        unitOfWork.executeWithResult(() -> new DefaultInterceptorChain<>(unitOfWork, interceptors, eventHandler).proceed(),
+                RollbackConfigurationType.ANY_THROWABLE);
+        progress.processed(events.size());
+    }
+
+    /**
+     * Event handlers des projections Mongo, c'est-à-dire du groupe de traitement des projections
+     */
+    private List<Object> getProjections() {
+        return applicationContext.getBeansWithAnnotation(ProcessingGroup.class).values().stream()
+                .filter(bean -> PROCESSING_GROUP.equals(AnnotationUtils.findAnnotation(AopUtils.getTargetClass(bean), ProcessingGroup.class).value()))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean anyFailed(SegmentWorker[] workers) {
+        for (SegmentWorker worker : workers) {
+            if (worker.failure != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Supprime toutes les versions des collections de projection, sauf celle en service.
+     */
+    private void dropUnusedVersions() {
+        int currentVersion = projectionVersions.getCurrentVersion();
+        for (Class<?> documentType : ProjectionCollections.DOCUMENT_TYPES) {
+            String collectionName = mongoTemplate.getCollectionName(documentType);
+            ProjectionCollections.allVersionsOf(documentType, mongoTemplate).stream()
+                    .filter(name -> !name.equals(collectionName))
+                    .forEach(name -> {
+                        log.info("Dropping unused projection collection {} (current version: {})", name, currentVersion);
+                        mongoTemplate.dropCollection(name);
+                    });
+        }
+    }
+
+    /**
+     * En mode tracking, le processeur des projections reprendra après le dernier événement rejoué.
+     */
+    private void storeTrackingTokens(TrackingToken lastToken) {
+        if (tokenStore != null && lastToken != null) {
+            int[] tokenSegments = tokenStore.fetchSegments(PROCESSING_GROUP);
+            if (tokenSegments.length == 0) {
+                tokenSegments = IntStream.range(0, projectionsProcessingConfiguration.getSegments()).toArray();
+            }
+            for (int segment : tokenSegments) {
+                tokenStore.storeToken(lastToken, PROCESSING_GROUP, segment);
+                tokenStore.releaseClaim(PROCESSING_GROUP, segment);
+            }
+        }
+    }
+
+    /**
+     * Thread traitant, dans l'ordre et par lots, les événements des agrégats d'un segment.
+     */
+    private class SegmentWorker extends Thread {
+
+        private final BlockingQueue<TrackedEventMessage<?>> queue = new ArrayBlockingQueue<>(batchSize * 2);
+        private final int version;
+        private final SimpleEventHandlerInvoker eventHandlerInvoker;
+        private volatile boolean endOfEvents;
+        private volatile Exception failure;
+
+        SegmentWorker(int segment, int version, SimpleEventHandlerInvoker eventHandlerInvoker) {
+            super("projections-rebuild-" + segment);
+            setDaemon(true);
+            this.version = version;
+            this.eventHandlerInvoker = eventHandlerInvoker;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ProjectionCollections.callWithVersion(version, () -> {
+                    List<TrackedEventMessage<?>> batch = new ArrayList<>(batchSize);
+                    while (!endOfEvents || !queue.isEmpty()) {
+                        TrackedEventMessage<?> event = queue.poll(100, TimeUnit.MILLISECONDS);
+                        if (event != null) {
+                            batch.add(event);
+                            queue.drainTo(batch, batchSize - 1);
+                            process(batch, eventHandlerInvoker);
+                            batch.clear();
+                        }
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                failure = e;
+                // Libère le thread de lecture s'il attend de la place dans la file
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Débit, durée restante estimée et retard, par rapport au dernier événement lu dans l'event store.
+     */
+    private static class Progress {
+
+        private final long startTime = System.currentTimeMillis();
+        private final int version;
+        private final long estimatedEvents;
+        private volatile String phase = "replay";
+        private final AtomicLong readEvents = new AtomicLong();
+        private final AtomicLong processedEvents = new AtomicLong();
+        private volatile long lastEventTimestamp;
+
+        Progress(int version, long estimatedEvents) {
+            this.version = version;
+            this.estimatedEvents = estimatedEvents;
+        }
+
+        void read(TrackedEventMessage<?> event) {
+            readEvents.incrementAndGet();
+            lastEventTimestamp = event.getTimestamp().toEpochMilli();
+        }
+
+        void processed(int events) {
+            processedEvents.addAndGet(events);
+        }
+
+        void report(Map<String, Object> status) {
+            long now = System.currentTimeMillis();
+            long processed = processedEvents.get();
+            long totalEvents = Math.max(estimatedEvents, readEvents.get());
+            double eventsPerSecond = processed * 1000.0 / Math.max(now - startTime, 1);
+            status.put("version", version);
+            status.put("phase", phase);
+            status.put("started_at", new Date(startTime));
+            status.put("processed_events", processed);
+            status.put("total_events", totalEvents);
+            status.put("events_per_second", Math.round(eventsPerSecond));
+            status.put("eta_seconds", eventsPerSecond > 0 ? Math.round((totalEvents - processed) / eventsPerSecond) : null);
+            status.put("lag_seconds", lastEventTimestamp > 0 ? (now - lastEventTimestamp) / 1000 : null);
+            status.put("queued_events", readEvents.get() - processed);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+
+/**
+ * Avancement de la reconstruction des projections en cours, ou de la dernière (cf. ProjectionsRebuild).
+ */
+@Component
+@Profile({MONGO, FAKE_MONGO})
+public class ProjectionsRebuildEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final ProjectionsRebuild projectionsRebuild;
+
+    @Autowired
+    public ProjectionsRebuildEndpoint(ProjectionsRebuild projectionsRebuild) {
+        super("projections_rebuild");
+        this.projectionsRebuild = projectionsRebuild;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        return projectionsRebuild.getStatus();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import org.axonframework.commandhandling.model.AggregateRoot;
+import org.axonframework.common.annotation.AnnotationUtils;
+import org.axonframework.serialization.AnnotationRevisionResolver;
+import org.axonframework.serialization.RevisionResolver;
+import org.axonframework.serialization.SerializedType;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.UnknownSerializedTypeException;
+import org.axonframework.serialization.upcasting.event.EventUpcaster;
+import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Écarte les snapshots d'agrégats dont la révision ne correspond plus à celle de la classe de l'agrégat
+ * (annotation @Revision). L'agrégat est alors reconstruit à partir de tous ses évènements
+ * et un nouveau snapshot sera pris au prochain déclenchement.
+ * <p>
+ * Sans ce filtre, un snapshot pris avec une ancienne structure de l'agrégat ne pourrait plus être désérialisé
+ * et ferait échouer toutes les commandes sur cet agrégat.
+ */
+public class AggregateSnapshotRevisionFilter implements EventUpcaster {
+
+    private final Serializer serializer;
+    private final RevisionResolver revisionResolver = new AnnotationRevisionResolver();
+    private final Map<String, PayloadType> payloadTypes = new ConcurrentHashMap<>();
+
+    public AggregateSnapshotRevisionFilter(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public Stream<IntermediateEventRepresentation> upcast(Stream<IntermediateEventRepresentation> intermediateRepresentations) {
+        return intermediateRepresentations.filter(this::isUpToDate);
+    }
+
+    private boolean isUpToDate(IntermediateEventRepresentation intermediateRepresentation) {
+        SerializedType type = intermediateRepresentation.getType();
+        PayloadType payloadType = payloadTypes.computeIfAbsent(type.getName(), name -> resolvePayloadType(type));
+        return !payloadType.aggregate || Objects.equals(payloadType.revision, type.getRevision());
+    }
+
+    private PayloadType resolvePayloadType(SerializedType type) {
+        try {
+            Class<?> payloadClass = serializer.classForType(type);
+            if (AnnotationUtils.findAnnotation(payloadClass, AggregateRoot.class) != null) {
+                return new PayloadType(true, revisionResolver.revisionOf(payloadClass));
+            }
+        } catch (UnknownSerializedTypeException e) {
+            // Type inconnu : laissé à la désérialisation
+        }
+        return new PayloadType(false, null);
+    }
+
+    /**
+     * Indique si le type est un agrégat et, le cas échéant, sa révision courante
+     */
+    private static final class PayloadType {
+        private final boolean aggregate;
+        private final String revision;
+
+        private PayloadType(boolean aggregate, String revision) {
+            this.aggregate = aggregate;
+            this.revision = revision;
+        }
+    }
+}
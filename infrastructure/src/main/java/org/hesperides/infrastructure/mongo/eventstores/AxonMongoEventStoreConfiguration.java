@@ -7,7 +7,11 @@ import lombok.Getter;
 import lombok.Setter;
 import org.axonframework.eventsourcing.eventstore.EventStorageEngine;
 import org.axonframework.mongo.DefaultMongoTemplate;
+import org.axonframework.mongo.MongoTemplate;
 import org.axonframework.mongo.eventsourcing.eventstore.MongoEventStorageEngine;
+import org.axonframework.mongo.eventsourcing.eventstore.documentperevent.DocumentPerEventStorageStrategy;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.upcasting.event.EventUpcasterChain;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -44,10 +48,18 @@ public class AxonMongoEventStoreConfiguration {
         }
     }
 
+    @Bean
+    public MongoTemplate axonMongoTemplate() {
+        return new DefaultMongoTemplate(eventStoreMongoClient(), database);
+    }
+
     @Bean
     @Primary
-    public EventStorageEngine eventStore() {
-        return new MongoEventStorageEngine(new DefaultMongoTemplate(eventStoreMongoClient(), database));
+    public EventStorageEngine eventStore(Serializer serializer, EventSerializationConfiguration eventSerializationConfiguration) {
+        Serializer eventSerializer = eventSerializationConfiguration.eventSerializer(serializer);
+        return new MongoEventStorageEngine(eventSerializer,
+                new EventUpcasterChain(new AggregateSnapshotRevisionFilter(eventSerializer), new TemplatePropertiesUpcaster(serializer)),
+                axonMongoTemplate(), new DocumentPerEventStorageStrategy());
     }
 
 
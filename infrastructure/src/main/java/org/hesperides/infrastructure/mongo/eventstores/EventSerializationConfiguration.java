@@ -0,0 +1,72 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.serialization.Serializer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+
+/**
+ * Format des évènements et des snapshots écrits dans l'event store.
+ * <p>
+ * Le serializer par défaut d'Axon (XStream) reste celui des tokens de suivi et des upcasters XML :
+ * seul le moteur de stockage des évènements utilise le format choisi ici.
+ */
+@Configuration
+@Profile({MONGO, FAKE_MONGO})
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("event_serialization")
+public class EventSerializationConfiguration {
+
+    public static final String XSTREAM = "xstream";
+    public static final String JSON = "json";
+
+    /**
+     * xstream : XML historique, json : JSON compact, les évènements XML déjà stockés restant lisibles
+     */
+    private String format = XSTREAM;
+    /**
+     * Taille du JSON, en caractères, à partir de laquelle il est compressé, 0 pour désactiver
+     */
+    private int compressionThreshold = 1024;
+
+    public Serializer eventSerializer(Serializer defaultSerializer) {
+        switch (format) {
+            case XSTREAM:
+                log.info("Event serialization: XStream");
+                return defaultSerializer;
+            case JSON:
+                log.info("Event serialization: JSON, compressed from {} characters", compressionThreshold);
+                return new JsonEventSerializer(defaultSerializer, compressionThreshold);
+            default:
+                throw new IllegalArgumentException("Unknown event serialization format: " + format);
+        }
+    }
+}
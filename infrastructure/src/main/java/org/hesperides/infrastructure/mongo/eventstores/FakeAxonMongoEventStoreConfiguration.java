@@ -3,7 +3,11 @@ package org.hesperides.infrastructure.mongo.eventstores;
 import com.mongodb.MongoClient;
 import org.axonframework.eventsourcing.eventstore.EventStorageEngine;
 import org.axonframework.mongo.DefaultMongoTemplate;
+import org.axonframework.mongo.MongoTemplate;
 import org.axonframework.mongo.eventsourcing.eventstore.MongoEventStorageEngine;
+import org.axonframework.mongo.eventsourcing.eventstore.documentperevent.DocumentPerEventStorageStrategy;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.upcasting.event.EventUpcasterChain;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -14,9 +18,18 @@ import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
 @Configuration
 @Profile({FAKE_MONGO})
 public class FakeAxonMongoEventStoreConfiguration {
+    @Bean
+    public MongoTemplate axonMongoTemplate(MongoClient client) {
+        return new DefaultMongoTemplate(client);
+    }
+
     @Bean
     @Primary
-    public EventStorageEngine eventStore(MongoClient client) {
-        return new MongoEventStorageEngine(new DefaultMongoTemplate(client));
+    public EventStorageEngine eventStore(MongoTemplate axonMongoTemplate, Serializer serializer,
+                                         EventSerializationConfiguration eventSerializationConfiguration) {
+        Serializer eventSerializer = eventSerializationConfiguration.eventSerializer(serializer);
+        return new MongoEventStorageEngine(eventSerializer,
+                new EventUpcasterChain(new AggregateSnapshotRevisionFilter(eventSerializer), new TemplatePropertiesUpcaster(serializer)),
+                axonMongoTemplate, new DocumentPerEventStorageStrategy());
     }
 }
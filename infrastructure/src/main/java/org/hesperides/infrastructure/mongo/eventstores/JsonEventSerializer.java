@@ -0,0 +1,253 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.serialization.AnnotationRevisionResolver;
+import org.axonframework.serialization.Converter;
+import org.axonframework.serialization.RevisionResolver;
+import org.axonframework.serialization.SerializationException;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.SerializedType;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedObject;
+import org.axonframework.serialization.SimpleSerializedType;
+import org.axonframework.serialization.UnknownSerializedTypeException;
+import org.hesperides.domain.security.UserEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sérialisation JSON compacte des évènements et des snapshots, à la place du XML de XStream.
+ * <p>
+ * Au-delà d'une certaine taille (templates, modules déployés...), le JSON est compressé en gzip et encodé en base64,
+ * pour rester une chaîne de caractères dans l'event store. Le XML déjà stocké est reconnu à son premier caractère
+ * et reste désérialisé par XStream, ce qui permet de basculer sans migrer l'event store. Les méta-données,
+ * dont les valeurs sont de types quelconques, restent elles aussi confiées à XStream.
+ */
+public class JsonEventSerializer implements Serializer {
+
+    /**
+     * Début de tout contenu gzip encodé en base64 (nombre magique 1f 8b 08)
+     */
+    static final String COMPRESSED_PREFIX = "H4sI";
+    private static final String DOMAIN_PACKAGE = "org.hesperides.";
+    private static final String TYPE_FIELD = "@type";
+    private static final String VALUE_FIELD = "@value";
+
+    private final Serializer legacySerializer;
+    private final int compressionThreshold;
+    private final Gson gson;
+    private final Converter converter;
+    private final RevisionResolver revisionResolver = new AnnotationRevisionResolver();
+
+    /**
+     * @param legacySerializer     serializer XStream des évènements déjà stockés et des méta-données
+     * @param compressionThreshold taille du JSON, en caractères, à partir de laquelle il est compressé, 0 pour ne jamais compresser
+     */
+    public JsonEventSerializer(Serializer legacySerializer, int compressionThreshold) {
+        this.legacySerializer = legacySerializer;
+        this.compressionThreshold = compressionThreshold;
+        // Celui de XStream sait aussi convertir le XML des évènements déjà stockés, pour les upcasters
+        this.converter = legacySerializer.getConverter();
+        this.gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new AbstractTypeAdapterFactory())
+                // Le champ "user" de UserEvent est redéfini par chaque évènement
+                .addSerializationExclusionStrategy(new UserEventExclusionStrategy())
+                .addDeserializationExclusionStrategy(new UserEventExclusionStrategy())
+                .create();
+    }
+
+    @Override
+    public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+        if (object instanceof MetaData) {
+            return legacySerializer.serialize(object, expectedRepresentation);
+        }
+        String json = gson.toJson(object);
+        String data = compressionThreshold > 0 && json.length() >= compressionThreshold ? compress(json) : json;
+        return new SimpleSerializedObject<>(converter.convert(data, expectedRepresentation), expectedRepresentation,
+                typeForClass(object == null ? Void.class : object.getClass()));
+    }
+
+    @Override
+    public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+        return converter.canConvert(String.class, expectedRepresentation);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+        if (SimpleSerializedType.emptyType().equals(serializedObject.getType())) {
+            return null;
+        }
+        // Évènements XML stockés avant le passage au JSON, éventuellement déjà convertis par un upcaster
+        Class<S> contentType = serializedObject.getContentType();
+        if (!String.class.equals(contentType) && !byte[].class.equals(contentType)) {
+            return legacySerializer.deserialize(serializedObject);
+        }
+        String data = converter.convert(serializedObject.getData(), contentType, String.class);
+        if (data.startsWith("<")) {
+            return legacySerializer.deserialize(serializedObject);
+        }
+        String json = data.startsWith(COMPRESSED_PREFIX) ? decompress(data) : data;
+        try {
+            return (T) gson.fromJson(json, classForType(serializedObject.getType()));
+        } catch (JsonParseException e) {
+            throw new SerializationException("Unable to deserialize " + serializedObject.getType().getName(), e);
+        }
+    }
+
+    @Override
+    public Class classForType(SerializedType type) throws UnknownSerializedTypeException {
+        if (SimpleSerializedType.emptyType().equals(type)) {
+            return Void.class;
+        }
+        try {
+            return Class.forName(type.getName());
+        } catch (ClassNotFoundException e) {
+            throw new UnknownSerializedTypeException(type, e);
+        }
+    }
+
+    @Override
+    public SerializedType typeForClass(Class type) {
+        if (type == null || Void.class.equals(type)) {
+            return SimpleSerializedType.emptyType();
+        }
+        return new SimpleSerializedType(type.getName(), revisionResolver.revisionOf(type));
+    }
+
+    @Override
+    public Converter getConverter() {
+        return converter;
+    }
+
+    private static String compress(String json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() / 4);
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            throw new SerializationException("Unable to compress serialized object", e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static String decompress(String data) {
+        byte[] bytes = Base64.getDecoder().decode(data);
+        StringBuilder json = new StringBuilder(bytes.length * 4);
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                json.append(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Unable to decompress serialized object", e);
+        }
+        return json.toString();
+    }
+
+    private static final class UserEventExclusionStrategy implements ExclusionStrategy {
+
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+            return UserEvent.class.equals(field.getDeclaringClass());
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> type) {
+            return false;
+        }
+    }
+
+    /**
+     * Les champs déclarés avec un type abstrait du domaine (clés de modules et de technos, propriétés...)
+     * sont écrits avec leur type concret, nécessaire pour les relire.
+     */
+    private static final class AbstractTypeAdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            Class<? super T> rawType = typeToken.getRawType();
+            if (!rawType.getName().startsWith(DOMAIN_PACKAGE) || rawType.isEnum()
+                    || (!rawType.isInterface() && !Modifier.isAbstract(rawType.getModifiers()))) {
+                return null;
+            }
+            TypeAdapter<JsonElement> jsonElementAdapter = gson.getAdapter(JsonElement.class);
+            return new TypeAdapter<T>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (value == null) {
+                        out.nullValue();
+                        return;
+                    }
+                    TypeAdapter<T> delegate = (TypeAdapter<T>) gson.getDelegateAdapter(AbstractTypeAdapterFactory.this, TypeToken.get(value.getClass()));
+                    JsonObject jsonObject = new JsonObject();
+                    jsonObject.addProperty(TYPE_FIELD, value.getClass().getName());
+                    jsonObject.add(VALUE_FIELD, delegate.toJsonTree(value));
+                    jsonElementAdapter.write(out, jsonObject);
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public T read(JsonReader in) throws IOException {
+                    JsonElement jsonElement = jsonElementAdapter.read(in);
+                    if (jsonElement == null || jsonElement.isJsonNull()) {
+                        return null;
+                    }
+                    JsonObject jsonObject = jsonElement.getAsJsonObject();
+                    String typeName = jsonObject.get(TYPE_FIELD).getAsString();
+                    try {
+                        Class<?> type = Class.forName(typeName);
+                        TypeAdapter<?> delegate = gson.getDelegateAdapter(AbstractTypeAdapterFactory.this, TypeToken.get(type));
+                        return (T) delegate.fromJsonTree(jsonObject.get(VALUE_FIELD));
+                    } catch (ClassNotFoundException e) {
+                        throw new JsonParseException("Unknown type " + typeName, e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import org.axonframework.serialization.SerializedType;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.SimpleSerializedType;
+import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation;
+import org.axonframework.serialization.upcasting.event.SingleEventUpcaster;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.hesperides.domain.modules.TemplateCreatedEvent;
+import org.hesperides.domain.modules.TemplateUpdatedEvent;
+import org.hesperides.domain.technos.TechnoTemplateUpdatedEvent;
+import org.hesperides.domain.technos.TemplateAddedToTechnoEvent;
+import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Depuis leur révision 2, les évènements de création et de mise à jour de template portent les propriétés
+ * extraites par l'agrégat. Cet upcaster complète les évènements enregistrés auparavant en extrayant
+ * les propriétés du template qu'ils contiennent, de sorte que les projections n'aient jamais à le faire.
+ */
+public class TemplatePropertiesUpcaster extends SingleEventUpcaster {
+
+    private static final String REVISION = "2";
+    private static final String[] TEMPLATE_FIELDS = {"filename", "location", "content"};
+    private static final Set<String> EVENT_TYPES = Stream.of(
+            TemplateCreatedEvent.class,
+            TemplateUpdatedEvent.class,
+            TemplateAddedToTechnoEvent.class,
+            TechnoTemplateUpdatedEvent.class)
+            .map(Class::getName)
+            .collect(Collectors.toSet());
+
+    /**
+     * Serializer XStream : les évènements à upcaster sont antérieurs à la sérialisation JSON (cf. JsonEventSerializer)
+     */
+    private final Serializer serializer;
+
+    public TemplatePropertiesUpcaster(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    protected boolean canUpcast(IntermediateEventRepresentation intermediateRepresentation) {
+        SerializedType type = intermediateRepresentation.getType();
+        return type.getRevision() == null && EVENT_TYPES.contains(type.getName());
+    }
+
+    @Override
+    protected IntermediateEventRepresentation doUpcast(IntermediateEventRepresentation intermediateRepresentation) {
+        SerializedType upcastedType = new SimpleSerializedType(intermediateRepresentation.getType().getName(), REVISION);
+        return intermediateRepresentation.upcastPayload(upcastedType, Document.class, this::addProperties);
+    }
+
+    private Document addProperties(Document document) {
+        List<AbstractProperty> properties = new ArrayList<>();
+        Element templateElement = document.getRootElement().element("template");
+        if (templateElement != null) {
+            for (String field : TEMPLATE_FIELDS) {
+                String value = templateElement.elementText(field);
+                if (value != null) {
+                    properties.addAll(AbstractProperty.extractPropertiesFromStringContent(value));
+                }
+            }
+        }
+        // La liste est sérialisée par le serializer de l'event store puis ses éléments sont rattachés au champ "properties"
+        Element propertiesElement = document.getRootElement().addElement("properties");
+        Document serializedProperties = serializer.serialize(properties, Document.class).getData();
+        for (Object propertyElement : serializedProperties.getRootElement().elements()) {
+            propertiesElement.add(((Element) propertyElement).createCopy());
+        }
+        return document;
+    }
+}
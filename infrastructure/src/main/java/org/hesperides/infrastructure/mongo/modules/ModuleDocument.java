@@ -1,41 +1,49 @@
 package org.hesperides.infrastructure.mongo.modules;
 
+import com.mongodb.BasicDBObject;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hesperides.domain.modules.entities.Module;
 import org.hesperides.domain.modules.queries.ModuleView;
-import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
-import org.hesperides.domain.templatecontainers.entities.Template;
+import org.hesperides.domain.technos.queries.TechnoView;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
 import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateKeyDocument;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Data
-@Document(collection = "module")
+@Document(collection = "#{T(org.hesperides.infrastructure.mongo.ProjectionCollections).name('module')}")
 @NoArgsConstructor
 public class ModuleDocument {
 
     @Id
     private KeyDocument key;
     private List<TemplateDocument> templates;
-    @DBRef
-    private List<TechnoDocument> technos;
+    /**
+     * Seules les clés des technos sont conservées : le modèle de propriétés des technos n'est lu,
+     * en une seule requête, que lorsque celui du module doit être recalculé.
+     */
+    private List<KeyDocument> technos;
     private List<AbstractPropertyDocument> properties;
     private Long versionId;
 
-    public ModuleDocument(Module module, List<TechnoDocument> technoDocuments) {
+    public ModuleDocument(Module module) {
         this.key = new KeyDocument(module.getKey());
         this.templates = TemplateDocument.fromDomainInstances(module.getTemplates());
-        this.technos = technoDocuments;
+        this.technos = KeyDocument.fromTemplateContainers(module.getTechnos());
         this.versionId = module.getVersionId();
     }
 
@@ -43,10 +51,20 @@ public class ModuleDocument {
         TemplateContainer.Key moduleKey = getDomainKey();
         return new ModuleView(key.getName(), key.getVersion(), key.isWorkingCopy(),
                 TemplateDocument.toTemplateViews(templates, moduleKey),
-                TechnoDocument.toTechnoViews(technos),
+                toTechnoViews(technos),
                 versionId);
     }
 
+    private static List<TechnoView> toTechnoViews(List<KeyDocument> technoKeys) {
+        List<TechnoView> technoViews = null;
+        if (technoKeys != null) {
+            technoViews = technoKeys.stream()
+                    .map(technoKey -> new TechnoView(technoKey.getName(), technoKey.getVersion(), technoKey.isWorkingCopy(), null))
+                    .collect(Collectors.toList());
+        }
+        return technoViews;
+    }
+
     public void addTemplate(TemplateDocument templateDocument) {
         if (templates == null) {
             templates = new ArrayList<>();
@@ -54,64 +72,99 @@ public class ModuleDocument {
         templates.add(templateDocument);
     }
 
+    /**
+     * Remplace le template à sa place, comme la mise à jour positionnelle faite dans Mongo,
+     * dont la comparaison des noms est sensible à la casse.
+     */
     public void updateTemplate(TemplateDocument updatedTemplateDocument) {
-        // Solution A
-        removeTemplate(updatedTemplateDocument.getName());
-        addTemplate(updatedTemplateDocument);
-
-        // Solution B
-        /*setTemplates(templates.stream()
-                .map(existingTemplateDocument -> existingTemplateDocument.getName().equalsIgnoreCase(updatedTemplateDocument.getName()) ? updatedTemplateDocument : existingTemplateDocument)
-                .collect(Collectors.toList()));*/
-
-        // Solution C
-        /*for (int i = 0; i < templates.size(); i++) {
-            if (templates.get(i).getName().equalsIgnoreCase(updatedTemplateDocument.getName())) {
+        for (int i = 0; i < templates.size(); i++) {
+            if (templates.get(i).getName().equals(updatedTemplateDocument.getName())) {
                 templates.set(i, updatedTemplateDocument);
                 break;
             }
-        }*/
+        }
     }
 
     public void removeTemplate(String templateName) {
-        templates.removeIf(templateDocument -> templateDocument.getName().equalsIgnoreCase(templateName));
+        templates.removeIf(templateDocument -> templateDocument.getName().equals(templateName));
+    }
+
+    /**
+     * Génère la liste des propriétés avant de persister.
+     * Chaque template conserve ses propres propriétés : seul le template créé ou modifié a été analysé,
+     * le modèle du module est la concaténation des propriétés des templates du module puis de ceux des technos.
+     *
+     * @param technoDocuments  les technos du module, dans l'ordre de leurs clés
+     * @param projectionWriter
+     */
+    public void extractPropertiesAndSave(List<TechnoDocument> technoDocuments, BatchedProjectionWriter projectionWriter) {
+        this.setProperties(extractPropertiesFromTemplatesAndTechnos(technoDocuments));
+        this.setTemplates(TemplateDocument.saveAndSummarize(templates, TemplateKeyDocument.MODULE, key, projectionWriter));
+        projectionWriter.save(key, this);
     }
 
-    public Optional<TemplateDocument> findOptionalTemplateByName(String templateName) {
-        return templates.stream().filter(templateDocument -> templateDocument.getName().equalsIgnoreCase(templateName)).findFirst();
+    public void deleteWithTemplates(BatchedProjectionWriter projectionWriter) {
+        if (templates != null) {
+            templates.forEach(templateDocument -> TemplateDocument.delete(TemplateKeyDocument.MODULE, key, templateDocument.getName(), projectionWriter));
+        }
+        projectionWriter.delete(ModuleDocument.class, key);
     }
 
     /**
-     * Génère la liste des propriétés avant de persister
-     *
-     * @param moduleRepository
+     * Le template complet est enregistré dans sa propre collection :
+     * seuls son résumé et le modèle de propriétés du module sont transmis au document du module.
      */
-    public void extractPropertiesAndSave(MongoModuleRepository moduleRepository) {
-        this.setProperties(extractPropertiesFromTemplatesAndTechnos());
-        moduleRepository.save(this);
+    public void addTemplateAndSave(TemplateDocument templateDocument, List<TechnoDocument> technoDocuments, BatchedProjectionWriter projectionWriter) {
+        TemplateDocument templateSummary = templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, key, projectionWriter);
+        addTemplate(templateSummary);
+        extractPropertiesAndUpdate(technoDocuments, projectionWriter, new Query(where("_id").is(key)),
+                new Update().push("templates", templateSummary));
     }
 
-    private List<AbstractPropertyDocument> extractPropertiesFromTemplatesAndTechnos() {
-        List<Template> allTemplates = getDomainTemplatesFromTemplateDocumentsAndTechnoDocuments();
-        List<AbstractProperty> abstractProperties = AbstractProperty.extractPropertiesFromTemplates(allTemplates);
-        List<AbstractPropertyDocument> abstractPropertyDocuments = AbstractPropertyDocument.fromDomainInstances(abstractProperties);
-        return abstractPropertyDocuments;
+    public void updateTemplateAndSave(TemplateDocument templateDocument, List<TechnoDocument> technoDocuments, BatchedProjectionWriter projectionWriter) {
+        TemplateDocument templateSummary = templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, key, projectionWriter);
+        updateTemplate(templateSummary);
+        extractPropertiesAndUpdate(technoDocuments, projectionWriter, new Query(where("_id").is(key).and("templates.name").is(templateSummary.getName())),
+                new Update().set("templates.$", templateSummary));
     }
 
-    private List<Template> getDomainTemplatesFromTemplateDocumentsAndTechnoDocuments() {
-        Module module = this.toDomainInstance();
-        List<Template> allTemplates = new ArrayList<>();
-        if (module.getTemplates() != null) {
-            allTemplates.addAll(module.getTemplates());
-        }
-        if (module.getTechnos() != null) {
-            module.getTechnos().forEach(techno -> {
-                if (techno.getTemplates() != null) {
-                    allTemplates.addAll(techno.getTemplates());
-                }
-            });
+    public void removeTemplateAndSave(String templateName, List<TechnoDocument> technoDocuments, BatchedProjectionWriter projectionWriter) {
+        TemplateDocument.delete(TemplateKeyDocument.MODULE, key, templateName, projectionWriter);
+        removeTemplate(templateName);
+        extractPropertiesAndUpdate(technoDocuments, projectionWriter, new Query(where("_id").is(key)),
+                new Update().pull("templates", new BasicDBObject("name", templateName)));
+    }
+
+    public void updateTechnosAndSave(List<KeyDocument> technoKeys, List<TechnoDocument> technoDocuments, Long versionId, BatchedProjectionWriter projectionWriter) {
+        setTechnos(technoKeys);
+        setVersionId(versionId);
+        extractPropertiesAndUpdate(technoDocuments, projectionWriter, new Query(where("_id").is(key)),
+                new Update().set("technos", technoKeys).set("versionId", versionId));
+    }
+
+    /**
+     * Recalcule le modèle de propriétés du module seul, après la modification d'une de ses technos.
+     * Le module peut avoir été lu sans autre champ que les propriétés de ses templates et ses technos.
+     */
+    public void extractProperties(List<TechnoDocument> technoDocuments) {
+        this.setProperties(extractPropertiesFromTemplatesAndTechnos(technoDocuments));
+    }
+
+    public void saveProperties(BatchedProjectionWriter projectionWriter) {
+        projectionWriter.update(ModuleDocument.class, key, new Query(where("_id").is(key)), new Update().set("properties", properties));
+    }
+
+    private void extractPropertiesAndUpdate(List<TechnoDocument> technoDocuments, BatchedProjectionWriter projectionWriter, Query query, Update update) {
+        this.setProperties(extractPropertiesFromTemplatesAndTechnos(technoDocuments));
+        projectionWriter.update(ModuleDocument.class, key, query, update.set("properties", properties));
+    }
+
+    private List<AbstractPropertyDocument> extractPropertiesFromTemplatesAndTechnos(List<TechnoDocument> technoDocuments) {
+        List<AbstractPropertyDocument> abstractPropertyDocuments = TemplateDocument.extractPropertiesIfAbsent(templates, getDomainKey());
+        if (technoDocuments != null) {
+            technoDocuments.forEach(technoDocument -> abstractPropertyDocuments.addAll(technoDocument.extractPropertiesIfAbsent()));
         }
-        return allTemplates;
+        return abstractPropertyDocuments;
     }
 
     public Module toDomainInstance() {
@@ -119,7 +172,7 @@ public class ModuleDocument {
         return new Module(
                 moduleKey,
                 TemplateDocument.toDomainInstances(templates, moduleKey),
-                TechnoDocument.toDomainInstances(technos),
+                TechnoView.toDomainInstances(toTechnoViews(technos)),
                 versionId
         );
     }
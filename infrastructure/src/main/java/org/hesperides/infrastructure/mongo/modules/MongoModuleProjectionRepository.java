@@ -1,15 +1,20 @@
 package org.hesperides.infrastructure.mongo.modules;
 
+import org.axonframework.config.ProcessingGroup;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.queryhandling.QueryHandler;
 import org.hesperides.domain.modules.*;
 import org.hesperides.domain.modules.queries.ModuleView;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.hesperides.domain.templatecontainers.queries.AbstractPropertyView;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
 import org.hesperides.infrastructure.mongo.technos.MongoTechnoProjectionRepository;
 import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.MongoTemplateRepository;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateContentStore;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateKeyDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.PageRequest;
@@ -17,28 +22,40 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
 import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
 
 @Profile({MONGO, FAKE_MONGO})
 @Repository
+@ProcessingGroup(PROCESSING_GROUP)
 public class MongoModuleProjectionRepository implements ModuleProjectionRepository {
 
     private final MongoModuleRepository moduleRepository;
     private final MongoTechnoProjectionRepository technoProjectionRepository;
+    private final MongoTemplateRepository templateRepository;
+    private final TemplateContentStore templateContentStore;
     private final MongoTemplate mongoTemplate;
+    private final BatchedProjectionWriter projectionWriter;
 
     @Autowired
     public MongoModuleProjectionRepository(MongoModuleRepository moduleRepository,
                                            MongoTechnoProjectionRepository technoProjectionRepository,
-                                           MongoTemplate mongoTemplate) {
+                                           MongoTemplateRepository templateRepository,
+                                           TemplateContentStore templateContentStore,
+                                           MongoTemplate mongoTemplate,
+                                           BatchedProjectionWriter projectionWriter) {
         this.moduleRepository = moduleRepository;
         this.technoProjectionRepository = technoProjectionRepository;
+        this.templateRepository = templateRepository;
+        this.templateContentStore = templateContentStore;
         this.mongoTemplate = mongoTemplate;
+        this.projectionWriter = projectionWriter;
     }
 
     /*** EVENT HANDLERS ***/
@@ -46,27 +63,27 @@ public class MongoModuleProjectionRepository implements ModuleProjectionReposito
     @EventHandler
     @Override
     public void onModuleCreatedEvent(ModuleCreatedEvent event) {
-        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocumentsFromDomainInstances(event.getModule().getTechnos());
-        ModuleDocument moduleDocument = new ModuleDocument(event.getModule(), technoDocuments);
-        moduleDocument.extractPropertiesAndSave(moduleRepository);
+        ModuleDocument moduleDocument = new ModuleDocument(event.getModule());
+        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocuments(moduleDocument.getTechnos());
+        moduleDocument.extractPropertiesAndSave(technoDocuments, projectionWriter);
     }
 
     @EventHandler
     @Override
     public void onModuleTechnosUpdatedEvent(ModuleTechnosUpdatedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getModuleKey());
-        ModuleDocument moduleDocument = moduleRepository.findByKey(keyDocument);
-        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocumentsFromDomainInstances(event.getTechnos());
-        moduleDocument.setTechnos(technoDocuments);
-        moduleDocument.setVersionId(event.getVersionId());
-        moduleDocument.extractPropertiesAndSave(moduleRepository);
+        ModuleDocument moduleDocument = projectionWriter.find(ModuleDocument.class, keyDocument, moduleRepository::findByKey);
+        List<KeyDocument> technoKeys = KeyDocument.fromTemplateContainers(event.getTechnos());
+        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocuments(technoKeys);
+        moduleDocument.updateTechnosAndSave(technoKeys, technoDocuments, event.getVersionId(), projectionWriter);
     }
 
     @EventHandler
     @Override
     public void onModuleDeletedEvent(ModuleDeletedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getModuleKey());
-        moduleRepository.deleteByKey(keyDocument);
+        ModuleDocument moduleDocument = projectionWriter.find(ModuleDocument.class, keyDocument, moduleRepository::findByKey);
+        moduleDocument.deleteWithTemplates(projectionWriter);
     }
 
     /*** QUERY HANDLERS ***/
@@ -74,11 +91,22 @@ public class MongoModuleProjectionRepository implements ModuleProjectionReposito
     @QueryHandler
     @Override
     public Optional<ModuleView> onGetModuleByKeyQuery(GetModuleByKeyQuery query) {
+        // Les templates se limitent aux résumés conservés dans le module
+        KeyDocument keyDocument = new KeyDocument(query.getModuleKey());
+        return moduleRepository.findOptionalByKey(keyDocument).map(ModuleDocument::toModuleView);
+    }
+
+    @QueryHandler
+    @Override
+    public Optional<ModuleView> onGetModuleWithTemplatesQuery(GetModuleWithTemplatesQuery query) {
         Optional<ModuleView> optionalModuleView = Optional.empty();
         KeyDocument keyDocument = new KeyDocument(query.getModuleKey());
         Optional<ModuleDocument> optionalModuleDocument = moduleRepository.findOptionalByKey(keyDocument);
         if (optionalModuleDocument.isPresent()) {
-            optionalModuleView = Optional.of(optionalModuleDocument.get().toModuleView());
+            // Le module est lu pour être copié : il faut le contenu de ses templates
+            ModuleDocument moduleDocument = optionalModuleDocument.get();
+            moduleDocument.setTemplates(templateContentStore.withContents(templateRepository.findAllInOrderOf(TemplateKeyDocument.MODULE, keyDocument, moduleDocument.getTemplates())));
+            optionalModuleView = Optional.of(moduleDocument.toModuleView());
         }
         return optionalModuleView;
     }
@@ -86,15 +114,17 @@ public class MongoModuleProjectionRepository implements ModuleProjectionReposito
     @QueryHandler
     @Override
     public List<String> onGetModulesNamesQuery(GetModulesNamesQuery query) {
-        return mongoTemplate.getCollection("module").distinct("_id.name");
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(ModuleDocument.class)).distinct("_id.name");
     }
 
     @QueryHandler
     @Override
     public List<String> onGetModuleVersionTypesQuery(GetModuleVersionTypesQuery query) {
-        return moduleRepository.findByKeyNameAndKeyVersion(query.getModuleName(), query.getModuleVersion())
+        // La lecture du seul _id peut passer par l'index et ne suit plus l'ordre d'insertion : la working copy est remise en tête
+        return moduleRepository.findKeysByKeyNameAndKeyVersion(query.getModuleName(), query.getModuleVersion())
                 .stream()
                 .map(ModuleDocument::getKey)
+                .sorted(Comparator.comparing(KeyDocument::isWorkingCopy, Comparator.reverseOrder()))
                 .map(KeyDocument::isWorkingCopy)
                 .map(TemplateContainer.VersionType::toString)
                 .collect(Collectors.toList());
@@ -103,7 +133,7 @@ public class MongoModuleProjectionRepository implements ModuleProjectionReposito
     @QueryHandler
     @Override
     public List<String> onGetModuleVersionsQuery(GetModuleVersionsQuery query) {
-        return moduleRepository.findByKeyName(query.getModuleName())
+        return moduleRepository.findKeysByKeyName(query.getModuleName())
                 .stream()
                 .map(ModuleDocument::getKey)
                 .map(KeyDocument::getVersion)
@@ -114,8 +144,7 @@ public class MongoModuleProjectionRepository implements ModuleProjectionReposito
     @Override
     public Boolean onModuleAlreadyExistsQuery(ModuleAlreadyExistsQuery query) {
         KeyDocument keyDocument = new KeyDocument(query.getModuleKey());
-        Optional<ModuleDocument> optionalModuleDocument = moduleRepository.findOptionalByKey(keyDocument);
-        return optionalModuleDocument.isPresent();
+        return moduleRepository.existsByKey(keyDocument);
     }
 
     @QueryHandler
@@ -4,10 +4,12 @@ import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
 import static org.hesperides.domain.framework.Profiles.MONGO;
@@ -20,13 +22,30 @@ public interface MongoModuleRepository extends MongoRepository<ModuleDocument, S
 
     Optional<ModuleDocument> findOptionalByKey(KeyDocument key);
 
-    List<ModuleDocument> findByKeyNameAndKeyVersion(String name, String version);
+    /**
+     * Les requêtes suivantes ne lisent que les champs nécessaires : ni les technos, ni le modèle de propriétés.
+     */
+    @Query(fields = "{ '_id' : 1 }")
+    List<ModuleDocument> findKeysByKeyNameAndKeyVersion(String name, String version);
 
-    List<ModuleDocument> findByKeyName(String name);
+    @Query(fields = "{ '_id' : 1 }")
+    List<ModuleDocument> findKeysByKeyName(String name);
 
-    void deleteByKey(KeyDocument key);
+    @Query(fields = "{ 'templates.name' : 1, 'templates.filename' : 1, 'templates.location' : 1 }")
+    Optional<ModuleDocument> findOptionalTemplatesByKey(KeyDocument key);
+
+    boolean existsByKey(KeyDocument key);
+
+    /**
+     * Modules qui utilisent une techno, avec seulement ce qu'il faut pour recalculer leur modèle de propriétés.
+     * Le curseur doit être fermé.
+     */
+    @Query(fields = "{ 'templates.properties' : 1, 'technos' : 1 }")
+    Stream<ModuleDocument> findAllByTechnos(KeyDocument technoKey);
 
-    Optional<ModuleDocument> findOptionalByKeyAndTemplatesName(KeyDocument key, String templateName);
+    long countByTechnos(KeyDocument technoKey);
+
+    void deleteByKey(KeyDocument key);
 
     List<ModuleDocument> findAllByKeyNameLikeAndAndKeyVersionLike(String name, String version, Pageable pageable);
 }
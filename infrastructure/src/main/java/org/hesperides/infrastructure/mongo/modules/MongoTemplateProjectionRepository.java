@@ -20,13 +20,20 @@
  */
 package org.hesperides.infrastructure.mongo.modules;
 
+import org.axonframework.config.ProcessingGroup;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.queryhandling.QueryHandler;
 import org.hesperides.domain.modules.*;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.hesperides.domain.templatecontainers.queries.TemplateView;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.hesperides.infrastructure.mongo.technos.MongoTechnoProjectionRepository;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.MongoTemplateRepository;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateContentStore;
 import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateKeyDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
@@ -38,16 +45,30 @@ import java.util.stream.Collectors;
 
 import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
 import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
 
 @Profile({MONGO, FAKE_MONGO})
 @Repository
+@ProcessingGroup(PROCESSING_GROUP)
 public class MongoTemplateProjectionRepository implements TemplateProjectionRepository {
 
     private final MongoModuleRepository moduleRepository;
+    private final MongoTemplateRepository templateRepository;
+    private final TemplateContentStore templateContentStore;
+    private final MongoTechnoProjectionRepository technoProjectionRepository;
+    private final BatchedProjectionWriter projectionWriter;
 
     @Autowired
-    public MongoTemplateProjectionRepository(MongoModuleRepository moduleRepository) {
+    public MongoTemplateProjectionRepository(MongoModuleRepository moduleRepository,
+                                             MongoTemplateRepository templateRepository,
+                                             TemplateContentStore templateContentStore,
+                                             MongoTechnoProjectionRepository technoProjectionRepository,
+                                             BatchedProjectionWriter projectionWriter) {
         this.moduleRepository = moduleRepository;
+        this.templateRepository = templateRepository;
+        this.templateContentStore = templateContentStore;
+        this.technoProjectionRepository = technoProjectionRepository;
+        this.projectionWriter = projectionWriter;
     }
 
     /*** EVENT HANDLERS ***/
@@ -56,29 +77,29 @@ public class MongoTemplateProjectionRepository implements TemplateProjectionRepo
     @EventHandler
     public void onTemplateCreatedEvent(TemplateCreatedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getModuleKey());
-        ModuleDocument moduleDocument = moduleRepository.findByKey(keyDocument);
-        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate());
-        moduleDocument.addTemplate(templateDocument);
-        moduleDocument.extractPropertiesAndSave(moduleRepository);
+        ModuleDocument moduleDocument = projectionWriter.find(ModuleDocument.class, keyDocument, moduleRepository::findByKey);
+        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate(), event.getProperties());
+        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocuments(moduleDocument.getTechnos());
+        moduleDocument.addTemplateAndSave(templateDocument, technoDocuments, projectionWriter);
     }
 
     @Override
     @EventHandler
     public void onTemplateUpdatedEvent(TemplateUpdatedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getModuleKey());
-        ModuleDocument moduleDocument = moduleRepository.findByKey(keyDocument);
-        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate());
-        moduleDocument.updateTemplate(templateDocument);
-        moduleDocument.extractPropertiesAndSave(moduleRepository);
+        ModuleDocument moduleDocument = projectionWriter.find(ModuleDocument.class, keyDocument, moduleRepository::findByKey);
+        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate(), event.getProperties());
+        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocuments(moduleDocument.getTechnos());
+        moduleDocument.updateTemplateAndSave(templateDocument, technoDocuments, projectionWriter);
     }
 
     @Override
     @EventHandler
     public void onTemplateDeletedEvent(TemplateDeletedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getModuleKey());
-        ModuleDocument moduleDocument = moduleRepository.findByKey(keyDocument);
-        moduleDocument.removeTemplate(event.getTemplateName());
-        moduleDocument.extractPropertiesAndSave(moduleRepository);
+        ModuleDocument moduleDocument = projectionWriter.find(ModuleDocument.class, keyDocument, moduleRepository::findByKey);
+        List<TechnoDocument> technoDocuments = technoProjectionRepository.getTechnoDocuments(moduleDocument.getTechnos());
+        moduleDocument.removeTemplateAndSave(event.getTemplateName(), technoDocuments, projectionWriter);
     }
 
     /*** QUERY HANDLERS ***/
@@ -88,12 +109,10 @@ public class MongoTemplateProjectionRepository implements TemplateProjectionRepo
     public Optional<TemplateView> onGetTemplateByNameQuery(GetTemplateByNameQuery query) {
         Optional<TemplateView> optionalTemplateView = Optional.empty();
 
-        String templateName = query.getTemplateName();
         KeyDocument keyDocument = new KeyDocument(query.getModuleKey());
-        Optional<ModuleDocument> optionalModuleDocument = moduleRepository.findOptionalByKeyAndTemplatesName(keyDocument, templateName);
+        TemplateDocument templateDocument = templateContentStore.withContent(templateRepository.findOne(new TemplateKeyDocument(TemplateKeyDocument.MODULE, keyDocument, query.getTemplateName())));
 
-        if (optionalModuleDocument.isPresent()) {
-            TemplateDocument templateDocument = optionalModuleDocument.get().findOptionalTemplateByName(templateName).get();
+        if (templateDocument != null) {
             TemplateContainer.Key moduleKey = query.getModuleKey();
             optionalTemplateView = Optional.of(templateDocument.toTemplateView(moduleKey));
         }
@@ -106,7 +125,7 @@ public class MongoTemplateProjectionRepository implements TemplateProjectionRepo
         List<TemplateView> templateViews = new ArrayList<>();
 
         KeyDocument keyDocument = new KeyDocument(query.getModuleKey());
-        Optional<ModuleDocument> optionalModuleDocument = moduleRepository.findOptionalByKey(keyDocument);
+        Optional<ModuleDocument> optionalModuleDocument = moduleRepository.findOptionalTemplatesByKey(keyDocument);
 
         if (optionalModuleDocument.isPresent() && optionalModuleDocument.get().getTemplates() != null) {
             TemplateContainer.Key moduleKey = query.getModuleKey();
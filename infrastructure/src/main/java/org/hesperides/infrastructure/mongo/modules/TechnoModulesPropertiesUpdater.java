@@ -0,0 +1,290 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.modules;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.domain.templatecontainers.entities.ParallelPropertiesExtractor;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.hesperides.infrastructure.mongo.ProjectionCollections;
+import org.hesperides.infrastructure.mongo.technos.MongoTechnoRepository;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Recalcule le modèle de propriétés des modules qui utilisent une techno dont les templates ont changé.
+ * <p>
+ * Les event handlers des technos se contentent d'enregistrer une demande de recalcul (cf. TechnoModulesUpdateDocument) :
+ * les demandes sont traitées ici, en dehors des event handlers, toutes les techno_modules_update.interval_ms millisecondes.
+ * Une demande n'est traitée qu'après techno_modules_update.delay_ms millisecondes, le temps que les lots de projection
+ * en cours, qui ont pu lire la techno avant sa modification, soient écrits. Elle est prise en charge par une seule instance,
+ * et conservée si la techno est à nouveau modifiée pendant le recalcul, pour être traitée une nouvelle fois.
+ * <p>
+ * Les modules concernés sont trouvés par l'index inverse sur "technos", lus par pages limitées à ce qui sert au calcul,
+ * recalculés page par page sur le pool d'extraction des propriétés (cf. ParallelPropertiesExtractor) et écrits aussitôt.
+ * L'avancement (modules recalculés sur le total de la techno en cours, demandes en attente) est journalisé à chaque page
+ * et exposé par l'endpoint techno_modules_update.
+ */
+@Slf4j
+@Component
+@Profile({MONGO, FAKE_MONGO})
+@Getter
+@Setter
+@ConfigurationProperties("techno_modules_update")
+@ManagedResource(objectName = "hesperides:name=TechnoModulesPropertiesUpdater")
+public class TechnoModulesPropertiesUpdater {
+
+    /**
+     * Nombre de modules lus, recalculés et écrits ensemble
+     */
+    private int pageSize = 200;
+    /**
+     * Intervalle entre deux recherches de demandes en attente, en millisecondes, 0 pour désactiver
+     */
+    private long intervalMs = 1000;
+    /**
+     * Ancienneté minimale d'une demande avant son traitement, en millisecondes
+     */
+    private long delayMs = 1000;
+    /**
+     * Délai après lequel une demande prise en charge par une instance, qui a pu s'arrêter, est reprise par une autre
+     */
+    private long claimTimeoutSeconds = 600;
+
+    private final MongoModuleRepository moduleRepository;
+    private final MongoTechnoRepository technoRepository;
+    private final BatchedProjectionWriter projectionWriter;
+    private final MongoTemplate mongoTemplate;
+    private ScheduledExecutorService executor;
+
+    private volatile KeyDocument currentTechno;
+    private volatile long currentTotalModules;
+    private final AtomicLong currentUpdatedModules = new AtomicLong();
+    private final AtomicLong processedTechnos = new AtomicLong();
+    private volatile String lastError;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+    private Meter updatedModules;
+    private Histogram modulesPerTechno;
+    private Timer duration;
+
+    @Autowired
+    public TechnoModulesPropertiesUpdater(MongoModuleRepository moduleRepository, MongoTechnoRepository technoRepository,
+                                          BatchedProjectionWriter projectionWriter, MongoTemplate mongoTemplate) {
+        this.moduleRepository = moduleRepository;
+        this.technoRepository = technoRepository;
+        this.projectionWriter = projectionWriter;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void registerMetricsAndSchedule() {
+        if (metricRegistry != null) {
+            updatedModules = metricRegistry.meter("projections.techno_modules.updated");
+            modulesPerTechno = metricRegistry.histogram("projections.techno_modules.per_techno");
+            duration = metricRegistry.timer("projections.techno_modules.duration");
+            metricRegistry.register("projections.techno_modules.pending_technos", (Gauge<Long>) this::countPendingTechnos);
+        }
+        if (intervalMs > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "techno-modules-update");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::processPendingUpdatesSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Traite, dans la version des projections du thread courant, les demandes de recalcul antérieures à la date.
+     *
+     * @return le nombre de technos traitées
+     */
+    public int processPendingUpdates(Date requestedBefore) {
+        int technos = 0;
+        TechnoModulesUpdateDocument pendingUpdate;
+        while ((pendingUpdate = claimNextPendingUpdate(requestedBefore)) != null) {
+            updateModulesUsing(pendingUpdate.getTechnoKey());
+            Query processedUpdateQuery = new Query(where("_id").is(pendingUpdate.getTechnoKey()).and("requestedAt").is(pendingUpdate.getRequestedAt()));
+            if (mongoTemplate.remove(processedUpdateQuery, TechnoModulesUpdateDocument.class).getN() == 0) {
+                // Techno modifiée à nouveau pendant le recalcul : la demande sera traitée une nouvelle fois
+                mongoTemplate.updateFirst(new Query(where("_id").is(pendingUpdate.getTechnoKey())),
+                        new Update().unset("claimedAt"), TechnoModulesUpdateDocument.class);
+            }
+            processedTechnos.incrementAndGet();
+            technos++;
+        }
+        return technos;
+    }
+
+    /**
+     * Recalcule les modules qui utilisent la techno, lue dans Mongo avec les autres technos de chaque module.
+     */
+    public void updateModulesUsing(KeyDocument technoKey) {
+        long startTime = System.nanoTime();
+        currentTechno = technoKey;
+        currentTotalModules = moduleRepository.countByTechnos(technoKey);
+        currentUpdatedModules.set(0);
+        try (Stream<ModuleDocument> moduleDocuments = moduleRepository.findAllByTechnos(technoKey)) {
+            updatePages(technoKey, moduleDocuments.iterator());
+        } finally {
+            currentTechno = null;
+        }
+
+        long count = currentUpdatedModules.get();
+        if (count > 0) {
+            log.info("Techno {}: properties of {} module(s) updated in {} ms", technoKey, count,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+        if (duration != null) {
+            modulesPerTechno.update(count);
+            duration.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Avancement du recalcul en cours et demandes en attente
+     */
+    @ManagedAttribute
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pending_technos", countPendingTechnos());
+        status.put("processed_technos", processedTechnos.get());
+        KeyDocument techno = currentTechno;
+        if (techno != null) {
+            status.put("current_techno", techno.toString());
+            status.put("current_updated_modules", currentUpdatedModules.get());
+            status.put("current_total_modules", currentTotalModules);
+        }
+        if (lastError != null) {
+            status.put("error", lastError);
+        }
+        return status;
+    }
+
+    private long countPendingTechnos() {
+        return mongoTemplate.count(new Query(), TechnoModulesUpdateDocument.class);
+    }
+
+    private void processPendingUpdatesSafely() {
+        try {
+            ProjectionCollections.callWithVersion(ProjectionCollections.getCurrentVersion(),
+                    () -> processPendingUpdates(new Date(System.currentTimeMillis() - delayMs)));
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.toString();
+            log.error("Techno modules update failed", e);
+        }
+    }
+
+    private TechnoModulesUpdateDocument claimNextPendingUpdate(Date requestedBefore) {
+        Date now = new Date();
+        Date staleClaim = new Date(now.getTime() - TimeUnit.SECONDS.toMillis(claimTimeoutSeconds));
+        Query query = new Query(new Criteria().andOperator(
+                where("requestedAt").lte(requestedBefore),
+                new Criteria().orOperator(where("claimedAt").is(null), where("claimedAt").lt(staleClaim))))
+                .with(new Sort(Sort.Direction.ASC, "requestedAt"));
+        return mongoTemplate.findAndModify(query, new Update().set("claimedAt", now),
+                new FindAndModifyOptions().returnNew(true), TechnoModulesUpdateDocument.class);
+    }
+
+    private void updatePages(KeyDocument technoKey, Iterator<ModuleDocument> moduleDocuments) {
+        List<ModuleDocument> page = new ArrayList<>(pageSize);
+        while (moduleDocuments.hasNext()) {
+            page.add(moduleDocuments.next());
+            if (page.size() >= pageSize || !moduleDocuments.hasNext()) {
+                updatePage(page);
+                log.info("Techno {}: {}/{} module(s) updated, {} techno(s) pending", technoKey,
+                        currentUpdatedModules.addAndGet(page.size()), currentTotalModules, countPendingTechnos());
+                page.clear();
+            }
+        }
+    }
+
+    private void updatePage(List<ModuleDocument> moduleDocuments) {
+        // Les technos de toute la page en une seule requête
+        List<KeyDocument> technoKeys = moduleDocuments.stream()
+                .filter(moduleDocument -> moduleDocument.getTechnos() != null)
+                .flatMap(moduleDocument -> moduleDocument.getTechnos().stream())
+                .distinct()
+                .collect(Collectors.toList());
+        Map<KeyDocument, TechnoDocument> technoDocumentsByKey = technoRepository.findPropertiesByKeyIn(technoKeys).stream()
+                .collect(Collectors.toMap(TechnoDocument::getKey, Function.identity()));
+
+        ParallelPropertiesExtractor.forEach(moduleDocuments, moduleDocument -> moduleDocument.extractProperties(
+                moduleDocument.getTechnos() == null ? null : moduleDocument.getTechnos().stream()
+                        .map(technoDocumentsByKey::get)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList())));
+        moduleDocuments.forEach(moduleDocument -> moduleDocument.saveProperties(projectionWriter));
+
+        if (updatedModules != null) {
+            updatedModules.mark(moduleDocuments.size());
+        }
+    }
+}
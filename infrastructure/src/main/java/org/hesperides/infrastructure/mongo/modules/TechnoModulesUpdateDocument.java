@@ -0,0 +1,60 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.modules;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Recalcul en attente du modèle de propriétés des modules qui utilisent une techno dont les templates ont changé.
+ * <p>
+ * La demande est enregistrée par les event handlers dans le lot de projection de la techno, puis traitée
+ * par TechnoModulesPropertiesUpdater en dehors des event handlers. Plusieurs modifications de la même techno
+ * ne forment qu'une demande, datée de la dernière.
+ */
+@Data
+@Document(collection = "#{T(org.hesperides.infrastructure.mongo.ProjectionCollections).name('techno_modules_update')}")
+@NoArgsConstructor
+public class TechnoModulesUpdateDocument {
+
+    @Id
+    private KeyDocument technoKey;
+    private Date requestedAt;
+    /**
+     * Date de prise en charge par une instance, qui en protège la demande des autres instances
+     */
+    private Date claimedAt;
+
+    public static void request(KeyDocument technoKey, BatchedProjectionWriter projectionWriter) {
+        projectionWriter.upsert(TechnoModulesUpdateDocument.class, technoKey, new Query(where("_id").is(technoKey)),
+                new Update().set("requestedAt", new Date()));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.modules;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+
+/**
+ * Avancement du recalcul des modules des technos modifiées (cf. TechnoModulesPropertiesUpdater).
+ */
+@Component
+@Profile({MONGO, FAKE_MONGO})
+public class TechnoModulesUpdateEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final TechnoModulesPropertiesUpdater technoModulesPropertiesUpdater;
+
+    @Autowired
+    public TechnoModulesUpdateEndpoint(TechnoModulesPropertiesUpdater technoModulesPropertiesUpdater) {
+        super("techno_modules_update");
+        this.technoModulesPropertiesUpdater = technoModulesPropertiesUpdater;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        return technoModulesPropertiesUpdater.getStatus();
+    }
+}
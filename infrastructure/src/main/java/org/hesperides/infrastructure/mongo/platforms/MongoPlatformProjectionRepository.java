@@ -1,32 +1,45 @@
 package org.hesperides.infrastructure.mongo.platforms;
 
+import org.axonframework.config.ProcessingGroup;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.queryhandling.QueryHandler;
 import org.hesperides.domain.platforms.GetPlatformByKeyQuery;
+import org.hesperides.domain.platforms.GetPlatformsUsingModuleQuery;
 import org.hesperides.domain.platforms.PlatformCreatedEvent;
 import org.hesperides.domain.platforms.PlatformDeletedEvent;
 import org.hesperides.domain.platforms.PlatformProjectionRepository;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
 import org.hesperides.domain.platforms.queries.views.PlatformView;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
 import org.hesperides.infrastructure.mongo.platforms.documents.PlatformDocument;
 import org.hesperides.infrastructure.mongo.platforms.documents.PlatformKeyDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
 import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Profile({MONGO, FAKE_MONGO})
 @Repository
+@ProcessingGroup(PROCESSING_GROUP)
 public class MongoPlatformProjectionRepository implements PlatformProjectionRepository {
 
     private final MongoPlatformRepository platformRepository;
+    private final BatchedProjectionWriter projectionWriter;
 
     @Autowired
-    public MongoPlatformProjectionRepository(MongoPlatformRepository platformRepository) {
+    public MongoPlatformProjectionRepository(MongoPlatformRepository platformRepository, BatchedProjectionWriter projectionWriter) {
         this.platformRepository = platformRepository;
+        this.projectionWriter = projectionWriter;
     }
 
     /*** EVENT HANDLERS ***/
@@ -35,13 +48,15 @@ public class MongoPlatformProjectionRepository implements PlatformProjectionRepo
     @Override
     public void on(PlatformCreatedEvent event) {
         PlatformDocument platformDocument = new PlatformDocument(event.getPlatform());
-        platformRepository.save(platformDocument);
+        // Les plateformes sont identifiées par leur clé, et non par leur _id
+        projectionWriter.replace(platformDocument.getKey(), new Query(where("key").is(platformDocument.getKey())), platformDocument);
     }
 
     @EventHandler
     @Override
     public void on(PlatformDeletedEvent event) {
-        platformRepository.deleteByKey(new PlatformKeyDocument(event.getPlatformKey()));
+        PlatformKeyDocument platformKeyDocument = new PlatformKeyDocument(event.getPlatformKey());
+        projectionWriter.remove(PlatformDocument.class, platformKeyDocument, new Query(where("key").is(platformKeyDocument)));
     }
 
     /*** QUERY HANDLERS ***/
@@ -57,4 +72,15 @@ public class MongoPlatformProjectionRepository implements PlatformProjectionRepo
         }
         return optionalPlatformView;
     }
+
+    @QueryHandler
+    @Override
+    public List<ModulePlatformView> onGetPlatformsUsingModuleQuery(GetPlatformsUsingModuleQuery query) {
+        TemplateContainer.Key moduleKey = query.getModuleKey();
+        List<PlatformDocument> platformDocuments = platformRepository.findKeysByDeployedModule(
+                moduleKey.getName(), moduleKey.getVersion(), moduleKey.isWorkingCopy());
+        return platformDocuments.stream()
+                .map(platformDocument -> platformDocument.getKey().toModulePlatformView())
+                .collect(Collectors.toList());
+    }
 }
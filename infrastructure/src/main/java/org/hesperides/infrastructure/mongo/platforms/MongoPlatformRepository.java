@@ -4,8 +4,10 @@ import org.hesperides.infrastructure.mongo.platforms.documents.PlatformDocument;
 import org.hesperides.infrastructure.mongo.platforms.documents.PlatformKeyDocument;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
@@ -18,4 +20,11 @@ public interface MongoPlatformRepository extends MongoRepository<PlatformDocumen
     Optional<PlatformDocument> findOptionalByKey(PlatformKeyDocument platformKeyDocument);
 
     void deleteByKey(PlatformKeyDocument key);
+
+    /**
+     * Plateformes dont un même module déployé a ce nom, cette version et ce type de version,
+     * trouvées par l'index inverse sur les modules déployés et limitées à leur clé.
+     */
+    @Query(value = "{ 'deployedModules' : { '$elemMatch' : { 'name' : ?0, 'version' : ?1, 'workingCopy' : ?2 } } }", fields = "{ 'key' : 1 }")
+    List<PlatformDocument> findKeysByDeployedModule(String moduleName, String moduleVersion, boolean isWorkingCopy);
 }
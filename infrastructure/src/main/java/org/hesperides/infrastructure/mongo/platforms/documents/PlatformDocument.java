@@ -29,7 +29,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.List;
 
 @Data
-@Document(collection = "platform")
+@Document(collection = "#{T(org.hesperides.infrastructure.mongo.ProjectionCollections).name('platform')}")
 @NoArgsConstructor
 public class PlatformDocument {
 
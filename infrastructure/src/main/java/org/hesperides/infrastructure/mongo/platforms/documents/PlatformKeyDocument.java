@@ -23,6 +23,7 @@ package org.hesperides.infrastructure.mongo.platforms.documents;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hesperides.domain.platforms.entities.Platform;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
@@ -39,4 +40,8 @@ public class PlatformKeyDocument implements Serializable {
         this.applicationName = platformKey.getApplicationName();
         this.platformName = platformKey.getPlatformName();
     }
+
+    public ModulePlatformView toModulePlatformView() {
+        return new ModulePlatformView(applicationName, platformName);
+    }
 }
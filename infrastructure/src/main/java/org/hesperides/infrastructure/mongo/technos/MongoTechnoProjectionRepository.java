@@ -20,17 +20,22 @@
  */
 package org.hesperides.infrastructure.mongo.technos;
 
+import org.axonframework.config.ProcessingGroup;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.queryhandling.QueryHandler;
 import org.hesperides.domain.technos.*;
-import org.hesperides.domain.technos.entities.Techno;
 import org.hesperides.domain.technos.queries.TechnoView;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.hesperides.domain.templatecontainers.queries.AbstractPropertyView;
 import org.hesperides.domain.templatecontainers.queries.TemplateView;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.hesperides.infrastructure.mongo.modules.TechnoModulesUpdateDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.MongoTemplateRepository;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateContentStore;
 import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateKeyDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.PageRequest;
@@ -39,21 +44,35 @@ import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
 import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
 
 @Profile({MONGO, FAKE_MONGO})
 @Repository
+@ProcessingGroup(PROCESSING_GROUP)
 public class MongoTechnoProjectionRepository implements TechnoProjectionRepository {
 
     private final MongoTechnoRepository technoRepository;
+    private final MongoTemplateRepository templateRepository;
+    private final TemplateContentStore templateContentStore;
+    private final BatchedProjectionWriter projectionWriter;
 
     @Autowired
-    public MongoTechnoProjectionRepository(MongoTechnoRepository technoRepository) {
+    public MongoTechnoProjectionRepository(MongoTechnoRepository technoRepository,
+                                           MongoTemplateRepository templateRepository,
+                                           TemplateContentStore templateContentStore,
+                                           BatchedProjectionWriter projectionWriter) {
         this.technoRepository = technoRepository;
+        this.templateRepository = templateRepository;
+        this.templateContentStore = templateContentStore;
+        this.projectionWriter = projectionWriter;
     }
 
     /*** EVENT HANDLERS ***/
@@ -62,40 +81,41 @@ public class MongoTechnoProjectionRepository implements TechnoProjectionReposito
     @Override
     public void onTechnoCreatedEvent(TechnoCreatedEvent event) {
         TechnoDocument technoDocument = new TechnoDocument(event.getTechno());
-        technoDocument.extractPropertiesAndSave(technoRepository);
+        technoDocument.extractPropertiesAndSave(projectionWriter);
     }
 
     @Override
     public void onTechnoDeletedEvent(TechnoDeletedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getTechnoKey());
-        technoRepository.deleteByKey(keyDocument);
+        TechnoDocument technoDocument = projectionWriter.find(TechnoDocument.class, keyDocument, technoRepository::findByKey);
+        technoDocument.deleteWithTemplates(projectionWriter);
     }
 
     @EventHandler
     @Override
     public void onTemplateAddedToTechnoEvent(TemplateAddedToTechnoEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getTechnoKey());
-        TechnoDocument technoDocument = technoRepository.findByKey(keyDocument);
-        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate());
-        technoDocument.addTemplate(templateDocument);
-        technoDocument.extractPropertiesAndSave(technoRepository);
+        TechnoDocument technoDocument = projectionWriter.find(TechnoDocument.class, keyDocument, technoRepository::findByKey);
+        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate(), event.getProperties());
+        technoDocument.addTemplateAndSave(templateDocument, projectionWriter);
+        TechnoModulesUpdateDocument.request(keyDocument, projectionWriter);
     }
 
     @Override
     public void onTechnoTemplateUpdatedEvent(TechnoTemplateUpdatedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getTechnoKey());
-        TechnoDocument technoDocument = technoRepository.findByKey(keyDocument);
-        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate());
-        technoDocument.updateTemplate(templateDocument);
-        technoDocument.extractPropertiesAndSave(technoRepository);
+        TechnoDocument technoDocument = projectionWriter.find(TechnoDocument.class, keyDocument, technoRepository::findByKey);
+        TemplateDocument templateDocument = new TemplateDocument(event.getTemplate(), event.getProperties());
+        technoDocument.updateTemplateAndSave(templateDocument, projectionWriter);
+        TechnoModulesUpdateDocument.request(keyDocument, projectionWriter);
     }
 
     @Override
     public void onTechnoTemplateDeletedEvent(TechnoTemplateDeletedEvent event) {
         KeyDocument keyDocument = new KeyDocument(event.getTechnoKey());
-        TechnoDocument technoDocument = technoRepository.findByKey(keyDocument);
-        technoDocument.removeTemplate(event.getTemplateName());
-        technoDocument.extractPropertiesAndSave(technoRepository);
+        TechnoDocument technoDocument = projectionWriter.find(TechnoDocument.class, keyDocument, technoRepository::findByKey);
+        technoDocument.removeTemplateAndSave(event.getTemplateName(), projectionWriter);
+        TechnoModulesUpdateDocument.request(keyDocument, projectionWriter);
     }
 
     /*** QUERY HANDLERS ***/
@@ -107,12 +127,9 @@ public class MongoTechnoProjectionRepository implements TechnoProjectionReposito
         TemplateContainer.Key key = query.getTechnoKey();
 
         KeyDocument keyDocument = new KeyDocument(query.getTechnoKey());
-        Optional<TechnoDocument> optionalTechnoDocument = technoRepository.findOptionalByKeyAndTemplatesName(keyDocument, query.getTemplateName());
+        TemplateDocument templateDocument = templateContentStore.withContent(templateRepository.findOne(new TemplateKeyDocument(TemplateKeyDocument.TECHNO, keyDocument, query.getTemplateName())));
 
-        if (optionalTechnoDocument.isPresent()) {
-            TemplateDocument templateDocument = optionalTechnoDocument.get().getTemplates().stream()
-                    .filter(template -> template.getName().equalsIgnoreCase(query.getTemplateName()))
-                    .findAny().get();
+        if (templateDocument != null) {
             optionalTemplateView = Optional.of(templateDocument.toTemplateView(key));
         }
         return optionalTemplateView;
@@ -122,8 +139,7 @@ public class MongoTechnoProjectionRepository implements TechnoProjectionReposito
     @Override
     public Boolean onTechnoAlreadyExistsQuery(TechnoAlreadyExistsQuery query) {
         KeyDocument keyDocument = new KeyDocument(query.getTechnoKey());
-        Optional<TechnoDocument> technoDocument = technoRepository.findOptionalByKey(keyDocument);
-        return technoDocument.isPresent();
+        return technoRepository.existsByKey(keyDocument);
     }
 
     @Override
@@ -132,9 +148,9 @@ public class MongoTechnoProjectionRepository implements TechnoProjectionReposito
         TemplateContainer.Key key = query.getTechnoKey();
 
         KeyDocument keyDocument = new KeyDocument(query.getTechnoKey());
-        Optional<TechnoDocument> optionalTechnoDocument = technoRepository.findOptionalByKey(keyDocument);
+        Optional<TechnoDocument> optionalTechnoDocument = technoRepository.findOptionalTemplatesByKey(keyDocument);
 
-        if (optionalTechnoDocument.isPresent()) {
+        if (optionalTechnoDocument.isPresent() && optionalTechnoDocument.get().getTemplates() != null) {
             templateViews = optionalTechnoDocument.get().getTemplates().stream()
                     .map(templateDocument -> templateDocument.toTemplateView(key))
                     .collect(Collectors.toList());
@@ -144,11 +160,21 @@ public class MongoTechnoProjectionRepository implements TechnoProjectionReposito
 
     @Override
     public Optional<TechnoView> onGetTechnoQuery(GetTechnoQuery query) {
+        // Les templates se limitent aux résumés conservés dans la techno
+        KeyDocument keyDocument = new KeyDocument(query.getTechnoKey());
+        return technoRepository.findOptionalByKey(keyDocument).map(TechnoDocument::toTechnoView);
+    }
+
+    @Override
+    public Optional<TechnoView> onGetTechnoWithTemplatesQuery(GetTechnoWithTemplatesQuery query) {
         Optional<TechnoView> optionalTechnoView = Optional.empty();
         KeyDocument keyDocument = new KeyDocument(query.getTechnoKey());
         Optional<TechnoDocument> optionalTechnoDocument = technoRepository.findOptionalByKey(keyDocument);
         if (optionalTechnoDocument.isPresent()) {
-            optionalTechnoView = Optional.of(optionalTechnoDocument.get().toTechnoView());
+            // La techno est lue pour être copiée : il faut le contenu de ses templates
+            TechnoDocument technoDocument = optionalTechnoDocument.get();
+            technoDocument.setTemplates(templateContentStore.withContents(templateRepository.findAllInOrderOf(TemplateKeyDocument.TECHNO, keyDocument, technoDocument.getTemplates())));
+            optionalTechnoView = Optional.of(technoDocument.toTechnoView());
         }
         return optionalTechnoView;
     }
@@ -171,11 +197,19 @@ public class MongoTechnoProjectionRepository implements TechnoProjectionReposito
         return AbstractPropertyDocument.toAbstractPropertyViews(technoDocument.getProperties());
     }
 
-    public List<TechnoDocument> getTechnoDocumentsFromDomainInstances(List<Techno> technos) {
-        List<TechnoDocument> technoDocuments = null;
-        if (technos != null) {
-            List<KeyDocument> keyDocuments = technos.stream().map(techno -> new KeyDocument(techno.getKey())).collect(Collectors.toList());
-            technoDocuments = technoRepository.findAllByKeyIn(keyDocuments);
+    /**
+     * Technos d'un module, lues en une seule requête et limitées à leur modèle de propriétés, dans l'ordre des clés.
+     */
+    public List<TechnoDocument> getTechnoDocuments(List<KeyDocument> technoKeys) {
+        List<TechnoDocument> technoDocuments = new ArrayList<>();
+        if (technoKeys != null && !technoKeys.isEmpty()) {
+            Map<KeyDocument, TechnoDocument> technoDocumentsByKey = projectionWriter.findAll(TechnoDocument.class, technoKeys, technoRepository::findPropertiesByKeyIn)
+                    .stream()
+                    .collect(Collectors.toMap(TechnoDocument::getKey, Function.identity()));
+            technoDocuments = technoKeys.stream()
+                    .map(technoDocumentsByKey::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
         }
         return technoDocuments;
     }
@@ -4,6 +4,7 @@ import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -20,9 +21,16 @@ public interface MongoTechnoRepository extends MongoRepository<TechnoDocument, S
 
     TechnoDocument findByKey(KeyDocument key);
 
-    Optional<TechnoDocument> findOptionalByKeyAndTemplatesName(KeyDocument key, String templateName);
+    @Query(fields = "{ 'properties' : 1 }")
+    List<TechnoDocument> findPropertiesByKeyIn(List<KeyDocument> keys);
 
-    List<TechnoDocument> findAllByKeyIn(List<KeyDocument> keys);
+    /**
+     * Ne lit que ce qu'il faut pour lister les templates de la techno.
+     */
+    @Query(fields = "{ 'templates.name' : 1, 'templates.filename' : 1, 'templates.location' : 1 }")
+    Optional<TechnoDocument> findOptionalTemplatesByKey(KeyDocument key);
+
+    boolean existsByKey(KeyDocument key);
 
     void deleteByKey(KeyDocument key);
 
@@ -20,25 +20,29 @@
  */
 package org.hesperides.infrastructure.mongo.technos;
 
+import com.mongodb.BasicDBObject;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hesperides.domain.technos.entities.Techno;
 import org.hesperides.domain.technos.queries.TechnoView;
-import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
-import org.hesperides.domain.templatecontainers.entities.Template;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
 import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
 import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateKeyDocument;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Data
-@Document(collection = "techno")
+@Document(collection = "#{T(org.hesperides.infrastructure.mongo.ProjectionCollections).name('techno')}")
 @NoArgsConstructor
 public class TechnoDocument {
     @Id
@@ -51,22 +55,6 @@ public class TechnoDocument {
         this.templates = TemplateDocument.fromDomainInstances(techno.getTemplates());
     }
 
-    public static List<TechnoView> toTechnoViews(List<TechnoDocument> technos) {
-        List<TechnoView> technoViews = null;
-        if (technos != null) {
-            technoViews = technos.stream().map(TechnoDocument::toTechnoView).collect(Collectors.toList());
-        }
-        return technoViews;
-    }
-
-    public static List<Techno> toDomainInstances(List<TechnoDocument> technoDocuments) {
-        List<Techno> technos = null;
-        if (technoDocuments != null) {
-            technos = technoDocuments.stream().map(TechnoDocument::toDomainInstance).collect(Collectors.toList());
-        }
-        return technos;
-    }
-
     public Techno toDomainInstance() {
         TemplateContainer.Key technoKey = getDomainKey();
         return new Techno(
@@ -88,26 +76,81 @@ public class TechnoDocument {
         templates.add(templateDocument);
     }
 
+    /**
+     * Remplace le template à sa place, comme la mise à jour positionnelle faite dans Mongo,
+     * dont la comparaison des noms est sensible à la casse.
+     */
     public void updateTemplate(TemplateDocument updatedTemplateDocument) {
-        removeTemplate(updatedTemplateDocument.getName());
-        addTemplate(updatedTemplateDocument);
+        for (int i = 0; i < templates.size(); i++) {
+            if (templates.get(i).getName().equals(updatedTemplateDocument.getName())) {
+                templates.set(i, updatedTemplateDocument);
+                break;
+            }
+        }
     }
 
     public void removeTemplate(String templateName) {
-        templates.removeIf(templateDocument -> templateDocument.getName().equalsIgnoreCase(templateName));
+        templates.removeIf(templateDocument -> templateDocument.getName().equals(templateName));
+    }
+
+    public void extractPropertiesAndSave(BatchedProjectionWriter projectionWriter) {
+        this.setProperties(extractPropertiesFromTemplates());
+        this.setTemplates(TemplateDocument.saveAndSummarize(templates, TemplateKeyDocument.TECHNO, key, projectionWriter));
+        projectionWriter.save(key, this);
+    }
+
+    public void deleteWithTemplates(BatchedProjectionWriter projectionWriter) {
+        if (templates != null) {
+            templates.forEach(templateDocument -> TemplateDocument.delete(TemplateKeyDocument.TECHNO, key, templateDocument.getName(), projectionWriter));
+        }
+        projectionWriter.delete(TechnoDocument.class, key);
+    }
+
+    /**
+     * Le template complet est enregistré dans sa propre collection :
+     * seuls son résumé et le modèle de propriétés de la techno sont transmis au document de la techno.
+     */
+    public void addTemplateAndSave(TemplateDocument templateDocument, BatchedProjectionWriter projectionWriter) {
+        TemplateDocument templateSummary = templateDocument.saveAndSummarize(TemplateKeyDocument.TECHNO, key, projectionWriter);
+        addTemplate(templateSummary);
+        extractPropertiesAndUpdate(projectionWriter, new Query(where("_id").is(key)),
+                new Update().push("templates", templateSummary));
+    }
+
+    public void updateTemplateAndSave(TemplateDocument templateDocument, BatchedProjectionWriter projectionWriter) {
+        TemplateDocument templateSummary = templateDocument.saveAndSummarize(TemplateKeyDocument.TECHNO, key, projectionWriter);
+        updateTemplate(templateSummary);
+        extractPropertiesAndUpdate(projectionWriter, new Query(where("_id").is(key).and("templates.name").is(templateSummary.getName())),
+                new Update().set("templates.$", templateSummary));
     }
 
-    public void extractPropertiesAndSave(MongoTechnoRepository technoRepository) {
+    public void removeTemplateAndSave(String templateName, BatchedProjectionWriter projectionWriter) {
+        TemplateDocument.delete(TemplateKeyDocument.TECHNO, key, templateName, projectionWriter);
+        removeTemplate(templateName);
+        extractPropertiesAndUpdate(projectionWriter, new Query(where("_id").is(key)),
+                new Update().pull("templates", new BasicDBObject("name", templateName)));
+    }
+
+    private void extractPropertiesAndUpdate(BatchedProjectionWriter projectionWriter, Query query, Update update) {
         this.setProperties(extractPropertiesFromTemplates());
-        technoRepository.save(this);
+        projectionWriter.update(TechnoDocument.class, key, query, update.set("properties", properties));
+    }
+
+    /**
+     * Retourne le modèle de propriétés calculé lors de la dernière sauvegarde de la techno.
+     */
+    public List<AbstractPropertyDocument> extractPropertiesIfAbsent() {
+        if (properties == null) {
+            properties = extractPropertiesFromTemplates();
+        }
+        return properties;
     }
 
+    /**
+     * Concatène les propriétés de chaque template de la techno, sans analyser à nouveau les templates qui en disposent déjà.
+     */
     private List<AbstractPropertyDocument> extractPropertiesFromTemplates() {
-        TemplateContainer.Key technoKey = getDomainKey();
-        List<Template> templates = TemplateDocument.toDomainInstances(this.templates, technoKey);
-        List<AbstractProperty> abstractProperties = AbstractProperty.extractPropertiesFromTemplates(templates);
-        List<AbstractPropertyDocument> abstractPropertyDocuments = AbstractPropertyDocument.fromDomainInstances(abstractProperties);
-        return abstractPropertyDocuments;
+        return TemplateDocument.extractPropertiesIfAbsent(templates, getDomainKey());
     }
 
     private TemplateContainer.Key getDomainKey() {
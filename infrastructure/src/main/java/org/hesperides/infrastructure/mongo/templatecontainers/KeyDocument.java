@@ -26,6 +26,8 @@ import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Data
 @Document
@@ -41,4 +43,12 @@ public class KeyDocument implements Serializable {
         this.version = key.getVersion();
         this.workingCopy = key.isWorkingCopy();
     }
+
+    public static List<KeyDocument> fromTemplateContainers(List<? extends TemplateContainer> templateContainers) {
+        List<KeyDocument> keyDocuments = null;
+        if (templateContainers != null) {
+            keyDocuments = templateContainers.stream().map(templateContainer -> new KeyDocument(templateContainer.getKey())).collect(Collectors.toList());
+        }
+        return keyDocuments;
+    }
 }
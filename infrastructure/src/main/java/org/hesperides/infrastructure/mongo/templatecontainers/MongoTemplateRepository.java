@@ -0,0 +1,56 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.templatecontainers;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+
+@Profile({MONGO, FAKE_MONGO})
+@Repository
+public interface MongoTemplateRepository extends MongoRepository<TemplateDocument, TemplateKeyDocument> {
+
+    List<TemplateDocument> findAllByIdContainerTypeAndIdContainerKey(String containerType, KeyDocument containerKey);
+
+    /**
+     * Templates complets d'un module ou d'une techno, dans l'ordre des résumés qu'il contient.
+     */
+    default List<TemplateDocument> findAllInOrderOf(String containerType, KeyDocument containerKey, List<TemplateDocument> templateSummaries) {
+        List<TemplateDocument> templateDocuments = null;
+        if (templateSummaries != null) {
+            Map<String, TemplateDocument> templateDocumentsByName = findAllByIdContainerTypeAndIdContainerKey(containerType, containerKey)
+                    .stream()
+                    .collect(Collectors.toMap(TemplateDocument::getName, Function.identity()));
+            templateDocuments = templateSummaries.stream()
+                    .map(templateSummary -> templateDocumentsByName.get(templateSummary.getName()))
+                    .collect(Collectors.toList());
+        }
+        return templateDocuments;
+    }
+}
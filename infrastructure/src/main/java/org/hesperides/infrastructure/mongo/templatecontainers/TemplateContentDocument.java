@@ -0,0 +1,108 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.templatecontainers;
+
+import com.mongodb.BasicDBObject;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Contenu des templates, enregistré une seule fois quel que soit le nombre de templates qui le partagent
+ * (copies et releases de modules et de technos), identifié par son empreinte SHA-256.
+ * <p>
+ * Au-delà de template_contents.gridfs_threshold caractères, le contenu est enregistré dans GridFS, sous le nom de son empreinte,
+ * pour ne pas dépasser la taille maximale d'un document Mongo.
+ * <p>
+ * Les contenus ne sont jamais modifiés ni supprimés par les event handlers : ceux qui ne sont plus référencés
+ * sont supprimés par TemplateContentGarbageCollector.
+ */
+@Data
+@Document(collection = "template_content")
+@NoArgsConstructor
+public class TemplateContentDocument {
+
+    /**
+     * Taille par défaut : les caractères encodés en UTF-8 sur 4 octets restent sous la limite de 16 Mo
+     */
+    public static final int DEFAULT_GRIDFS_THRESHOLD = 4 * 1024 * 1024;
+    private static volatile int gridFsThreshold = DEFAULT_GRIDFS_THRESHOLD;
+
+    @Id
+    private String hash;
+    private String content;
+    /**
+     * Le contenu est enregistré dans GridFS plutôt que dans ce document
+     */
+    private boolean gridFs;
+    /**
+     * Date du dernier enregistrement d'un template ayant ce contenu, qui le protège du ramasse-miettes
+     */
+    private Date lastReferencedAt;
+
+    public static void configure(int gridFsThreshold) {
+        TemplateContentDocument.gridFsThreshold = gridFsThreshold;
+    }
+
+    /**
+     * Enregistre le contenu s'il n'existe pas encore et retourne son empreinte, à conserver dans le template.
+     */
+    public static String save(String content, BatchedProjectionWriter projectionWriter) {
+        String hash = null;
+        if (content != null) {
+            hash = hash(content);
+            Date now = new Date();
+            Update update = new Update().set("lastReferencedAt", now);
+            if (content.length() >= gridFsThreshold) {
+                projectionWriter.saveFile(hash, content, new BasicDBObject("lastReferencedAt", now));
+                update.setOnInsert("gridFs", true);
+            } else {
+                update.setOnInsert("content", content);
+            }
+            projectionWriter.upsert(TemplateContentDocument.class, hash, new Query(where("_id").is(hash)), update);
+        }
+        return hash;
+    }
+
+    static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.templatecontainers;
+
+import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.infrastructure.mongo.ProjectionCollections;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereMetaData;
+
+/**
+ * Supprime régulièrement les contenus de templates qui ne sont plus référencés par aucun template.
+ * <p>
+ * Les références sont cherchées dans toutes les versions des projections (cf. ProjectionCollections) : celle en service,
+ * celle en cours de reconstruction et la précédente, conservée pour un retour arrière.
+ * <p>
+ * Seuls les contenus qui n'ont pas été référencés depuis le délai de grâce sont candidats : un template en cours
+ * d'enregistrement, dont le contenu vient d'être écrit, n'est donc jamais privé de son contenu. La suppression
+ * est conditionnée à la même date, pour ne pas supprimer un contenu référencé à nouveau entre-temps.
+ * <p>
+ * Les fichiers GridFS, datés de la même façon, sont supprimés lorsque leur contenu n'existe plus.
+ */
+@Slf4j
+@Component
+@Profile({MONGO, FAKE_MONGO})
+@Getter
+@Setter
+@ConfigurationProperties("template_contents")
+public class TemplateContentGarbageCollector {
+
+    /**
+     * Intervalle entre deux passages, en minutes, 0 pour désactiver
+     */
+    private long gcIntervalMinutes = 60;
+    /**
+     * Délai depuis le dernier référencement d'un contenu avant qu'il puisse être supprimé, en minutes
+     */
+    private long gcGraceMinutes = 60;
+
+    private final MongoTemplate mongoTemplate;
+    private final GridFsTemplate gridFsTemplate;
+    private ScheduledExecutorService executor;
+
+    @Autowired
+    public TemplateContentGarbageCollector(MongoTemplate mongoTemplate, GridFsTemplate gridFsTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.gridFsTemplate = gridFsTemplate;
+    }
+
+    @PostConstruct
+    public void schedule() {
+        if (gcIntervalMinutes > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "template-content-gc");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::collectGarbageSafely, gcIntervalMinutes, gcIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return le nombre de contenus supprimés
+     */
+    public int collectGarbage() {
+        Date threshold = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(gcGraceMinutes));
+        Query candidatesQuery = new Query(where("lastReferencedAt").lt(threshold));
+        candidatesQuery.fields().include("_id");
+        List<String> templateCollections = ProjectionCollections.allVersionsOf(TemplateDocument.class, mongoTemplate);
+        int removedContents = 0;
+        for (DBObject candidate : mongoTemplate.getCollection(mongoTemplate.getCollectionName(TemplateContentDocument.class))
+                .find(candidatesQuery.getQueryObject(), candidatesQuery.getFieldsObject())) {
+            Object hash = candidate.get("_id");
+            Query referencesQuery = new Query(where("contentHash").is(hash));
+            if (templateCollections.stream().noneMatch(templateCollection -> mongoTemplate.exists(referencesQuery, templateCollection))) {
+                removedContents += mongoTemplate.remove(new Query(where("_id").is(hash).and("lastReferencedAt").lt(threshold)),
+                        TemplateContentDocument.class).getN();
+            }
+        }
+        for (GridFSDBFile file : gridFsTemplate.find(new Query(whereMetaData("lastReferencedAt").lt(threshold)))) {
+            if (!mongoTemplate.exists(new Query(where("_id").is(file.getFilename())), TemplateContentDocument.class)) {
+                gridFsTemplate.delete(new Query(where("_id").is(file.getId()).and("metadata.lastReferencedAt").lt(threshold)));
+            }
+        }
+        return removedContents;
+    }
+
+    private void collectGarbageSafely() {
+        try {
+            int removedContents = collectGarbage();
+            if (removedContents > 0) {
+                log.info("Removed {} unreferenced template contents", removedContents);
+            }
+        } catch (RuntimeException e) {
+            log.error("Template contents garbage collection failed", e);
+        }
+    }
+}
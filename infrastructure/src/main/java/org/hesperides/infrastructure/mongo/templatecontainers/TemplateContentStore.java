@@ -0,0 +1,140 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.templatecontainers;
+
+import com.mongodb.gridfs.GridFSDBFile;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.hesperides.domain.framework.Profiles.FAKE_MONGO;
+import static org.hesperides.domain.framework.Profiles.MONGO;
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereFilename;
+
+/**
+ * Complète les templates lus avec leurs contenus, enregistrés à part (cf. TemplateContentDocument).
+ * <p>
+ * Un template lu seul dont le contenu est dans GridFS n'est pas chargé en mémoire : il est lu en flux à la demande.
+ */
+@Component
+@Profile({MONGO, FAKE_MONGO})
+@Getter
+@Setter
+@ConfigurationProperties("template_contents")
+public class TemplateContentStore {
+
+    /**
+     * Taille, en caractères, à partir de laquelle le contenu d'un template est enregistré dans GridFS
+     */
+    private int gridfsThreshold = TemplateContentDocument.DEFAULT_GRIDFS_THRESHOLD;
+
+    private final MongoTemplateContentRepository templateContentRepository;
+    private final GridFsTemplate gridFsTemplate;
+
+    @Autowired
+    public TemplateContentStore(MongoTemplateContentRepository templateContentRepository, GridFsTemplate gridFsTemplate) {
+        this.templateContentRepository = templateContentRepository;
+        this.gridFsTemplate = gridFsTemplate;
+    }
+
+    @PostConstruct
+    public void configure() {
+        TemplateContentDocument.configure(gridfsThreshold);
+    }
+
+    /**
+     * Complète le template avec son contenu, ou avec sa lecture en flux si celui-ci est dans GridFS.
+     */
+    public TemplateDocument withContent(TemplateDocument templateDocument) {
+        if (isWithoutContent(templateDocument)) {
+            TemplateContentDocument templateContentDocument = templateContentRepository.findOne(templateDocument.getContentHash());
+            if (templateContentDocument != null && templateContentDocument.isGridFs()) {
+                String hash = templateContentDocument.getHash();
+                templateDocument.setContentReader(() -> new InputStreamReader(findFile(hash).getInputStream(), StandardCharsets.UTF_8));
+            } else {
+                templateDocument.setContent(templateContentDocument != null ? templateContentDocument.getContent() : null);
+            }
+        }
+        return templateDocument;
+    }
+
+    /**
+     * Complète les templates avec leurs contenus, lus en une seule requête.
+     * Les contenus enregistrés dans GridFS sont chargés en mémoire : ces templates sont destinés au domaine.
+     */
+    public List<TemplateDocument> withContents(List<TemplateDocument> templateDocuments) {
+        if (templateDocuments != null) {
+            List<String> hashes = templateDocuments.stream()
+                    .filter(TemplateContentStore::isWithoutContent)
+                    .map(TemplateDocument::getContentHash)
+                    .distinct()
+                    .collect(Collectors.toList());
+            if (!hashes.isEmpty()) {
+                Map<String, String> contentsByHash = StreamSupport.stream(templateContentRepository.findAll(hashes).spliterator(), false)
+                        .collect(Collectors.toMap(TemplateContentDocument::getHash, this::readContent));
+                templateDocuments.stream()
+                        .filter(TemplateContentStore::isWithoutContent)
+                        .forEach(templateDocument -> templateDocument.setContent(contentsByHash.get(templateDocument.getContentHash())));
+            }
+        }
+        return templateDocuments;
+    }
+
+    private static boolean isWithoutContent(TemplateDocument templateDocument) {
+        return templateDocument != null && templateDocument.getContent() == null && templateDocument.getContentHash() != null;
+    }
+
+    private String readContent(TemplateContentDocument templateContentDocument) {
+        if (!templateContentDocument.isGridFs()) {
+            return templateContentDocument.getContent();
+        }
+        try {
+            return StreamUtils.copyToString(findFile(templateContentDocument.getHash()).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private GridFSDBFile findFile(String hash) throws FileNotFoundException {
+        GridFSDBFile file = gridFsTemplate.findOne(new Query(whereFilename().is(hash)));
+        if (file == null) {
+            throw new FileNotFoundException("Template content " + hash + " not found in GridFS");
+        }
+        return file;
+    }
+}
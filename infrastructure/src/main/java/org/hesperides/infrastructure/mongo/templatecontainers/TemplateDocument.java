@@ -22,39 +22,146 @@ package org.hesperides.infrastructure.mongo.templatecontainers;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
+import org.hesperides.domain.templatecontainers.entities.ParallelPropertiesExtractor;
 import org.hesperides.domain.templatecontainers.entities.Template;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.hesperides.domain.templatecontainers.queries.TemplateView;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/**
+ * Les templates sont enregistrés dans leur propre collection, un document par template, leur contenu n'y étant
+ * référencé que par son empreinte (cf. TemplateContentDocument). Les modules et les technos n'en conservent qu'un résumé,
+ * sans le contenu ni l'identifiant.
+ */
 @Data
-@Document
+@Document(collection = "#{T(org.hesperides.infrastructure.mongo.ProjectionCollections).name('template')}")
 @NoArgsConstructor
 public class TemplateDocument {
 
+    @Id
+    private TemplateKeyDocument id;
     private String name;
     private String filename;
     private String location;
+    /**
+     * Contenu du template, renseigné à partir de son empreinte à la lecture (cf. TemplateContentStore).
+     * Il n'est enregistré que par les versions antérieures des projections.
+     */
     private String content;
+    private String contentHash;
+    /**
+     * Lecture en flux des contenus enregistrés dans GridFS, à la place du content
+     */
+    @Transient
+    private TemplateView.ContentReader contentReader;
     private RightsDocument rights;
     private Long versionId;
+    private List<AbstractPropertyDocument> properties;
 
     public TemplateDocument(Template template) {
+        this(template, AbstractProperty.extractPropertiesFromTemplate(template));
+    }
+
+    /**
+     * Les propriétés sont celles extraites et validées par l'agrégat, portées par l'évènement :
+     * le template n'est pas analysé une nouvelle fois.
+     */
+    public TemplateDocument(Template template, List<AbstractProperty> properties) {
         this.name = template.getName();
         this.filename = template.getFilename();
         this.location = template.getLocation();
         this.content = template.getContent();
         this.rights = RightsDocument.fromDomainInstance(template.getRights());
         this.versionId = template.getVersionId();
+        this.properties = AbstractPropertyDocument.fromDomainInstances(properties);
+    }
+
+    /**
+     * Retourne les propriétés extraites du template.
+     * Les documents enregistrés avant que ce champ n'existe en sont dépourvus :
+     * les propriétés sont alors extraites une fois, puis persistées avec le document.
+     */
+    public List<AbstractPropertyDocument> extractPropertiesIfAbsent(TemplateContainer.Key key) {
+        if (properties == null) {
+            properties = AbstractPropertyDocument.fromDomainInstances(AbstractProperty.extractPropertiesFromTemplate(toDomainInstance(key)));
+        }
+        return properties;
+    }
+
+    /**
+     * Enregistre le template dans la collection des templates, son contenu à part,
+     * et retourne le résumé à conserver dans son conteneur.
+     */
+    public TemplateDocument saveAndSummarize(String containerType, KeyDocument containerKey, BatchedProjectionWriter projectionWriter) {
+        this.id = new TemplateKeyDocument(containerType, containerKey, name);
+        TemplateDocument storedTemplate = summarize();
+        storedTemplate.id = id;
+        storedTemplate.contentHash = TemplateContentDocument.save(content, projectionWriter);
+        projectionWriter.save(id, storedTemplate);
+        return summarize();
+    }
+
+    private TemplateDocument summarize() {
+        TemplateDocument templateSummary = new TemplateDocument();
+        templateSummary.name = name;
+        templateSummary.filename = filename;
+        templateSummary.location = location;
+        templateSummary.rights = rights;
+        templateSummary.versionId = versionId;
+        templateSummary.properties = properties;
+        return templateSummary;
+    }
+
+    public static List<TemplateDocument> saveAndSummarize(List<TemplateDocument> templateDocuments, String containerType, KeyDocument containerKey, BatchedProjectionWriter projectionWriter) {
+        List<TemplateDocument> templateSummaries = null;
+        if (templateDocuments != null) {
+            templateSummaries = templateDocuments.stream()
+                    .map(templateDocument -> templateDocument.saveAndSummarize(containerType, containerKey, projectionWriter))
+                    .collect(Collectors.toList());
+        }
+        return templateSummaries;
+    }
+
+    public static void delete(String containerType, KeyDocument containerKey, String templateName, BatchedProjectionWriter projectionWriter) {
+        projectionWriter.delete(TemplateDocument.class, new TemplateKeyDocument(containerType, containerKey, templateName));
+    }
+
+    /**
+     * Concatène les propriétés de chaque template, dans l'ordre des templates.
+     * Les templates qui en sont dépourvus sont analysés ensemble, en parallèle si leur nombre le justifie.
+     */
+    public static List<AbstractPropertyDocument> extractPropertiesIfAbsent(List<TemplateDocument> templateDocuments, TemplateContainer.Key key) {
+        List<AbstractPropertyDocument> abstractPropertyDocuments = new ArrayList<>();
+        if (templateDocuments != null) {
+            List<TemplateDocument> templateDocumentsWithoutProperties = templateDocuments.stream()
+                    .filter(templateDocument -> templateDocument.properties == null)
+                    .collect(Collectors.toList());
+            List<List<AbstractProperty>> extractedProperties = ParallelPropertiesExtractor.extractPropertiesOfEachTemplate(
+                    toDomainInstances(templateDocumentsWithoutProperties, key));
+            for (int i = 0; i < templateDocumentsWithoutProperties.size(); i++) {
+                templateDocumentsWithoutProperties.get(i).properties = AbstractPropertyDocument.fromDomainInstances(extractedProperties.get(i));
+            }
+            templateDocuments.forEach(templateDocument -> abstractPropertyDocuments.addAll(templateDocument.properties));
+        }
+        return abstractPropertyDocuments;
     }
 
     public static List<TemplateDocument> fromDomainInstances(List<Template> templates) {
         List<TemplateDocument> templateDocuments = null;
         if (templates != null) {
-            templateDocuments = templates.stream().map(TemplateDocument::new).collect(Collectors.toList());
+            List<List<AbstractProperty>> extractedProperties = ParallelPropertiesExtractor.extractPropertiesOfEachTemplate(templates);
+            templateDocuments = new ArrayList<>(templates.size());
+            for (int i = 0; i < templates.size(); i++) {
+                templateDocuments.add(new TemplateDocument(templates.get(i), extractedProperties.get(i)));
+            }
         }
         return templateDocuments;
     }
@@ -95,7 +202,8 @@ public class TemplateDocument {
                 location,
                 content,
                 RightsDocument.toRightsView(rights),
-                versionId
+                versionId,
+                contentReader
         );
     }
 
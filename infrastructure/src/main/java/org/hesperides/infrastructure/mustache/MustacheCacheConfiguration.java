@@ -0,0 +1,67 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mustache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.domain.templatecontainers.entities.MustacheCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Dimensionne le cache des templates Mustache compilés et expose ses statistiques
+ * (hits, misses, évictions, taille) dans le registre de métriques.
+ */
+@Configuration
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("mustache_cache")
+public class MustacheCacheConfiguration {
+
+    private int maximumSize = MustacheCache.DEFAULT_MAXIMUM_SIZE;
+    private long maximumWeight = MustacheCache.DEFAULT_MAXIMUM_WEIGHT;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
+    @PostConstruct
+    public void initialize() {
+        MustacheCache cache = MustacheCache.getInstance();
+        log.info("Mustache cache: maximum size {}, maximum weight {}", maximumSize, maximumWeight);
+        cache.setMaximumSize(maximumSize);
+        cache.setMaximumWeight(maximumWeight);
+
+        if (metricRegistry != null) {
+            metricRegistry.register("mustache_cache.hits", (Gauge<Long>) cache::hitCount);
+            metricRegistry.register("mustache_cache.misses", (Gauge<Long>) cache::missCount);
+            metricRegistry.register("mustache_cache.evictions", (Gauge<Long>) cache::evictionCount);
+            metricRegistry.register("mustache_cache.size", (Gauge<Integer>) cache::size);
+            metricRegistry.register("mustache_cache.weight", (Gauge<Long>) cache::weight);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mustache;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hesperides.domain.templatecontainers.entities.ParallelPropertiesExtractor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Paramètre l'extraction parallèle des propriétés sur les modules et technos comportant beaucoup de templates.
+ */
+@Configuration
+@Getter
+@Setter
+@Slf4j
+@ConfigurationProperties("properties_extraction")
+public class PropertiesExtractionConfiguration {
+
+    private boolean parallel = true;
+    /**
+     * 0 pour utiliser autant de threads que de processeurs disponibles
+     */
+    private int parallelism = 0;
+    private int parallelThreshold = ParallelPropertiesExtractor.DEFAULT_THRESHOLD;
+
+    @PostConstruct
+    public void initialize() {
+        log.info("Properties extraction: parallel {}, parallelism {}, threshold {}", parallel, parallelism, parallelThreshold);
+        ParallelPropertiesExtractor.configure(parallel, parallelism, parallelThreshold);
+    }
+}
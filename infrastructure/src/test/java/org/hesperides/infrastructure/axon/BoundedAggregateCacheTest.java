@@ -0,0 +1,74 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import org.axonframework.common.caching.Cache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedAggregateCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        BoundedAggregateCache cache = new BoundedAggregateCache(2);
+        List<Object> expired = new ArrayList<>();
+        cache.registerCacheEntryListener(new Cache.EntryListenerAdapter() {
+            @Override
+            public void onEntryExpired(Object key) {
+                expired.add(key);
+            }
+        });
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, (int) cache.get("a"));
+        cache.put("c", 3);
+
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("a"));
+        assertTrue(cache.containsKey("c"));
+        assertEquals(1, expired.size());
+        assertEquals("b", expired.get(0));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void testStatistics() {
+        BoundedAggregateCache cache = new BoundedAggregateCache(10);
+        assertTrue(cache.putIfAbsent("a", 1));
+        assertFalse(cache.putIfAbsent("a", 2));
+        assertEquals(1, (int) cache.get("a"));
+        assertNull(cache.get("b"));
+        assertTrue(cache.remove("a"));
+        assertNull(cache.get("a"));
+
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(0, cache.size());
+    }
+}
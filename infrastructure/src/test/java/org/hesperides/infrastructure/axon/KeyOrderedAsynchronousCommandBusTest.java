@@ -0,0 +1,160 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.MetricRegistry;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.GenericCommandMessage;
+import org.axonframework.common.transaction.NoTransactionManager;
+import org.axonframework.monitoring.NoOpMessageMonitor;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyOrderedAsynchronousCommandBusTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    // La clé de routage est la première lettre de la commande : "a" et "b" tombent sur deux threads différents
+    private final KeyOrderedAsynchronousCommandBus commandBus = new KeyOrderedAsynchronousCommandBus(2, 1000,
+            command -> ((String) command.getPayload()).substring(0, 1), NoTransactionManager.INSTANCE,
+            NoOpMessageMonitor.INSTANCE, metricRegistry);
+
+    @After
+    public void tearDown() {
+        commandBus.shutdown();
+    }
+
+    @Test
+    public void testCommandsWithSameKeyAreHandledInOrder() throws InterruptedException {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        commandBus.subscribe(String.class.getName(), command -> {
+            handled.add((String) command.getPayload());
+            return null;
+        });
+
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 100; i++) {
+            dispatch("a" + i, done);
+            dispatch("b" + i, done);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        List<String> handledA = new ArrayList<>();
+        List<String> handledB = new ArrayList<>();
+        for (String command : handled) {
+            (command.startsWith("a") ? handledA : handledB).add(command);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a" + i, handledA.get(i));
+            assertEquals("b" + i, handledB.get(i));
+        }
+        assertEquals(200, metricRegistry.timer("command_bus.latency").getCount());
+        assertEquals(0, commandBus.queueDepth());
+    }
+
+    @Test
+    public void testCommandsWithDifferentKeysAreHandledConcurrently() throws InterruptedException {
+        CountDownLatch bHandled = new CountDownLatch(1);
+        commandBus.subscribe(String.class.getName(), command -> {
+            if ("a".equals(command.getPayload())) {
+                // Ne se débloque que si "b" est traité pendant que "a" occupe son thread
+                assertTrue(bHandled.await(5, TimeUnit.SECONDS));
+            } else {
+                bHandled.countDown();
+            }
+            return null;
+        });
+
+        CountDownLatch done = new CountDownLatch(2);
+        dispatch("a", done);
+        dispatch("b", done);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCommandsOverTheQueueCapacityAreRejected() throws InterruptedException {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        KeyOrderedAsynchronousCommandBus commandBus = new KeyOrderedAsynchronousCommandBus(1, 10,
+                command -> "key", NoTransactionManager.INSTANCE, NoOpMessageMonitor.INSTANCE, metricRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        commandBus.subscribe(String.class.getName(), command -> {
+            started.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return null;
+        });
+
+        CountDownLatch done = new CountDownLatch(11);
+        dispatch(commandBus, "a", done);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // Le thread est occupé : sa file accepte 10 commandes, la suivante est rejetée
+        for (int i = 0; i < 10; i++) {
+            dispatch(commandBus, "a" + i, done);
+        }
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        commandBus.dispatch(GenericCommandMessage.asCommandMessage("a10"), new CommandCallback<Object, Object>() {
+            @Override
+            public void onSuccess(CommandMessage<?> commandMessage, Object result) {
+            }
+
+            @Override
+            public void onFailure(CommandMessage<?> commandMessage, Throwable cause) {
+                failures.add(cause);
+            }
+        });
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof RejectedExecutionException);
+        assertEquals(1, metricRegistry.meter("command_bus.rejected").getCount());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(failures.size() > 1);
+        commandBus.shutdown();
+    }
+
+    private void dispatch(String payload, CountDownLatch done) {
+        dispatch(commandBus, payload, done);
+    }
+
+    private static void dispatch(KeyOrderedAsynchronousCommandBus commandBus, String payload, CountDownLatch done) {
+        commandBus.dispatch(GenericCommandMessage.asCommandMessage(payload), new CommandCallback<Object, Object>() {
+            @Override
+            public void onSuccess(CommandMessage<?> commandMessage, Object result) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(CommandMessage<?> commandMessage, Throwable cause) {
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.axon;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import org.axonframework.eventsourcing.GenericDomainEventMessage;
+import org.axonframework.eventsourcing.SnapshotTrigger;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThresholdSnapshotTriggerDefinitionTest {
+
+    private final List<String> snapshots = new ArrayList<>();
+    private final Snapshotter snapshotter = (aggregateType, aggregateIdentifier) -> snapshots.add(aggregateIdentifier);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    public void testSnapshotIsScheduledEveryNEvents() {
+        SnapshotTrigger trigger = new ThresholdSnapshotTriggerDefinition(snapshotter, 3, 0, metricRegistry).prepareTrigger(FakeAggregate.class);
+        for (long sequence = 0; sequence < 7; sequence++) {
+            trigger.eventHandled(event(sequence, "payload"));
+        }
+        assertEquals(2, snapshots.size());
+        assertEquals("aggregate", snapshots.get(0));
+        assertEquals(2, metricRegistry.counter("snapshots.FakeAggregate.scheduled").getCount());
+    }
+
+    @Test
+    public void testReplayFromSnapshotIsCountedAsHit() {
+        ThresholdSnapshotTriggerDefinition definition = new ThresholdSnapshotTriggerDefinition(snapshotter, 3, 0, metricRegistry);
+
+        SnapshotTrigger fromSnapshot = definition.prepareTrigger(FakeAggregate.class);
+        fromSnapshot.eventHandled(event(10, new FakeAggregate()));
+        fromSnapshot.eventHandled(event(11, "payload"));
+        fromSnapshot.eventHandled(event(12, "payload"));
+        fromSnapshot.initializationFinished();
+
+        SnapshotTrigger fromHistory = definition.prepareTrigger(FakeAggregate.class);
+        fromHistory.eventHandled(event(0, "payload"));
+        fromHistory.initializationFinished();
+
+        // Le snapshot n'est compté ni comme évènement rejoué ni pour le seuil
+        assertEquals(0, snapshots.size());
+        assertEquals(1, metricRegistry.counter("snapshots.FakeAggregate.hits").getCount());
+        assertEquals(1, metricRegistry.counter("snapshots.FakeAggregate.misses").getCount());
+        Snapshot replayedEvents = metricRegistry.histogram("snapshots.FakeAggregate.replayed_events").getSnapshot();
+        assertEquals(2, replayedEvents.getMax());
+        assertEquals(1, replayedEvents.getMin());
+    }
+
+    private static GenericDomainEventMessage<Object> event(long sequence, Object payload) {
+        return new GenericDomainEventMessage<>("FakeAggregate", "aggregate", sequence, payload);
+    }
+
+    private static class FakeAggregate {
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.github.fakemongo.Fongo;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.messaging.unitofwork.BatchingUnitOfWork;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.junit.Test;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.axonframework.eventhandling.GenericEventMessage.asEventMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class BatchedProjectionWriterTest {
+
+    private final MongoDbFactory mongoDbFactory = new SimpleMongoDbFactory(new Fongo("test").getMongo(), "test");
+    private final MongoTemplate mongoTemplate = new MongoTemplate(mongoDbFactory);
+    private final GridFsTemplate gridFsTemplate = new GridFsTemplate(mongoDbFactory, mongoTemplate.getConverter());
+    private final BatchedProjectionWriter projectionWriter = new BatchedProjectionWriter(mongoTemplate, gridFsTemplate,
+            new ProjectionVersions(mongoTemplate), new EventHandlingConfiguration());
+
+    @Test
+    public void testWritesToTheSameDocumentAreFlushedOnceAtTheEndOfTheBatch() throws Exception {
+        KeyDocument key = key("techno");
+        List<Long> documentCountsDuringBatch = new ArrayList<>();
+
+        processBatch(3, () -> {
+            TechnoDocument technoDocument = projectionWriter.find(TechnoDocument.class, key, this::findById);
+            if (technoDocument == null) {
+                technoDocument = new TechnoDocument();
+                technoDocument.setKey(key);
+                technoDocument.setProperties(new ArrayList<>());
+            }
+            // Chaque événement modifie le document conservé par le lot, sans le relire
+            technoDocument.getProperties().add(null);
+            projectionWriter.save(key, technoDocument);
+            documentCountsDuringBatch.add(mongoTemplate.count(null, TechnoDocument.class));
+        });
+
+        assertEquals(Arrays.asList(0L, 0L, 0L), documentCountsDuringBatch);
+        List<AbstractPropertyDocument> properties = findById(key).getProperties();
+        assertEquals(3, properties.size());
+    }
+
+    @Test
+    public void testDocumentSavedThenDeletedInTheSameBatchIsNotWritten() throws Exception {
+        KeyDocument key = key("deleted");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(key);
+
+        processBatch(2, new Runnable() {
+            private boolean created;
+
+            @Override
+            public void run() {
+                if (!created) {
+                    projectionWriter.save(key, technoDocument);
+                    created = true;
+                } else {
+                    projectionWriter.delete(TechnoDocument.class, key);
+                }
+            }
+        });
+
+        assertEquals(0, mongoTemplate.count(null, TechnoDocument.class));
+        assertNull(projectionWriter.find(TechnoDocument.class, key, this::findById));
+    }
+
+    @Test
+    public void testTargetedUpdatesAreAppliedInOrderAtTheEndOfTheBatch() throws Exception {
+        KeyDocument key = key("targeted");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(key);
+        technoDocument.setTemplates(new ArrayList<>());
+        mongoTemplate.save(technoDocument);
+        List<Integer> templateCountsDuringBatch = new ArrayList<>();
+
+        processBatch(2, new Runnable() {
+            private int eventIndex;
+
+            @Override
+            public void run() {
+                Query query = new Query(where("_id").is(key));
+                Update update = eventIndex++ == 0
+                        ? new Update().push("templates", template("first"))
+                        : new Update().set("templates.0.filename", "updated");
+                projectionWriter.update(TechnoDocument.class, key, query, update);
+                templateCountsDuringBatch.add(findById(key).getTemplates().size());
+            }
+        });
+
+        assertEquals(Arrays.asList(0, 0), templateCountsDuringBatch);
+        List<TemplateDocument> templates = findById(key).getTemplates();
+        assertEquals(1, templates.size());
+        assertEquals("updated", templates.get(0).getFilename());
+    }
+
+    @Test
+    public void testTargetedUpdateOfADocumentSavedInTheSameBatchIsNotExecuted() throws Exception {
+        KeyDocument key = key("saved");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(key);
+        technoDocument.setTemplates(new ArrayList<>());
+
+        processBatch(1, () -> {
+            projectionWriter.save(key, technoDocument);
+            // L'appelant modifie le document en mémoire, qui sera écrit en entier
+            technoDocument.addTemplate(template("first"));
+            projectionWriter.update(TechnoDocument.class, key, new Query(where("_id").is(key)),
+                    new Update().push("templates", template("first")));
+        });
+
+        assertEquals(1, findById(key).getTemplates().size());
+    }
+
+    @Test
+    public void testDocumentUpdatedBeforeBeingReadIsFoundWithItsUpdate() throws Exception {
+        KeyDocument key = key("updated_first");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(key);
+        technoDocument.setTemplates(new ArrayList<>());
+        mongoTemplate.save(technoDocument);
+        List<TechnoDocument> foundDocuments = new ArrayList<>();
+
+        processBatch(1, () -> {
+            // Comme le recalcul des propriétés des modules d'une techno, avant un événement du module
+            projectionWriter.update(TechnoDocument.class, key, new Query(where("_id").is(key)),
+                    new Update().push("templates", template("first")));
+            foundDocuments.add(projectionWriter.find(TechnoDocument.class, key, this::findById));
+            foundDocuments.addAll(projectionWriter.findAll(TechnoDocument.class, Collections.singletonList(key), this::findAllById));
+        });
+
+        assertEquals(2, foundDocuments.size());
+        foundDocuments.forEach(foundDocument -> assertEquals(1, foundDocument.getTemplates().size()));
+        assertEquals(1, findById(key).getTemplates().size());
+    }
+
+    @Test
+    public void testUpsertAfterASaveInTheSameBatchIsApplied() throws Exception {
+        KeyDocument key = key("upserted");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(key);
+
+        processBatch(1, () -> {
+            projectionWriter.save(key, technoDocument);
+            projectionWriter.upsert(TechnoDocument.class, key, new Query(where("_id").is(key)),
+                    new Update().push("templates", template("first")));
+        });
+
+        assertEquals(1, findById(key).getTemplates().size());
+    }
+
+    @Test
+    public void testDocumentsIdentifiedByAQueryAreReplacedAndRemovedAtTheEndOfTheBatch() throws Exception {
+        KeyDocument key = key("replaced");
+        Query query = new Query(where("key").is(key));
+        List<Long> documentCountsDuringBatch = new ArrayList<>();
+
+        processBatch(3, new Runnable() {
+            private int eventIndex;
+
+            @Override
+            public void run() {
+                TechnoDocument technoDocument = new TechnoDocument();
+                technoDocument.setKey(key);
+                technoDocument.setTemplates(Collections.nCopies(eventIndex, template("template")));
+                if (eventIndex++ == 1) {
+                    projectionWriter.remove(TechnoDocument.class, key, query);
+                } else {
+                    projectionWriter.replace(key, query, technoDocument);
+                }
+                documentCountsDuringBatch.add(mongoTemplate.count(null, TechnoDocument.class));
+            }
+        });
+
+        assertEquals(Arrays.asList(0L, 0L, 0L), documentCountsDuringBatch);
+        List<TechnoDocument> technoDocuments = mongoTemplate.find(query, TechnoDocument.class);
+        assertEquals(1, technoDocuments.size());
+        assertEquals(2, technoDocuments.get(0).getTemplates().size());
+    }
+
+    @Test
+    public void testDeletionOutsideOfABatchIsImmediate() {
+        KeyDocument key = key("immediate");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(key);
+        projectionWriter.save(key, technoDocument);
+        assertEquals(1, mongoTemplate.count(null, TechnoDocument.class));
+
+        projectionWriter.delete(TechnoDocument.class, key);
+        assertEquals(0, mongoTemplate.count(null, TechnoDocument.class));
+    }
+
+    private void processBatch(int eventCount, Runnable eventHandler) throws Exception {
+        List<EventMessage<?>> events = new ArrayList<>();
+        for (int i = 0; i < eventCount; i++) {
+            events.add(asEventMessage(i));
+        }
+        BatchingUnitOfWork<EventMessage<?>> unitOfWork = new BatchingUnitOfWork<>(events);
+        unitOfWork.executeWithResult(() -> projectionWriter.handle(unitOfWork, () -> {
+            eventHandler.run();
+            return null;
+        }));
+    }
+
+    private TechnoDocument findById(KeyDocument key) {
+        return mongoTemplate.findById(key, TechnoDocument.class);
+    }
+
+    private List<TechnoDocument> findAllById(List<KeyDocument> keys) {
+        return mongoTemplate.find(new Query(where("_id").in(keys)), TechnoDocument.class);
+    }
+
+    private static TemplateDocument template(String name) {
+        TemplateDocument templateDocument = new TemplateDocument();
+        templateDocument.setName(name);
+        templateDocument.setFilename(name);
+        return templateDocument;
+    }
+
+    private static KeyDocument key(String name) {
+        KeyDocument key = new KeyDocument();
+        key.setName(name);
+        key.setVersion("1.0");
+        key.setWorkingCopy(true);
+        return key;
+    }
+}
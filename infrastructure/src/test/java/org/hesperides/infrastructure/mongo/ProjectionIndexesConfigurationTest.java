@@ -0,0 +1,52 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.github.fakemongo.Fongo;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import static org.junit.Assert.assertTrue;
+
+public class ProjectionIndexesConfigurationTest {
+
+    private final MongoTemplate mongoTemplate = new MongoTemplate(new Fongo("test").getMongo(), "test");
+
+    @Test(expected = IllegalStateException.class)
+    public void testStartupFailsInVerifyModeWhenIndexesAreMissing() {
+        projectionIndexesConfiguration("verify").checkProjectionIndexes();
+    }
+
+    @Test
+    public void testMissingIndexesAreCreatedInCreateMode() {
+        projectionIndexesConfiguration("create").checkProjectionIndexes();
+
+        ProjectionIndexesConfiguration.REQUIRED_INDEXES.forEach(projectionIndex -> assertTrue(projectionIndex.exists(mongoTemplate)));
+        projectionIndexesConfiguration("verify").checkProjectionIndexes();
+    }
+
+    private ProjectionIndexesConfiguration projectionIndexesConfiguration(String mode) {
+        ProjectionIndexesConfiguration projectionIndexesConfiguration = new ProjectionIndexesConfiguration();
+        projectionIndexesConfiguration.setMongoTemplate(mongoTemplate);
+        projectionIndexesConfiguration.setMode(mode);
+        return projectionIndexesConfiguration;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.github.fakemongo.Fongo;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProjectionVersionsTest {
+
+    private final MongoTemplate mongoTemplate = new MongoTemplate(new Fongo("test").getMongo(), "test");
+    // Deux instances de l'application, partageant la même base
+    private final ProjectionVersions rebuildingInstance = new ProjectionVersions(mongoTemplate);
+    private final ProjectionVersions otherInstance = new ProjectionVersions(mongoTemplate);
+
+    @After
+    public void resetCurrentVersion() {
+        ProjectionCollections.setCurrentVersion(0);
+    }
+
+    @Test
+    public void testLiveBatchesOfOtherInstancesWaitForTheCutOver() throws Exception {
+        rebuildingInstance.beginCutOver();
+        CompletableFuture<String> liveBatch = CompletableFuture.supplyAsync(this::beginLiveBatchOnOtherInstance);
+
+        Thread.sleep(300);
+        assertFalse(liveBatch.isDone());
+
+        rebuildingInstance.switchTo(1);
+        otherInstance.endLiveBatch(liveBatch.get(5, TimeUnit.SECONDS));
+        assertEquals(1, otherInstance.getCurrentVersion());
+    }
+
+    @Test
+    public void testTheCutOverWaitsForTheLiveBatchesOfOtherInstances() throws Exception {
+        String liveBatchId = otherInstance.beginLiveBatch();
+        CompletableFuture<Void> cutOver = CompletableFuture.runAsync(() -> {
+            try {
+                rebuildingInstance.beginCutOver();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(300);
+        assertFalse(cutOver.isDone());
+
+        otherInstance.endLiveBatch(liveBatchId);
+        cutOver.get(5, TimeUnit.SECONDS);
+        rebuildingInstance.endCutOver();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testATimedOutCutOverDoesNotSwitchVersions() throws Exception {
+        rebuildingInstance.setCutOverTimeoutSeconds(0);
+        rebuildingInstance.beginCutOver();
+        Thread.sleep(10);
+        try {
+            rebuildingInstance.switchTo(1);
+        } finally {
+            rebuildingInstance.endCutOver();
+            assertEquals(0, ProjectionCollections.getCurrentVersion());
+        }
+    }
+
+    @Test
+    public void testEventsReplayedDuringTheCutOverAreSharedWithOtherInstances() {
+        rebuildingInstance.recordReplayedEvents(Arrays.asList("event-1", "event-2"));
+
+        assertEquals(Collections.singleton("event-2"), otherInstance.findReplayedEvents(Arrays.asList("event-2", "event-3")));
+
+        rebuildingInstance.clearReplayedEvents();
+        assertTrue(otherInstance.findReplayedEvents(Arrays.asList("event-1", "event-2")).isEmpty());
+    }
+
+    private String beginLiveBatchOnOtherInstance() {
+        try {
+            return otherInstance.beginLiveBatch();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
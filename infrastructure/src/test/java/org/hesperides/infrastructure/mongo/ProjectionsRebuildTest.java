@@ -0,0 +1,261 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo;
+
+import com.github.fakemongo.Fongo;
+import lombok.Value;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.axonframework.config.ProcessingGroup;
+import org.axonframework.eventhandling.EventHandler;
+import org.axonframework.eventsourcing.GenericDomainEventMessage;
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine;
+import org.hesperides.domain.modules.GetModulesNamesQuery;
+import org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration;
+import org.hesperides.infrastructure.mongo.modules.ModuleDocument;
+import org.hesperides.infrastructure.mongo.modules.MongoModuleProjectionRepository;
+import org.hesperides.infrastructure.mongo.modules.MongoModuleRepository;
+import org.hesperides.infrastructure.mongo.modules.TechnoModulesPropertiesUpdater;
+import org.hesperides.infrastructure.mongo.modules.TechnoModulesUpdateDocument;
+import org.hesperides.infrastructure.mongo.technos.MongoTechnoRepository;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.PropertyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.hesperides.infrastructure.axon.ProjectionsProcessingConfiguration.PROCESSING_GROUP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProjectionsRebuildTest {
+
+    private final MongoDbFactory mongoDbFactory = new SimpleMongoDbFactory(new Fongo("test").getMongo(), "test");
+    private final MongoTemplate mongoTemplate = new MongoTemplate(mongoDbFactory);
+    private final GridFsTemplate gridFsTemplate = new GridFsTemplate(mongoDbFactory, mongoTemplate.getConverter());
+    private final ProjectionVersions projectionVersions = new ProjectionVersions(mongoTemplate);
+    private final BatchedProjectionWriter projectionWriter = new BatchedProjectionWriter(mongoTemplate, gridFsTemplate, projectionVersions, new EventHandlingConfiguration());
+    private final MongoRepositoryFactory repositoryFactory = new MongoRepositoryFactory(mongoTemplate);
+    private final MongoModuleRepository moduleRepository = repositoryFactory.getRepository(MongoModuleRepository.class);
+    private final TechnoModulesPropertiesUpdater technoModulesPropertiesUpdater = new TechnoModulesPropertiesUpdater(moduleRepository,
+            repositoryFactory.getRepository(MongoTechnoRepository.class), projectionWriter, mongoTemplate);
+
+    @After
+    public void resetCurrentVersion() {
+        ProjectionCollections.setCurrentVersion(0);
+    }
+
+    @Test
+    public void testTheProjectionsAreRebuiltInTheNextVersion() {
+        mongoTemplate.save(module("stale-module"));
+        InMemoryEventStorageEngine eventStorageEngine = new InMemoryEventStorageEngine();
+        for (int i = 0; i < 100; i++) {
+            eventStorageEngine.appendEvents(new GenericDomainEventMessage<>("Module", "module-" + (i % 10), i / 10, "module-" + (i % 10)));
+        }
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansWithAnnotation(ProcessingGroup.class))
+                .thenReturn(Collections.<String, Object>singletonMap("moduleNamesProjection", new ModuleNamesProjection(projectionWriter)));
+        EventHandlingConfiguration eventHandlingConfiguration = mock(EventHandlingConfiguration.class);
+        doReturn(Optional.empty()).when(eventHandlingConfiguration).getProcessor(PROCESSING_GROUP);
+
+        projectionVersions.setCheckIntervalSeconds(0);
+        projectionVersions.loadCurrentVersion();
+
+        ProjectionsRebuild projectionsRebuild = new ProjectionsRebuild(mongoTemplate, eventStorageEngine,
+                mock(org.axonframework.mongo.MongoTemplate.class, RETURNS_DEEP_STUBS), projectionWriter,
+                projectionVersions, eventHandlingConfiguration, new ProjectionsProcessingConfiguration(), technoModulesPropertiesUpdater, applicationContext);
+        projectionsRebuild.setBatchSize(7);
+        projectionsRebuild.rebuild();
+
+        assertEquals(10, mongoTemplate.count(new Query(), ModuleDocument.class));
+        assertEquals("module-0", mongoTemplate.findAll(ModuleDocument.class).stream()
+                .map(moduleDocument -> moduleDocument.getKey().getName())
+                .sorted()
+                .collect(Collectors.toList())
+                .get(0));
+        assertEquals("module_v1", mongoTemplate.getCollectionName(ModuleDocument.class));
+        assertEquals(1, projectionVersions.getCurrentVersion());
+        assertEquals(100L, projectionsRebuild.getStatus().get("processed_events"));
+        // La version précédente est conservée jusqu'à la reconstruction suivante
+        assertEquals(1, mongoTemplate.getCollection("module").count());
+
+        projectionsRebuild.rebuild();
+
+        assertEquals("module_v2", mongoTemplate.getCollectionName(ModuleDocument.class));
+        assertEquals(10, mongoTemplate.count(new Query(), ModuleDocument.class));
+        assertFalse(mongoTemplate.collectionExists("module"));
+    }
+
+    @Test
+    public void testTheModuleNamesAreReadFromTheCurrentVersion() {
+        mongoTemplate.save(module("stale-module"));
+        InMemoryEventStorageEngine eventStorageEngine = new InMemoryEventStorageEngine();
+        eventStorageEngine.appendEvents(new GenericDomainEventMessage<>("Module", "module-a", 0, "module-a"),
+                new GenericDomainEventMessage<>("Module", "module-b", 0, "module-b"));
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansWithAnnotation(ProcessingGroup.class))
+                .thenReturn(Collections.<String, Object>singletonMap("moduleNamesProjection", new ModuleNamesProjection(projectionWriter)));
+        EventHandlingConfiguration eventHandlingConfiguration = mock(EventHandlingConfiguration.class);
+        doReturn(Optional.empty()).when(eventHandlingConfiguration).getProcessor(PROCESSING_GROUP);
+        projectionVersions.setCheckIntervalSeconds(0);
+        projectionVersions.loadCurrentVersion();
+        ProjectionsRebuild projectionsRebuild = new ProjectionsRebuild(mongoTemplate, eventStorageEngine,
+                mock(org.axonframework.mongo.MongoTemplate.class, RETURNS_DEEP_STUBS), projectionWriter,
+                projectionVersions, eventHandlingConfiguration, new ProjectionsProcessingConfiguration(), technoModulesPropertiesUpdater, applicationContext);
+
+        projectionsRebuild.rebuild();
+
+        MongoModuleProjectionRepository moduleProjectionRepository = new MongoModuleProjectionRepository(
+                null, null, null, null, mongoTemplate, projectionWriter);
+        List<String> moduleNames = moduleProjectionRepository.onGetModulesNamesQuery(new GetModulesNamesQuery());
+        Collections.sort(moduleNames);
+        assertEquals(Arrays.asList("module-a", "module-b"), moduleNames);
+    }
+
+    @Test
+    public void testTheModulesOfTheReplayedTechnosAreUpdatedBeforeTheCutOver() {
+        InMemoryEventStorageEngine eventStorageEngine = new InMemoryEventStorageEngine();
+        // Le module est rejoué avant sa techno, éventuellement dans un autre segment
+        eventStorageEngine.appendEvents(new GenericDomainEventMessage<>("Module", "module", 0, new ModuleUsingTechno("module", "techno")),
+                new GenericDomainEventMessage<>("Techno", "techno", 0, new TechnoChanged("techno")));
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansWithAnnotation(ProcessingGroup.class))
+                .thenReturn(Collections.<String, Object>singletonMap("technosProjection", new TechnosProjection(projectionWriter)));
+        EventHandlingConfiguration eventHandlingConfiguration = mock(EventHandlingConfiguration.class);
+        doReturn(Optional.empty()).when(eventHandlingConfiguration).getProcessor(PROCESSING_GROUP);
+        projectionVersions.setCheckIntervalSeconds(0);
+        projectionVersions.loadCurrentVersion();
+        ProjectionsRebuild projectionsRebuild = new ProjectionsRebuild(mongoTemplate, eventStorageEngine,
+                mock(org.axonframework.mongo.MongoTemplate.class, RETURNS_DEEP_STUBS), projectionWriter,
+                projectionVersions, eventHandlingConfiguration, new ProjectionsProcessingConfiguration(), technoModulesPropertiesUpdater, applicationContext);
+
+        projectionsRebuild.rebuild();
+
+        assertEquals(Arrays.asList("module-property", "techno-property"), moduleRepository.findByKey(key("module")).getProperties().stream()
+                .map(AbstractPropertyDocument::getName)
+                .collect(Collectors.toList()));
+        assertEquals(0, mongoTemplate.count(new Query(), TechnoModulesUpdateDocument.class));
+    }
+
+    @Test
+    public void testTheCollectionVersionIsChangedOnlyInTheCurrentThread() throws Exception {
+        assertEquals("module_v1", ProjectionCollections.callWithVersion(1,
+                () -> mongoTemplate.getCollectionName(ModuleDocument.class)));
+        assertEquals("module", mongoTemplate.getCollectionName(ModuleDocument.class));
+    }
+
+    private static ModuleDocument module(String name) {
+        ModuleDocument moduleDocument = new ModuleDocument();
+        moduleDocument.setKey(key(name));
+        return moduleDocument;
+    }
+
+    private static KeyDocument key(String name) {
+        KeyDocument key = new KeyDocument();
+        key.setName(name);
+        key.setVersion("1.0");
+        key.setWorkingCopy(true);
+        return key;
+    }
+
+    private static List<AbstractPropertyDocument> properties(String name) {
+        PropertyDocument propertyDocument = new PropertyDocument();
+        propertyDocument.setName(name);
+        return Collections.singletonList(propertyDocument);
+    }
+
+    @ProcessingGroup(PROCESSING_GROUP)
+    public static class ModuleNamesProjection {
+
+        private final BatchedProjectionWriter projectionWriter;
+
+        ModuleNamesProjection(BatchedProjectionWriter projectionWriter) {
+            this.projectionWriter = projectionWriter;
+        }
+
+        @EventHandler
+        public void on(String moduleName) {
+            ModuleDocument moduleDocument = module(moduleName);
+            projectionWriter.save(moduleDocument.getKey(), moduleDocument);
+        }
+    }
+
+    @Value
+    public static class ModuleUsingTechno {
+        String name;
+        String techno;
+    }
+
+    @Value
+    public static class TechnoChanged {
+        String name;
+    }
+
+    @ProcessingGroup(PROCESSING_GROUP)
+    public static class TechnosProjection {
+
+        private final BatchedProjectionWriter projectionWriter;
+
+        TechnosProjection(BatchedProjectionWriter projectionWriter) {
+            this.projectionWriter = projectionWriter;
+        }
+
+        @EventHandler
+        public void on(ModuleUsingTechno event) {
+            // La techno n'a pas encore été rejouée : seules les propriétés des templates du module sont connues
+            TemplateDocument templateDocument = new TemplateDocument();
+            templateDocument.setName("template");
+            templateDocument.setProperties(properties("module-property"));
+            ModuleDocument moduleDocument = module(event.getName());
+            moduleDocument.setTemplates(Collections.singletonList(templateDocument));
+            moduleDocument.setTechnos(Collections.singletonList(key(event.getTechno())));
+            moduleDocument.setProperties(properties("module-property"));
+            projectionWriter.save(moduleDocument.getKey(), moduleDocument);
+        }
+
+        @EventHandler
+        public void on(TechnoChanged event) {
+            TechnoDocument technoDocument = new TechnoDocument();
+            technoDocument.setKey(key(event.getName()));
+            technoDocument.setProperties(properties("techno-property"));
+            projectionWriter.save(technoDocument.getKey(), technoDocument);
+            TechnoModulesUpdateDocument.request(technoDocument.getKey(), projectionWriter);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import org.axonframework.commandhandling.model.AggregateRoot;
+import org.axonframework.eventsourcing.eventstore.GenericDomainEventEntry;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.serialization.Revision;
+import org.axonframework.serialization.upcasting.event.InitialEventRepresentation;
+import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class AggregateSnapshotRevisionFilterTest {
+
+    private final XStreamSerializer serializer = new XStreamSerializer();
+
+    @Test
+    public void testOutdatedSnapshotsAreDiscarded() {
+        List<IntermediateEventRepresentation> entries = new AggregateSnapshotRevisionFilter(serializer)
+                .upcast(Stream.of(
+                        entry(FakeAggregate.class.getName(), null),
+                        entry(FakeAggregate.class.getName(), "1"),
+                        entry(FakeAggregate.class.getName(), "2"),
+                        entry(FakeEvent.class.getName(), null),
+                        entry("unknown.Type", "3")))
+                .collect(Collectors.toList());
+
+        assertEquals(3, entries.size());
+        assertEquals("2", entries.get(0).getType().getRevision());
+        assertEquals(FakeEvent.class.getName(), entries.get(1).getType().getName());
+        assertEquals("unknown.Type", entries.get(2).getType().getName());
+    }
+
+    private IntermediateEventRepresentation entry(String type, String revision) {
+        GenericDomainEventEntry<String> entry = new GenericDomainEventEntry<>("FakeAggregate", "aggregate", 0, "id", 0L,
+                type, revision, "<payload/>", serializer.serialize(MetaData.emptyInstance(), String.class).getData());
+        return new InitialEventRepresentation(entry, serializer);
+    }
+
+    @AggregateRoot
+    @Revision("2")
+    private static class FakeAggregate {
+    }
+
+    private static class FakeEvent {
+    }
+}
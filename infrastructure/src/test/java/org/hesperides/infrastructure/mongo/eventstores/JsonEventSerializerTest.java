@@ -0,0 +1,115 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import org.axonframework.eventsourcing.eventstore.GenericDomainEventEntry;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.upcasting.event.InitialEventRepresentation;
+import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.dom4j.Document;
+import org.hesperides.domain.modules.TemplateCreatedEvent;
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.security.User;
+import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
+import org.hesperides.domain.templatecontainers.entities.IterableProperty;
+import org.hesperides.domain.templatecontainers.entities.Template;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonEventSerializerTest {
+
+    private final XStreamSerializer legacySerializer = new XStreamSerializer();
+    private final JsonEventSerializer serializer = new JsonEventSerializer(legacySerializer, 1024);
+
+    @Test
+    public void testEventsAreSmallerThanWithXStreamAndKeepTheirConcreteTypes() {
+        TemplateCreatedEvent event = templateCreatedEvent("{{foo|@required}} {{#it}}{{bar}}{{/it}}");
+        // Sans compression, pour comparer le JSON lui-même au XML
+        JsonEventSerializer uncompressedSerializer = new JsonEventSerializer(legacySerializer, 0);
+
+        SerializedObject<String> serializedEvent = uncompressedSerializer.serialize(event, String.class);
+        TemplateCreatedEvent deserializedEvent = uncompressedSerializer.deserialize(serializedEvent);
+
+        assertTrue(serializedEvent.getData().startsWith("{"));
+        assertTrue(serializedEvent.getData().length() < legacySerializer.serialize(event, String.class).getData().length());
+        assertEquals("2", serializedEvent.getType().getRevision());
+        assertEquals(event, deserializedEvent);
+        assertTrue(deserializedEvent.getModuleKey() instanceof Module.Key);
+        assertTrue(deserializedEvent.getProperties().get(3) instanceof IterableProperty);
+        assertEquals(event.getUser(), deserializedEvent.getUser());
+    }
+
+    @Test
+    public void testLargeEventsAreCompressed() {
+        TemplateCreatedEvent event = templateCreatedEvent(String.join("\n", Collections.nCopies(1000, "{{foo}}={{bar}}")));
+
+        SerializedObject<String> serializedEvent = serializer.serialize(event, String.class);
+
+        assertTrue(serializedEvent.getData().startsWith(JsonEventSerializer.COMPRESSED_PREFIX));
+        assertTrue(serializedEvent.getData().length() < event.getTemplate().getContent().length());
+        assertEquals(event, serializer.deserialize(serializedEvent));
+    }
+
+    @Test
+    public void testEventsStoredWithXStreamAreStillReadable() {
+        TemplateCreatedEvent event = templateCreatedEvent("{{foo}}");
+        SerializedObject<String> legacyEvent = legacySerializer.serialize(event, String.class);
+
+        assertEquals(event, serializer.deserialize(legacyEvent));
+    }
+
+    @Test
+    public void testEventsStoredWithXStreamAreStillUpcasted() {
+        TemplateCreatedEvent event = templateCreatedEvent("{{foo}}");
+        // Représentation XML de l'évènement tel qu'il était enregistré avant la révision 2
+        Document payload = legacySerializer.serialize(event, Document.class).getData();
+        payload.getRootElement().remove(payload.getRootElement().element("properties"));
+        SerializedObject<String> metaData = serializer.serialize(MetaData.emptyInstance(), String.class);
+        GenericDomainEventEntry<String> entry = new GenericDomainEventEntry<>("ModuleAggregate", "module", 0, "id", 0L,
+                TemplateCreatedEvent.class.getName(), null, payload.asXML(), metaData.getData());
+
+        List<IntermediateEventRepresentation> upcastedEvents = new TemplatePropertiesUpcaster(legacySerializer)
+                .upcast(Stream.of(new InitialEventRepresentation(entry, serializer)))
+                .collect(Collectors.toList());
+
+        assertFalse(metaData.getData().startsWith("{"));
+        assertEquals(event, serializer.deserialize(upcastedEvents.get(0).getData()));
+        assertEquals(MetaData.emptyInstance(), serializer.deserialize(metaData));
+    }
+
+    private static TemplateCreatedEvent templateCreatedEvent(String content) {
+        TemplateContainer.Key moduleKey = new Module.Key("module", "1.0", TemplateContainer.VersionType.workingcopy);
+        Template template = new Template("template", "{{file}}.txt", "/{{dir}}", content, null, 1L, moduleKey);
+        List<AbstractProperty> properties = AbstractProperty.extractPropertiesFromTemplate(template);
+        return new TemplateCreatedEvent(moduleKey, template, properties, new User("user", true, true));
+    }
+}
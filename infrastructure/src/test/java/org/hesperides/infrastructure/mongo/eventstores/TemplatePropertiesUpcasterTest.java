@@ -0,0 +1,80 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.eventstores;
+
+import org.axonframework.eventsourcing.eventstore.GenericDomainEventEntry;
+import org.axonframework.messaging.MetaData;
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.upcasting.event.InitialEventRepresentation;
+import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.dom4j.Document;
+import org.hesperides.domain.modules.TemplateCreatedEvent;
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.security.User;
+import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
+import org.hesperides.domain.templatecontainers.entities.IterableProperty;
+import org.hesperides.domain.templatecontainers.entities.Template;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemplatePropertiesUpcasterTest {
+
+    private final XStreamSerializer serializer = new XStreamSerializer();
+
+    @Test
+    public void testEventsWithoutPropertiesAreCompletedFromTheirTemplate() {
+        TemplateContainer.Key moduleKey = new Module.Key("module", "1.0", TemplateContainer.VersionType.workingcopy);
+        Template template = new Template("template", "{{file}}.txt", "/{{dir}}", "{{foo|@required}} {{#it}}{{bar}}{{/it}}", null, 1L, moduleKey);
+        List<AbstractProperty> properties = AbstractProperty.extractPropertiesFromTemplate(template);
+        TemplateCreatedEvent event = new TemplateCreatedEvent(moduleKey, template, properties, new User("user", true, true));
+
+        // Représentation de l'évènement tel qu'il était enregistré avant la révision 2
+        SerializedObject<Document> serializedEvent = serializer.serialize(event, Document.class);
+        Document payload = serializedEvent.getData();
+        payload.getRootElement().remove(payload.getRootElement().element("properties"));
+        GenericDomainEventEntry<String> entry = new GenericDomainEventEntry<>("ModuleAggregate", "module", 0, "id", 0L,
+                TemplateCreatedEvent.class.getName(), null, payload.asXML(),
+                serializer.serialize(MetaData.emptyInstance(), String.class).getData());
+
+        List<IntermediateEventRepresentation> upcastedEvents = new TemplatePropertiesUpcaster(serializer)
+                .upcast(Stream.of(new InitialEventRepresentation(entry, serializer)))
+                .collect(Collectors.toList());
+
+        assertEquals(1, upcastedEvents.size());
+        assertEquals("2", upcastedEvents.get(0).getType().getRevision());
+        TemplateCreatedEvent upcastedEvent = serializer.deserialize(upcastedEvents.get(0).getData());
+        assertEquals(event, upcastedEvent);
+        assertEquals(names(properties), names(upcastedEvent.getProperties()));
+        assertEquals(names(((IterableProperty) properties.get(3)).getProperties()),
+                names(((IterableProperty) upcastedEvent.getProperties().get(3)).getProperties()));
+    }
+
+    private static List<String> names(List<AbstractProperty> properties) {
+        return properties.stream().map(AbstractProperty::getName).collect(Collectors.toList());
+    }
+}
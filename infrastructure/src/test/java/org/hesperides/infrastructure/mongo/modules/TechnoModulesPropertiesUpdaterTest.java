@@ -0,0 +1,140 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.modules;
+
+import com.github.fakemongo.Fongo;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.axonframework.eventhandling.EventMessage;
+import org.axonframework.eventhandling.GenericEventMessage;
+import org.axonframework.messaging.unitofwork.BatchingUnitOfWork;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.hesperides.infrastructure.mongo.ProjectionVersions;
+import org.hesperides.infrastructure.mongo.technos.MongoTechnoRepository;
+import org.hesperides.infrastructure.mongo.technos.TechnoDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.AbstractPropertyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.KeyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.PropertyDocument;
+import org.hesperides.infrastructure.mongo.templatecontainers.TemplateDocument;
+import org.junit.Test;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class TechnoModulesPropertiesUpdaterTest {
+
+    private final MongoDbFactory mongoDbFactory = new SimpleMongoDbFactory(new Fongo("test").getMongo(), "test");
+    private final MongoTemplate mongoTemplate = new MongoTemplate(mongoDbFactory);
+    private final GridFsTemplate gridFsTemplate = new GridFsTemplate(mongoDbFactory, mongoTemplate.getConverter());
+    private final MongoModuleRepository moduleRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(MongoModuleRepository.class);
+    private final MongoTechnoRepository technoRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(MongoTechnoRepository.class);
+    private final BatchedProjectionWriter projectionWriter = new BatchedProjectionWriter(mongoTemplate, gridFsTemplate,
+            new ProjectionVersions(mongoTemplate), new EventHandlingConfiguration());
+    private final TechnoModulesPropertiesUpdater updater = new TechnoModulesPropertiesUpdater(moduleRepository, technoRepository, projectionWriter, mongoTemplate);
+
+    @Test
+    public void testOnlyTheModulesUsingTheTechnoAreUpdatedPageByPage() {
+        KeyDocument technoKey = key("techno");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(technoKey);
+        technoDocument.setProperties(properties("techno-property"));
+        mongoTemplate.save(technoDocument);
+        mongoTemplate.save(module("module-1", technoKey));
+        mongoTemplate.save(module("module-2", technoKey));
+        mongoTemplate.save(module("module-3", key("other-techno")));
+
+        updater.setPageSize(1);
+        updater.updateModulesUsing(technoKey);
+
+        assertEquals(Arrays.asList("module-property", "techno-property"), propertyNames("module-1"));
+        assertEquals(Arrays.asList("module-property", "techno-property"), propertyNames("module-2"));
+        assertEquals(Collections.singletonList("module-property"), propertyNames("module-3"));
+        // Le reste du document n'est pas touché
+        assertEquals("template", moduleRepository.findByKey(key("module-1")).getTemplates().get(0).getName());
+    }
+
+    @Test
+    public void testTheModulesAreUpdatedOutsideOfTheEventHandlerThatRequestedIt() throws Exception {
+        KeyDocument technoKey = key("techno");
+        TechnoDocument technoDocument = new TechnoDocument();
+        technoDocument.setKey(technoKey);
+        technoDocument.setProperties(properties("techno-property"));
+        mongoTemplate.save(technoDocument);
+        mongoTemplate.save(module("module-1", technoKey));
+
+        BatchingUnitOfWork<EventMessage<?>> unitOfWork = new BatchingUnitOfWork<>(
+                Collections.<EventMessage<?>>singletonList(GenericEventMessage.asEventMessage("event")));
+        unitOfWork.executeWithResult(() -> projectionWriter.handle(unitOfWork, () -> {
+            TechnoModulesUpdateDocument.request(technoKey, projectionWriter);
+            TechnoModulesUpdateDocument.request(technoKey, projectionWriter);
+            return null;
+        }));
+        assertEquals(Collections.singletonList("module-property"), propertyNames("module-1"));
+
+        // Une demande trop récente attend que les lots de projection en cours soient écrits
+        assertEquals(0, updater.processPendingUpdates(new Date(0)));
+        assertEquals(1, updater.processPendingUpdates(new Date()));
+        assertEquals(Arrays.asList("module-property", "techno-property"), propertyNames("module-1"));
+        assertEquals(0, mongoTemplate.count(null, TechnoModulesUpdateDocument.class));
+        assertEquals(0, updater.processPendingUpdates(new Date()));
+    }
+
+    private static ModuleDocument module(String name, KeyDocument technoKey) {
+        TemplateDocument templateDocument = new TemplateDocument();
+        templateDocument.setName("template");
+        templateDocument.setProperties(properties("module-property"));
+        ModuleDocument moduleDocument = new ModuleDocument();
+        moduleDocument.setKey(key(name));
+        moduleDocument.setTemplates(Collections.singletonList(templateDocument));
+        moduleDocument.setTechnos(Collections.singletonList(technoKey));
+        moduleDocument.setProperties(properties("module-property"));
+        return moduleDocument;
+    }
+
+    private static KeyDocument key(String name) {
+        KeyDocument keyDocument = new KeyDocument();
+        keyDocument.setName(name);
+        keyDocument.setVersion("1.0");
+        keyDocument.setWorkingCopy(true);
+        return keyDocument;
+    }
+
+    private static List<AbstractPropertyDocument> properties(String name) {
+        PropertyDocument propertyDocument = new PropertyDocument();
+        propertyDocument.setName(name);
+        return Collections.singletonList(propertyDocument);
+    }
+
+    private List<String> propertyNames(String moduleName) {
+        return moduleRepository.findByKey(key(moduleName)).getProperties().stream()
+                .map(AbstractPropertyDocument::getName)
+                .collect(Collectors.toList());
+    }
+}
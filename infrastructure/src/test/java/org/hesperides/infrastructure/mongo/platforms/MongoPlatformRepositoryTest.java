@@ -0,0 +1,76 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.platforms;
+
+import com.github.fakemongo.Fongo;
+import org.hesperides.infrastructure.mongo.platforms.documents.DeployedModuleDocument;
+import org.hesperides.infrastructure.mongo.platforms.documents.PlatformDocument;
+import org.hesperides.infrastructure.mongo.platforms.documents.PlatformKeyDocument;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MongoPlatformRepositoryTest {
+
+    private final MongoTemplate mongoTemplate = new MongoTemplate(new Fongo("test").getMongo(), "test");
+    private final MongoPlatformRepository platformRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(MongoPlatformRepository.class);
+
+    @Test
+    public void testOnlyThePlatformsDeployingTheSameModuleAreFound() {
+        mongoTemplate.save(platform("using", deployedModule("module", "1.0", true), deployedModule("other", "2.0", false)));
+        // Nom, version et type de version portés par des modules déployés différents
+        mongoTemplate.save(platform("mixed", deployedModule("module", "2.0", true), deployedModule("other", "1.0", true)));
+        mongoTemplate.save(platform("release", deployedModule("module", "1.0", false)));
+
+        List<PlatformDocument> platformDocuments = platformRepository.findKeysByDeployedModule("module", "1.0", true);
+
+        assertEquals(Collections.singletonList("using"), platformDocuments.stream()
+                .map(platformDocument -> platformDocument.getKey().getPlatformName())
+                .collect(Collectors.toList()));
+        assertNull(platformDocuments.get(0).getDeployedModules());
+    }
+
+    private static PlatformDocument platform(String platformName, DeployedModuleDocument... deployedModules) {
+        PlatformKeyDocument platformKey = new PlatformKeyDocument();
+        platformKey.setApplicationName("application");
+        platformKey.setPlatformName(platformName);
+        PlatformDocument platformDocument = new PlatformDocument();
+        platformDocument.setKey(platformKey);
+        platformDocument.setDeployedModules(Arrays.asList(deployedModules));
+        return platformDocument;
+    }
+
+    private static DeployedModuleDocument deployedModule(String name, String version, boolean isWorkingCopy) {
+        DeployedModuleDocument deployedModule = new DeployedModuleDocument();
+        deployedModule.setName(name);
+        deployedModule.setVersion(version);
+        deployedModule.setWorkingCopy(isWorkingCopy);
+        return deployedModule;
+    }
+}
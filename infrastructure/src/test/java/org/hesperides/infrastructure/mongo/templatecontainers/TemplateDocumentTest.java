@@ -0,0 +1,169 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.infrastructure.mongo.templatecontainers;
+
+import com.github.fakemongo.Fongo;
+import org.axonframework.config.EventHandlingConfiguration;
+import org.hesperides.infrastructure.mongo.BatchedProjectionWriter;
+import org.hesperides.infrastructure.mongo.ProjectionCollections;
+import org.hesperides.infrastructure.mongo.ProjectionVersions;
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.hesperides.domain.templatecontainers.queries.TemplateView;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateDocumentTest {
+
+    private final MongoDbFactory mongoDbFactory = new SimpleMongoDbFactory(new Fongo("test").getMongo(), "test");
+    private final MongoTemplate mongoTemplate = new MongoTemplate(mongoDbFactory);
+    private final GridFsTemplate gridFsTemplate = new GridFsTemplate(mongoDbFactory, mongoTemplate.getConverter());
+    private final BatchedProjectionWriter projectionWriter = new BatchedProjectionWriter(mongoTemplate, gridFsTemplate,
+            new ProjectionVersions(mongoTemplate), new EventHandlingConfiguration());
+
+    @Test
+    public void testTheWholeTemplateIsSavedInItsOwnCollectionAndOnlyItsSummaryIsReturned() {
+        KeyDocument moduleKey = new KeyDocument();
+        moduleKey.setName("module");
+        moduleKey.setVersion("1.0");
+        moduleKey.setWorkingCopy(true);
+        TemplateDocument templateDocument = new TemplateDocument();
+        templateDocument.setName("template");
+        templateDocument.setFilename("template.properties");
+        templateDocument.setContent("{{property}}");
+        templateDocument.setProperties(new ArrayList<>());
+
+        TemplateDocument templateSummary = templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, moduleKey, projectionWriter);
+
+        assertNull(templateSummary.getId());
+        assertNull(templateSummary.getContent());
+        assertEquals("template.properties", templateSummary.getFilename());
+        TemplateKeyDocument templateKey = new TemplateKeyDocument(TemplateKeyDocument.MODULE, moduleKey, "template");
+        TemplateDocument storedTemplate = mongoTemplate.findById(templateKey, TemplateDocument.class);
+        assertNull(storedTemplate.getContent());
+        assertEquals("{{property}}", mongoTemplate.findById(storedTemplate.getContentHash(), TemplateContentDocument.class).getContent());
+        assertNull(mongoTemplate.findById(new TemplateKeyDocument(TemplateKeyDocument.TECHNO, moduleKey, "template"), TemplateDocument.class));
+    }
+
+    @Test
+    public void testTheSameContentIsStoredOnceAndCollectedWhenNoLongerReferenced() {
+        KeyDocument releaseKey = new KeyDocument();
+        releaseKey.setName("module");
+        releaseKey.setVersion("1.0");
+        releaseKey.setWorkingCopy(false);
+        KeyDocument workingCopyKey = new KeyDocument();
+        workingCopyKey.setName("module");
+        workingCopyKey.setVersion("1.0");
+        workingCopyKey.setWorkingCopy(true);
+        TemplateDocument templateDocument = new TemplateDocument();
+        templateDocument.setName("template");
+        templateDocument.setContent("{{property}}");
+        templateDocument.setProperties(new ArrayList<>());
+
+        templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, workingCopyKey, projectionWriter);
+        templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, releaseKey, projectionWriter);
+        assertEquals(1, mongoTemplate.count(new Query(), TemplateContentDocument.class));
+
+        TemplateContentGarbageCollector garbageCollector = new TemplateContentGarbageCollector(mongoTemplate, gridFsTemplate);
+        garbageCollector.setGcGraceMinutes(-1);
+        TemplateDocument.delete(TemplateKeyDocument.MODULE, workingCopyKey, "template", projectionWriter);
+        assertEquals(0, garbageCollector.collectGarbage());
+        TemplateDocument.delete(TemplateKeyDocument.MODULE, releaseKey, "template", projectionWriter);
+        assertEquals(1, garbageCollector.collectGarbage());
+        assertEquals(0, mongoTemplate.count(new Query(), TemplateContentDocument.class));
+    }
+
+    @Test
+    public void testContentsReferencedByAnotherProjectionVersionAreNotCollected() throws Exception {
+        KeyDocument moduleKey = new KeyDocument();
+        moduleKey.setName("module");
+        moduleKey.setVersion("1.0");
+        moduleKey.setWorkingCopy(true);
+        TemplateDocument templateDocument = new TemplateDocument();
+        templateDocument.setName("template");
+        templateDocument.setContent("{{property}}");
+        templateDocument.setProperties(new ArrayList<>());
+
+        // Template enregistré uniquement dans les projections en cours de reconstruction
+        ProjectionCollections.callWithVersion(1, () -> templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, moduleKey, projectionWriter));
+
+        TemplateContentGarbageCollector garbageCollector = new TemplateContentGarbageCollector(mongoTemplate, gridFsTemplate);
+        garbageCollector.setGcGraceMinutes(-1);
+        assertEquals(0, garbageCollector.collectGarbage());
+        assertEquals(1, mongoTemplate.count(new Query(), TemplateContentDocument.class));
+    }
+
+    @Test
+    public void testLargeContentsAreStoredInGridFsAndReadAsStream() {
+        TemplateContentStore templateContentStore = new TemplateContentStore(
+                new MongoRepositoryFactory(mongoTemplate).getRepository(MongoTemplateContentRepository.class), gridFsTemplate);
+        templateContentStore.setGridfsThreshold(10);
+        templateContentStore.configure();
+        KeyDocument moduleKey = new KeyDocument();
+        moduleKey.setName("module");
+        moduleKey.setVersion("1.0");
+        moduleKey.setWorkingCopy(true);
+        TemplateDocument templateDocument = new TemplateDocument();
+        templateDocument.setName("template");
+        templateDocument.setContent("{{property}} é");
+        templateDocument.setProperties(new ArrayList<>());
+
+        templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, moduleKey, projectionWriter);
+        templateDocument.saveAndSummarize(TemplateKeyDocument.MODULE, moduleKey, projectionWriter);
+
+        TemplateKeyDocument templateKey = new TemplateKeyDocument(TemplateKeyDocument.MODULE, moduleKey, "template");
+        TemplateDocument storedTemplate = mongoTemplate.findById(templateKey, TemplateDocument.class);
+        TemplateContentDocument templateContent = mongoTemplate.findById(storedTemplate.getContentHash(), TemplateContentDocument.class);
+        assertTrue(templateContent.isGridFs());
+        assertNull(templateContent.getContent());
+        assertEquals(1, mongoTemplate.getCollection("fs.files").count());
+
+        TemplateView templateView = templateContentStore.withContent(storedTemplate).toTemplateView(new Module.Key("module", "1.0", TemplateContainer.VersionType.workingcopy));
+        assertTrue(templateView.isContentStreamed());
+        assertEquals("{{property}} é", templateView.readContent());
+        storedTemplate = mongoTemplate.findById(templateKey, TemplateDocument.class);
+        assertEquals("{{property}} é", templateContentStore.withContents(Collections.singletonList(storedTemplate)).get(0).getContent());
+
+        TemplateContentGarbageCollector garbageCollector = new TemplateContentGarbageCollector(mongoTemplate, gridFsTemplate);
+        garbageCollector.setGcGraceMinutes(-1);
+        TemplateDocument.delete(TemplateKeyDocument.MODULE, moduleKey, "template", projectionWriter);
+        assertEquals(1, garbageCollector.collectGarbage());
+        assertEquals(0, mongoTemplate.getCollection("fs.files").count());
+    }
+
+    @After
+    public void resetGridFsThreshold() {
+        TemplateContentDocument.configure(TemplateContentDocument.DEFAULT_GRIDFS_THRESHOLD);
+    }
+}
@@ -9,13 +9,17 @@ import org.hesperides.domain.templatecontainers.entities.Template;
 import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
 import org.hesperides.domain.templatecontainers.queries.TemplateView;
 import org.hesperides.presentation.io.templatecontainers.PartialTemplateIO;
+import org.hesperides.presentation.io.templatecontainers.StreamedTemplateOutput;
 import org.hesperides.presentation.io.templatecontainers.TemplateIO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -54,14 +58,20 @@ public class ModuleTemplatesController extends AbstractController {
     public ResponseEntity<TemplateIO> getTemplateInWorkingCopy(@PathVariable("module_name") final String moduleName,
                                                                @PathVariable("module_version") final String moduleVersion,
                                                                @PathVariable("module_type") final TemplateContainer.VersionType moduleVersionType,
-                                                               @PathVariable("template_name") final String templateName) {
+                                                               @PathVariable("template_name") final String templateName,
+                                                               HttpServletResponse response) throws IOException {
 
         TemplateContainer.Key moduleKey = new Module.Key(moduleName, moduleVersion, moduleVersionType);
-        TemplateIO templateOutput = moduleUseCases.getTemplate(moduleKey, templateName)
-                .map(TemplateIO::new)
+        TemplateView templateView = moduleUseCases.getTemplate(moduleKey, templateName)
                 .orElseThrow(() -> new TemplateNotFoundException(moduleKey, templateName));
 
-        return ResponseEntity.ok(templateOutput);
+        if (templateView.isContentStreamed()) {
+            StreamedTemplateOutput templateOutput = StreamedTemplateOutput.open(templateView);
+            response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+            templateOutput.writeTo(response.getOutputStream());
+            return null;
+        }
+        return ResponseEntity.ok(new TemplateIO(templateView));
     }
 
     @PostMapping("/workingcopy/templates")
@@ -4,7 +4,11 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.hesperides.application.platforms.PlatformUseCases;
 import org.hesperides.domain.platforms.entities.Platform;
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
 import org.hesperides.domain.platforms.queries.views.PlatformView;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.hesperides.presentation.io.platforms.ModulePlatformOutput;
 import org.hesperides.presentation.io.platforms.PlatformIO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +16,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.util.List;
 
 import static org.hesperides.domain.security.User.fromAuthentication;
 
@@ -76,4 +81,15 @@ public class PlatformsController extends AbstractController {
         // response
         return ResponseEntity.ok().build();
     }
+
+    @ApiOperation("Retrieve the platforms using a module")
+    @PostMapping("/using_module/{module_name}/{module_version}/{module_type}")
+    public ResponseEntity<List<ModulePlatformOutput>> getPlatformsUsingModule(@PathVariable("module_name") final String moduleName,
+                                                                              @PathVariable("module_version") final String moduleVersion,
+                                                                              @PathVariable("module_type") final TemplateContainer.VersionType moduleVersionType) {
+
+        TemplateContainer.Key moduleKey = new Module.Key(moduleName, moduleVersion, moduleVersionType);
+        List<ModulePlatformView> modulePlatformViews = platformUseCases.getPlatformsUsingModule(moduleKey);
+        return ResponseEntity.ok(ModulePlatformOutput.fromViews(modulePlatformViews));
+    }
 }
@@ -34,13 +34,17 @@ import org.hesperides.domain.templatecontainers.queries.TemplateView;
 import org.hesperides.presentation.io.TechnoIO;
 import org.hesperides.presentation.io.templatecontainers.ModelOutput;
 import org.hesperides.presentation.io.templatecontainers.PartialTemplateIO;
+import org.hesperides.presentation.io.templatecontainers.StreamedTemplateOutput;
 import org.hesperides.presentation.io.templatecontainers.TemplateIO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
@@ -103,13 +107,19 @@ public class TechnosController extends AbstractController {
     public ResponseEntity<TemplateIO> getTemplate(@PathVariable("techno_name") final String technoName,
                                                   @PathVariable("techno_version") final String technoVersion,
                                                   @PathVariable("techno_type") final TemplateContainer.VersionType technoVersionType,
-                                                  @PathVariable("template_name") final String templateName) {
+                                                  @PathVariable("template_name") final String templateName,
+                                                  HttpServletResponse response) throws IOException {
 
         TemplateContainer.Key technoKey = new Techno.Key(technoName, technoVersion, technoVersionType);
-        TemplateIO templateOutput = technoUseCases.getTemplate(technoKey, templateName)
-                .map(TemplateIO::new)
+        TemplateView templateView = technoUseCases.getTemplate(technoKey, templateName)
                 .orElseThrow(() -> new TemplateNotFoundException(technoKey, templateName));
-        return ResponseEntity.ok(templateOutput);
+        if (templateView.isContentStreamed()) {
+            StreamedTemplateOutput templateOutput = StreamedTemplateOutput.open(templateView);
+            response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+            templateOutput.writeTo(response.getOutputStream());
+            return null;
+        }
+        return ResponseEntity.ok(new TemplateIO(templateView));
     }
 
     @ApiOperation("Delete a techno")
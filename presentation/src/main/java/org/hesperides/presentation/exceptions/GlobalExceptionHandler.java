@@ -14,6 +14,9 @@ import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 import org.springframework.web.util.WebUtils;
 
+import java.io.FileNotFoundException;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Centralisation de la gestion des exceptions (bien pratique)
  */
@@ -52,6 +55,29 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    /**
+     * se produit quand le contenu d'un template, lu en flux, est introuvable.
+     *
+     * @param ex contenu introuvable
+     * @return entity
+     */
+    @ExceptionHandler(FileNotFoundException.class)
+    public ResponseEntity handleMissingContent(FileNotFoundException ex, WebRequest request) {
+        request.setAttribute(WebUtils.ERROR_EXCEPTION_ATTRIBUTE, ex, WebRequest.SCOPE_REQUEST);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ex.getMessage());
+    }
+
+    /**
+     * se produit quand la file du bus de commandes asynchrone est pleine.
+     *
+     * @param ex commande rejetée
+     * @return entity
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity handleRejectedCommand(RejectedExecutionException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+
     @Override
     protected ResponseEntity<Object> handleExceptionInternal(Exception ex, Object body, HttpHeaders headers, HttpStatus status, WebRequest request) {
         if (HttpStatus.INTERNAL_SERVER_ERROR.equals(status)) {
@@ -22,6 +22,10 @@ package org.hesperides.presentation.io.platforms;
 
 import com.google.gson.annotations.SerializedName;
 import lombok.Value;
+import org.hesperides.domain.platforms.queries.views.ModulePlatformView;
+
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Value
 public class ModulePlatformOutput {
@@ -31,4 +35,12 @@ public class ModulePlatformOutput {
     @SerializedName("platform_name")
     String platformName;
 
+    public ModulePlatformOutput(ModulePlatformView modulePlatformView) {
+        this.applicationName = modulePlatformView.getApplicationName();
+        this.platformName = modulePlatformView.getPlatformName();
+    }
+
+    public static List<ModulePlatformOutput> fromViews(List<ModulePlatformView> modulePlatformViews) {
+        return modulePlatformViews.stream().map(ModulePlatformOutput::new).collect(Collectors.toList());
+    }
 }
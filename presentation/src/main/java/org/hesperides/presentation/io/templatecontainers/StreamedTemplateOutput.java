@@ -0,0 +1,81 @@
+package org.hesperides.presentation.io.templatecontainers;
+
+import com.google.gson.Gson;
+import org.hesperides.domain.templatecontainers.queries.TemplateView;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Même JSON que TemplateIO, dont le contenu est écrit au fur et à mesure de sa lecture,
+ * sans être chargé en mémoire, pour les templates volumineux (cf. TemplateView#isContentStreamed).
+ * <p>
+ * Le contenu est ouvert avant l'écriture de la réponse : s'il est introuvable, la requête échoue
+ * au lieu de renvoyer un JSON tronqué avec un statut 200.
+ */
+public class StreamedTemplateOutput {
+
+    private static final Gson GSON = new Gson();
+
+    private final TemplateView templateView;
+    private final Reader contentReader;
+
+    private StreamedTemplateOutput(TemplateView templateView, Reader contentReader) {
+        this.templateView = templateView;
+        this.contentReader = contentReader;
+    }
+
+    public static StreamedTemplateOutput open(TemplateView templateView) throws IOException {
+        return new StreamedTemplateOutput(templateView, templateView.getContentReader().open());
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        // Le contenu, null, n'est pas sérialisé : il est ajouté à la fin de l'objet
+        TemplateIO templateWithoutContent = new TemplateIO(
+                templateView.getName(),
+                templateView.getNamespace(),
+                templateView.getFilename(),
+                templateView.getLocation(),
+                null,
+                new TemplateIO.RightsIO(templateView.getRights()),
+                templateView.getVersionId());
+        String json = GSON.toJson(templateWithoutContent);
+
+        try (Reader reader = contentReader) {
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            writer.write(json, 0, json.lastIndexOf('}'));
+            writer.write(",\"content\":\"");
+            char[] buffer = new char[8192];
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                writeEscaped(writer, buffer, length);
+            }
+            writer.write("\"}");
+            writer.flush();
+        }
+    }
+
+    private static void writeEscaped(Writer writer, char[] buffer, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c == '\n') {
+                writer.write("\\n");
+            } else if (c == '\r') {
+                writer.write("\\r");
+            } else if (c == '\t') {
+                writer.write("\\t");
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class TemplateIO {
         this.namespace = templateView.getNamespace();
         this.filename = templateView.getFilename();
         this.location = templateView.getLocation();
-        this.content = templateView.getContent();
+        this.content = templateView.readContent();
         this.rights = new RightsIO(templateView.getRights());
         this.versionId = templateView.getVersionId();
     }
@@ -0,0 +1,66 @@
+package org.hesperides.presentation.controllers;
+
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.hesperides.domain.templatecontainers.queries.TemplateView;
+import org.hesperides.presentation.PresentationConfiguration;
+import org.hesperides.presentation.config.TestAppConfig;
+import org.hesperides.presentation.exceptions.GlobalExceptionHandler;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.FileNotFoundException;
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(org.hesperides.presentation.controllers.AbstractController.class)
+@ContextConfiguration(classes = {TestAppConfig.class, PresentationConfiguration.class, GlobalExceptionHandler.class})
+public class ModuleTemplatesControllerTest extends AbstractControllerTest {
+
+    private static final String TEMPLATE_URL = "/modules/module/1.0/workingcopy/templates/template";
+    private static final TemplateContainer.Key MODULE_KEY = new Module.Key("module", "1.0", TemplateContainer.VersionType.workingcopy);
+    private static final String CONTENT = "quote \" backslash \\ tab \t\r\nline é \u0001   </script> {{foo|@comment \"bar\"}}";
+
+    @Test
+    @WithMockUser
+    public void testAStreamedTemplateIsTheSameJsonAsATemplateReadInMemory() throws Exception {
+        given(moduleUseCases.getTemplate(MODULE_KEY, "template")).willReturn(Optional.of(template(CONTENT, null)));
+        String inMemoryJson = mvc.perform(get(TEMPLATE_URL).accept(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        given(moduleUseCases.getTemplate(MODULE_KEY, "template")).willReturn(Optional.of(template(null, () -> new StringReader(CONTENT))));
+        mvc.perform(get(TEMPLATE_URL).accept(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(content().json(inMemoryJson, true));
+    }
+
+    @Test
+    @WithMockUser
+    public void testAStreamedTemplateWithoutContentIsAnError() throws Exception {
+        given(moduleUseCases.getTemplate(MODULE_KEY, "template")).willReturn(Optional.of(template(null, () -> {
+            throw new FileNotFoundException("Template content not found in GridFS");
+        })));
+
+        mvc.perform(get(TEMPLATE_URL).accept(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(status().isInternalServerError());
+    }
+
+    private static TemplateView template(String content, TemplateView.ContentReader contentReader) {
+        TemplateView.FileRightsView fileRights = new TemplateView.FileRightsView(true, false, null);
+        return new TemplateView("template", "modules#module#1.0#WORKINGCOPY", "{{file}}.txt", "/{{dir}}", content,
+                new TemplateView.RightsView(fileRights, fileRights, fileRights), 1L, contentReader);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.tests.benchmarks;
+
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.technos.entities.Techno;
+import org.hesperides.domain.templatecontainers.entities.Template;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Jeux de données communs aux benchmarks.
+ */
+final class BenchmarkData {
+
+    private static final Template.FileRights ALL_RIGHTS = new Template.FileRights(true, true, true);
+    private static final Template.Rights RIGHTS = new Template.Rights(ALL_RIGHTS, ALL_RIGHTS, ALL_RIGHTS);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Contenu de template comportant {@code lines} lignes, dont une sur deux définit une propriété
+     * et une sur dix une propriété itérable.
+     */
+    static String templateContent(int lines) {
+        StringBuilder content = new StringBuilder(lines * 64);
+        for (int i = 0; i < lines; i++) {
+            if (i % 10 == 0) {
+                content.append("{{#iterable").append(i).append("}}host={{ host|@required }} port={{ port|@default 80 }}{{/iterable").append(i).append("}}\n");
+            } else if (i % 2 == 0) {
+                content.append("key").append(i).append("={{ property").append(i).append("|@comment \"Property ").append(i).append("\" @default value }}\n");
+            } else {
+                content.append("static line ").append(i).append(" without any property\n");
+            }
+        }
+        return content.toString();
+    }
+
+    static Template template(String name, int lines, TemplateContainer.Key templateContainerKey) {
+        return new Template(name, name + ".properties", "/etc/{{ application|@required }}", templateContent(lines), RIGHTS, 1L, templateContainerKey);
+    }
+
+    static List<Template> templates(int count, int lines, TemplateContainer.Key templateContainerKey) {
+        List<Template> templates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            templates.add(template("template" + i, lines, templateContainerKey));
+        }
+        return templates;
+    }
+
+    static Techno techno(String name, int templates) {
+        Techno.Key key = new Techno.Key(name, "1.0", TemplateContainer.VersionType.workingcopy);
+        return new Techno(key, templates(templates, 20, key));
+    }
+
+    static Module module(int templates, int technos) {
+        Module.Key key = new Module.Key("module", "1.0", TemplateContainer.VersionType.workingcopy);
+        List<Techno> moduleTechnos = new ArrayList<>(technos);
+        for (int i = 0; i < technos; i++) {
+            moduleTechnos.add(techno("techno" + i, templates));
+        }
+        return new Module(key, templates(templates, 20, key), moduleTechnos, 1L);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.tests.benchmarks;
+
+import org.axonframework.serialization.SerializedObject;
+import org.axonframework.serialization.Serializer;
+import org.axonframework.serialization.xml.XStreamSerializer;
+import org.hesperides.domain.modules.ModuleCreatedEvent;
+import org.hesperides.domain.security.User;
+import org.hesperides.infrastructure.mongo.eventstores.JsonEventSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation d'un ModuleCreatedEvent par XStream et en JSON, compressé ou non.
+ * <p>
+ * La taille de l'évènement sérialisé est rapportée par les compteurs serializedCharacters et serializedEvents
+ * du benchmark serialize : leur rapport est le nombre de caractères par évènement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSerializationBenchmark {
+
+    @Param({"xstream", "json", "compressed_json"})
+    String format;
+
+    /**
+     * Nombre de templates du module et de chacune de ses 2 technos
+     */
+    @Param({"1", "20"})
+    int templates;
+
+    private Serializer serializer;
+    private ModuleCreatedEvent event;
+    private SerializedObject<String> serializedEvent;
+
+    @Setup
+    public void setup() {
+        XStreamSerializer xStreamSerializer = new XStreamSerializer();
+        switch (format) {
+            case "json":
+                serializer = new JsonEventSerializer(xStreamSerializer, 0);
+                break;
+            case "compressed_json":
+                serializer = new JsonEventSerializer(xStreamSerializer, 1024);
+                break;
+            default:
+                serializer = xStreamSerializer;
+        }
+        event = new ModuleCreatedEvent(BenchmarkData.module(templates, 2), new User("user", true, true));
+        serializedEvent = serializer.serialize(event, String.class);
+    }
+
+    @Benchmark
+    public SerializedObject<String> serialize(SerializedSize serializedSize) {
+        SerializedObject<String> serializedObject = serializer.serialize(event, String.class);
+        serializedSize.serializedEvents++;
+        serializedSize.serializedCharacters += serializedObject.getData().length();
+        return serializedObject;
+    }
+
+    @Benchmark
+    public ModuleCreatedEvent deserialize() {
+        return serializer.deserialize(serializedEvent);
+    }
+
+    /**
+     * Compteurs rapportés par JMH avec les résultats, remis à zéro à chaque itération
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SerializedSize {
+
+        public long serializedEvents;
+        public long serializedCharacters;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            serializedEvents = 0;
+            serializedCharacters = 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.tests.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.hesperides.presentation.io.ModuleIO;
+import org.hesperides.presentation.io.TechnoIO;
+import org.hesperides.presentation.io.platforms.DeployedModuleIO;
+import org.hesperides.presentation.io.platforms.InstanceIO;
+import org.hesperides.presentation.io.platforms.PlatformIO;
+import org.hesperides.presentation.io.platforms.properties.ValuedPropertyIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation et désérialisation Gson des entrées/sorties REST des modules et des plateformes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonSerializationBenchmark {
+
+    /**
+     * Nombre de technos du module et de modules déployés de la plateforme
+     * (chaque module déployé ayant 10 instances de 20 propriétés valorisées)
+     */
+    @Param({"1", "10", "100"})
+    int size;
+
+    private Gson gson;
+    private ModuleIO moduleIO;
+    private String moduleJson;
+    private PlatformIO platformIO;
+    private String platformJson;
+
+    @Setup
+    public void setup() {
+        // Même configuration que PresentationConfiguration, hors adaptateur Swagger
+        gson = new GsonBuilder().create();
+
+        List<TechnoIO> technos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            technos.add(new TechnoIO("techno" + i, "1.0", true));
+        }
+        moduleIO = new ModuleIO("module", "1.0", true, technos, 1L);
+        moduleJson = gson.toJson(moduleIO);
+
+        List<DeployedModuleIO> deployedModules = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<InstanceIO> instances = new ArrayList<>();
+            for (int j = 0; j < 10; j++) {
+                List<ValuedPropertyIO> valuedProperties = new ArrayList<>();
+                for (int k = 0; k < 20; k++) {
+                    valuedProperties.add(new ValuedPropertyIO("property" + k, "value" + k));
+                }
+                instances.add(new InstanceIO("instance" + j, valuedProperties));
+            }
+            deployedModules.add(new DeployedModuleIO((long) i, "module" + i, "1.0", true,
+                    "#GROUP#module" + i + "#1.0#WORKINGCOPY", "#GROUP", instances));
+        }
+        platformIO = new PlatformIO("PRD1", "APP", "1.0", true, deployedModules, 1L);
+        platformJson = gson.toJson(platformIO);
+    }
+
+    @Benchmark
+    public String serializeModule() {
+        return gson.toJson(moduleIO);
+    }
+
+    @Benchmark
+    public ModuleIO deserializeModule() {
+        return gson.fromJson(moduleJson, ModuleIO.class);
+    }
+
+    @Benchmark
+    public String serializePlatform() {
+        return gson.toJson(platformIO);
+    }
+
+    @Benchmark
+    public PlatformIO deserializePlatform() {
+        return gson.fromJson(platformJson, PlatformIO.class);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.tests.benchmarks;
+
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.modules.queries.ModuleView;
+import org.hesperides.infrastructure.mongo.modules.ModuleDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion d'un ModuleDocument vers la vue et vers l'entité du domaine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModuleDocumentMappingBenchmark {
+
+    /**
+     * Nombre de templates du module
+     */
+    @Param({"1", "20", "200"})
+    int templates;
+
+    @Param({"0", "5"})
+    int technos;
+
+    private ModuleDocument moduleDocument;
+
+    @Setup
+    public void setup() {
+        moduleDocument = new ModuleDocument(BenchmarkData.module(templates, technos));
+    }
+
+    @Benchmark
+    public ModuleView toModuleView() {
+        return moduleDocument.toModuleView();
+    }
+
+    @Benchmark
+    public Module toDomainInstance() {
+        return moduleDocument.toDomainInstance();
+    }
+}
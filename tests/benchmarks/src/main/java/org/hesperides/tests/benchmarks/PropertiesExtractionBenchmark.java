@@ -0,0 +1,90 @@
+/*
+ *
+ * This file is part of the Hesperides distribution.
+ * (https://github.com/voyages-sncf-technologies/hesperides)
+ * Copyright (c) 2016 VSCT.
+ *
+ * Hesperides is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, version 3.
+ *
+ * Hesperides is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package org.hesperides.tests.benchmarks;
+
+import org.hesperides.domain.modules.entities.Module;
+import org.hesperides.domain.templatecontainers.entities.AbstractProperty;
+import org.hesperides.domain.templatecontainers.entities.Property;
+import org.hesperides.domain.templatecontainers.entities.Template;
+import org.hesperides.domain.templatecontainers.entities.TemplateContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction des propriétés d'un template et analyse d'une définition de propriété.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertiesExtractionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TemplateState {
+
+        /**
+         * Nombre de lignes du template : petit, moyen et très gros
+         */
+        @Param({"10", "1000", "100000"})
+        int lines;
+
+        Template template;
+
+        @Setup
+        public void setup() {
+            Module.Key key = new Module.Key("module", "1.0", TemplateContainer.VersionType.workingcopy);
+            template = BenchmarkData.template("template", lines, key);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PropertyDefinitionState {
+
+        @Param({
+                "simple",
+                "simple|@required @comment \"A comment\" @default 12 @pattern \"[a-z]+\" @password"
+        })
+        String propertyDefinition;
+    }
+
+    @Benchmark
+    public List<AbstractProperty> extractPropertiesFromTemplate(TemplateState state) {
+        return AbstractProperty.extractPropertiesFromTemplate(state.template);
+    }
+
+    @Benchmark
+    public Property extractPropertyFromStringDefinition(PropertyDefinitionState state) {
+        return Property.extractPropertyFromStringDefinition(state.propertyDefinition);
+    }
+}